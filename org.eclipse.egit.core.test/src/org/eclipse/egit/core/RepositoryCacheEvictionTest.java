@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Test;
+
+public class RepositoryCacheEvictionTest extends LocalDiskRepositoryTestCase {
+
+	@Test
+	public void shouldReturnCachedRepository() throws Exception {
+		RepositoryCache cache = new RepositoryCache();
+		File gitDir = createBareRepository().getDirectory();
+
+		Repository repository = cache.lookupRepository(gitDir);
+
+		assertSame(repository, cache.lookupRepository(gitDir));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getOpenCount());
+	}
+
+	@Test
+	public void shouldCloseLeastRecentlyUsedRepositories() throws Exception {
+		RepositoryCache cache = new RepositoryCache(2, Long.MAX_VALUE / 2);
+		File gitDir1 = createBareRepository().getDirectory();
+		File gitDir2 = createBareRepository().getDirectory();
+		File gitDir3 = createBareRepository().getDirectory();
+
+		Repository repository1 = cache.lookupRepository(gitDir1);
+		Thread.sleep(10);
+		cache.lookupRepository(gitDir2);
+		Thread.sleep(10);
+		cache.lookupRepository(gitDir3);
+
+		assertEquals(2, cache.getOpenCount());
+		assertSame(repository1, cache.lookupRepository(gitDir1));
+		assertEquals(2, cache.getOpenCount());
+		assertEquals(3, cache.getMissCount());
+	}
+
+	@Test
+	public void shouldCloseIdleRepositories() throws Exception {
+		RepositoryCache cache = new RepositoryCache(10, 0);
+		File gitDir1 = createBareRepository().getDirectory();
+		File gitDir2 = createBareRepository().getDirectory();
+
+		cache.lookupRepository(gitDir1);
+		Thread.sleep(10);
+		cache.lookupRepository(gitDir2);
+
+		assertEquals(1, cache.getOpenCount());
+	}
+
+	@Test
+	public void shouldReturnEvictedRepositoryWhileInUse() throws Exception {
+		RepositoryCache cache = new RepositoryCache();
+		File gitDir = createBareRepository().getDirectory();
+		Repository repository = cache.lookupRepository(gitDir);
+
+		cache.evict(gitDir);
+
+		assertEquals(0, cache.getOpenCount());
+		assertSame(repository, cache.lookupRepository(gitDir));
+		assertEquals(1, cache.getOpenCount());
+		assertEquals(1, cache.getMissCount());
+	}
+}
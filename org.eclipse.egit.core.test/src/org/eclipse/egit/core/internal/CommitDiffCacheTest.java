@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import static org.eclipse.jgit.junit.JGitTestUtil.deleteTrashFile;
+import static org.eclipse.jgit.junit.JGitTestUtil.writeTrashFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.eclipse.egit.core.internal.CommitDiffCache.TreeDiff;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.NotTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitDiffCacheTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private ObjectReader reader;
+
+	private RevCommit c1;
+
+	private RevCommit c2;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		reader = db.newObjectReader();
+		Git git = new Git(db);
+		writeTrashFile(db, "a.txt", "a");
+		writeTrashFile(db, "folder/b.txt", "b");
+		writeTrashFile(db, "folder/c.txt", "c");
+		git.add().addFilepattern(".").call();
+		c1 = git.commit().setMessage("first commit").call();
+		deleteTrashFile(db, "a.txt");
+		writeTrashFile(db, "folder/b.txt", "new b");
+		writeTrashFile(db, "folder/d.txt", "d");
+		git.add().addFilepattern(".").call();
+		git.add().setUpdate(true).addFilepattern(".").call();
+		c2 = git.commit().setMessage("second commit").call();
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		reader.release();
+		super.tearDown();
+	}
+
+	@Test
+	public void shouldReturnSameEntriesAsTreeWalk() throws Exception {
+		CommitDiffCache cache = new CommitDiffCache(1000, null);
+
+		List<DiffEntry> entries = cache.get(reader, c1.getTree(),
+				c2.getTree(), null).toDiffEntries();
+
+		TreeWalk walk = new TreeWalk(reader);
+		walk.addTree(c1.getTree());
+		walk.addTree(c2.getTree());
+		walk.setRecursive(true);
+		walk.setFilter(TreeFilter.ANY_DIFF);
+		List<DiffEntry> expected = DiffEntry.scan(walk);
+		assertEquals(expected.size(), entries.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.get(i).toString(), entries.get(i)
+					.toString());
+	}
+
+	@Test
+	public void shouldCountHitsAndMisses() throws Exception {
+		CommitDiffCache cache = new CommitDiffCache(1000, null);
+
+		TreeDiff diff = cache.get(reader, c1.getTree(), c2.getTree(), null);
+		TreeDiff cached = cache.get(reader, c1.getTree(), c2.getTree(), null);
+		TreeDiff filtered = cache.get(reader, c1.getTree(), c2.getTree(),
+				PathFilter.create("folder"));
+
+		assertSame(diff, cached);
+		assertEquals(3, diff.size());
+		assertEquals(2, filtered.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void shouldApplyPathFilter() throws Exception {
+		CommitDiffCache cache = new CommitDiffCache(1000, null);
+
+		TreeDiff diff = cache.get(reader, null, c1.getTree(),
+				PathFilter.create("folder"));
+
+		assertEquals(2, diff.size());
+		assertEquals("folder/b.txt", diff.getPath(0));
+		assertEquals("folder/c.txt", diff.getPath(1));
+	}
+
+	@Test
+	public void shouldReadEvictedDiffFromSpillDirectory() throws Exception {
+		File spillDirectory = createTempDirectory("commitDiffCache");
+		CommitDiffCache cache = new CommitDiffCache(4, spillDirectory);
+
+		TreeDiff diff = cache.get(reader, c1.getTree(), c2.getTree(), null);
+		// evicts the first diff
+		cache.get(reader, null, c1.getTree(), null);
+		TreeDiff spilled = cache.get(reader, c1.getTree(), c2.getTree(),
+				null);
+
+		assertEquals(1, cache.getSpillHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(diff.size(), spilled.size());
+		for (int i = 0; i < diff.size(); i++) {
+			assertEquals(diff.getPath(i), spilled.getPath(i));
+			assertEquals(diff.getOldId(i), spilled.getOldId(i));
+			assertEquals(diff.getNewId(i), spilled.getNewId(i));
+			assertEquals(diff.getOldMode(i), spilled.getOldMode(i));
+			assertEquals(diff.getNewMode(i), spilled.getNewMode(i));
+		}
+	}
+
+	@Test
+	public void shouldNotCacheUnknownFilters() throws Exception {
+		CommitDiffCache cache = new CommitDiffCache(1000, null);
+		TreeFilter filter = NotTreeFilter.create(PathFilter.create("folder"));
+
+		TreeDiff diff = cache.get(reader, c1.getTree(), c2.getTree(), filter);
+		TreeDiff other = cache.get(reader, c1.getTree(), c2.getTree(),
+				filter);
+
+		assertNotSame(diff, other);
+		assertEquals(1, diff.size());
+		assertEquals("a.txt", diff.getPath(0));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void shouldDeleteInvalidSpillFile() throws Exception {
+		File spillDirectory = createTempDirectory("commitDiffCache");
+		CommitDiffCache cache = new CommitDiffCache(4, spillDirectory);
+		cache.get(reader, c1.getTree(), c2.getTree(), null);
+		// evicts the first diff
+		cache.get(reader, null, c1.getTree(), null);
+		File[] files = spillDirectory.listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		} finally {
+			raf.close();
+		}
+
+		TreeDiff diff = cache.get(reader, c1.getTree(), c2.getTree(), null);
+
+		assertEquals(3, diff.size());
+		assertEquals(0, cache.getSpillHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertFalse(files[0].exists());
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.Test;
+
+public class FileObjectIdCacheTest extends LocalDiskRepositoryTestCase {
+
+	@Test
+	public void shouldReturnBlobIdOfContent() throws Exception {
+		FileObjectIdCache cache = new FileObjectIdCache(10);
+		File file = createFile("content\n");
+
+		assertEquals(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+				Constants.encode("content\n")), cache.getObjectId(file));
+	}
+
+	@Test
+	public void shouldHashUnchangedFileOnce() throws Exception {
+		FileObjectIdCache cache = new FileObjectIdCache(10);
+		File file = createFile("content\n");
+		file.setLastModified(System.currentTimeMillis() - 60000);
+
+		cache.getObjectId(file);
+		cache.getObjectId(file);
+
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void shouldHashChangedFileAgain() throws Exception {
+		FileObjectIdCache cache = new FileObjectIdCache(10);
+		File file = createFile("content\n");
+		file.setLastModified(System.currentTimeMillis() - 60000);
+		cache.getObjectId(file);
+
+		write(file, "changed content\n");
+		file.setLastModified(System.currentTimeMillis() - 30000);
+
+		assertEquals(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+				Constants.encode("changed content\n")), cache.getObjectId(file));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void shouldNotCacheRacyFiles() throws Exception {
+		FileObjectIdCache cache = new FileObjectIdCache(10);
+		File file = createFile("content\n");
+
+		cache.getObjectId(file);
+		cache.getObjectId(file);
+
+		assertEquals(0, cache.getHitCount());
+	}
+
+	private File createFile(String content) throws Exception {
+		File file = createTempFile();
+		write(file, content);
+		return file;
+	}
+}
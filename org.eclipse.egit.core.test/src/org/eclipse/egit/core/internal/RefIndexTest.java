@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RefIndexTest extends LocalDiskRepositoryTestCase {
+
+	private Repository repository;
+
+	private TestRepository<Repository> testRepository;
+
+	private RefIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = createBareRepository();
+		testRepository = new TestRepository<Repository>(repository);
+		index = new RefIndex();
+	}
+
+	@Test
+	public void shouldOrderRefsByPrecedence() throws Exception {
+		RevCommit commit = testRepository.commit().create();
+		testRepository.update("refs/remotes/origin/master", commit);
+		testRepository.update("refs/heads/a", commit);
+		testRepository.update("refs/heads/b", commit);
+		testRepository.update("refs/tags/old", testRepository.tag("old", commit));
+		testRepository.tick(60);
+		testRepository.update("refs/tags/new", testRepository.tag("new", commit));
+		testRepository.update("refs/tags/light", commit);
+
+		assertArrayEquals(new String[] { "refs/tags/new", "refs/tags/old",
+				"refs/tags/light", "refs/heads/b", "refs/heads/a",
+				"refs/remotes/origin/master" }, index.getRefs(repository,
+				commit));
+		assertEquals("refs/tags/new", index.getRef(repository, commit));
+	}
+
+	@Test
+	public void shouldPeelTags() throws Exception {
+		RevCommit commit = testRepository.commit().create();
+		RevTag tag = testRepository.tag("inner", commit);
+		testRepository.update("refs/tags/outer", testRepository.tag("outer", tag));
+
+		assertEquals("refs/tags/outer", index.getRef(repository, commit));
+		assertNull(index.getRef(repository, tag));
+	}
+
+	@Test
+	public void shouldUpdateWhenInvalidated() throws Exception {
+		RevCommit commit = testRepository.commit().create();
+		testRepository.update("refs/heads/master", commit);
+		assertEquals("refs/heads/master", index.getRef(repository, commit));
+
+		testRepository.update("refs/tags/v1", testRepository.tag("v1", commit));
+		assertEquals("refs/heads/master", index.getRef(repository, commit));
+
+		index.invalidate();
+		assertEquals("refs/tags/v1", index.getRef(repository, commit));
+	}
+
+	@Test
+	public void shouldReturnNullForUnreferencedCommit() throws Exception {
+		RevCommit commit = testRepository.commit().create();
+		testRepository.update("refs/heads/master",
+				testRepository.commit().parent(commit).create());
+
+		assertNull(index.getRef(repository, commit));
+		assertEquals(0, index.getRefs(repository, commit).length);
+	}
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IndexDiffDataTest {
+
+	@Test
+	public void shouldReportPathsChangedComparedToPreviousData() {
+		IndexDiffData previous = new IndexDiffData(set("added.txt"), set(),
+				set(), set(), set("a/modified.txt", "a/same.txt"), set(),
+				set("new/"), set(), set("target"));
+		IndexDiffData current = new IndexDiffData(set(), set("added.txt"),
+				set(), set(), set("a/same.txt"), set("a/modified.txt"), set(),
+				set(), set("target"));
+
+		IndexDiffData data = new IndexDiffData(current, previous);
+
+		assertEquals(set("added.txt", "a/modified.txt", "new/"),
+				data.getChangedPaths());
+		assertEquals(current.getModified(), data.getModified());
+	}
+
+	@Test
+	public void shouldNotKnowChangedPathsWithoutPreviousData() {
+		IndexDiffData current = new IndexDiffData(set(), set(), set(), set(),
+				set("a/modified.txt"), set(), set(), set(), set());
+
+		assertNull(new IndexDiffData(current, null).getChangedPaths());
+		assertNull(current.getChangedPaths());
+	}
+
+	private static Set<String> set(String... paths) {
+		return new HashSet<String>(Arrays.asList(paths));
+	}
+}
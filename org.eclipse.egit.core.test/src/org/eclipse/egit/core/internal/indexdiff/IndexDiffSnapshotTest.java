@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.egit.core.test.GitTestCase;
+import org.eclipse.egit.core.test.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexDiffSnapshotTest extends GitTestCase {
+
+	// magic, version, index checksum, HEAD and timestamp
+	private static final long FIRST_SET_OFFSET = 4 + 4 + 20 + 1 + 20 + 8;
+
+	TestRepository testRepository;
+
+	Repository repository;
+
+	File snapshotFile;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		testRepository = new TestRepository(gitDir);
+		repository = testRepository.getRepository();
+		testRepository.connect(project.project);
+		testRepository.addToIndex(project.project);
+		testRepository.createInitialCommit("IndexDiffSnapshotTest\n\nfirst commit\n");
+		snapshotFile = File.createTempFile("indexDiff", "snapshot");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		snapshotFile.delete();
+		testRepository.dispose();
+		repository = null;
+		super.tearDown();
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		testRepository.createFile(project.project, "folder/untracked");
+		testRepository.track(testRepository.createFile(project.project,
+				"added"));
+		IndexDiffSnapshot.State state = IndexDiffSnapshot.State
+				.capture(repository);
+		IndexDiffData data = calculateIndexDiffData();
+		ObjectId head = getHeadTree();
+
+		IndexDiffSnapshot.write(snapshotFile, head, data, state);
+		IndexDiffSnapshot snapshot = IndexDiffSnapshot.read(snapshotFile,
+				repository, head);
+
+		assertNotNull(snapshot);
+		IndexDiffData restored = snapshot.getData();
+		assertEquals(data.getAdded(), restored.getAdded());
+		assertEquals(data.getChanged(), restored.getChanged());
+		assertEquals(data.getRemoved(), restored.getRemoved());
+		assertEquals(data.getMissing(), restored.getMissing());
+		assertEquals(data.getModified(), restored.getModified());
+		assertEquals(data.getUntracked(), restored.getUntracked());
+		assertEquals(data.getUntrackedFolders(),
+				restored.getUntrackedFolders());
+		assertEquals(data.getConflicting(), restored.getConflicting());
+		assertEquals(data.getIgnoredNotInIndex(),
+				restored.getIgnoredNotInIndex());
+		assertTrue(restored.getAdded().contains("Project-1/added"));
+		assertTrue(restored.getUntracked().contains("Project-1/folder/untracked"));
+	}
+
+	@Test
+	public void testInvalidAfterIndexChange() throws Exception {
+		File file = testRepository.createFile(project.project, "untracked");
+		ObjectId head = getHeadTree();
+		IndexDiffSnapshot.write(snapshotFile, head, calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+
+		testRepository.track(file);
+
+		assertNull(IndexDiffSnapshot.read(snapshotFile, repository, head));
+	}
+
+	@Test
+	public void testInvalidForOtherHead() throws Exception {
+		IndexDiffSnapshot.write(snapshotFile, getHeadTree(),
+				calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+
+		assertNull(IndexDiffSnapshot.read(snapshotFile, repository,
+				ObjectId.zeroId()));
+	}
+
+	@Test
+	public void testModifiedAfterCalculation() throws Exception {
+		IndexDiffSnapshot.State captured = IndexDiffSnapshot.State
+				.capture(repository);
+		// the data was calculated a minute ago, the file was created later
+		long calculated = captured.timestamp - 60000;
+		IndexDiffSnapshot.State state = new IndexDiffSnapshot.State(
+				captured.indexChecksum, calculated);
+		IndexDiffData data = calculateIndexDiffData();
+		File file = testRepository.createFile(project.project, "late");
+		file.setLastModified(calculated + 10000);
+		ObjectId head = getHeadTree();
+
+		IndexDiffSnapshot.write(snapshotFile, head, data, state);
+		IndexDiffSnapshot snapshot = IndexDiffSnapshot.read(snapshotFile,
+				repository, head);
+
+		assertNotNull(snapshot);
+		assertEquals(calculated, snapshot.getState().timestamp);
+		assertTrue(snapshot.findModifiedPaths(repository,
+				new NullProgressMonitor()).contains("Project-1/late"));
+	}
+
+	@Test
+	public void testWriteReplacesSnapshot() throws Exception {
+		ObjectId head = getHeadTree();
+		IndexDiffSnapshot.write(snapshotFile, head, calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+		testRepository.createFile(project.project, "untracked");
+		IndexDiffData data = calculateIndexDiffData();
+
+		IndexDiffSnapshot.write(snapshotFile, head, data,
+				IndexDiffSnapshot.State.capture(repository));
+
+		IndexDiffSnapshot snapshot = IndexDiffSnapshot.read(snapshotFile,
+				repository, head);
+		assertNotNull(snapshot);
+		assertEquals(data.getUntracked(), snapshot.getData().getUntracked());
+		for (String name : snapshotFile.getParentFile().list())
+			assertFalse(name.startsWith("snapshot") && name.endsWith(".tmp"));
+	}
+
+	@Test
+	public void testCorruptedSetSize() throws Exception {
+		ObjectId head = getHeadTree();
+		IndexDiffSnapshot.write(snapshotFile, head, calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+		overwrite(FIRST_SET_OFFSET, Integer.MAX_VALUE, 4);
+
+		assertInvalid(head);
+	}
+
+	@Test
+	public void testCorruptedCommonPrefix() throws Exception {
+		ObjectId head = getHeadTree();
+		IndexDiffSnapshot.write(snapshotFile, head, calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+		// one path sharing 100 characters with the empty previous path
+		overwrite(FIRST_SET_OFFSET, 1, 4);
+		overwrite(FIRST_SET_OFFSET + 4, 100, 2);
+
+		assertInvalid(head);
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		ObjectId head = getHeadTree();
+		IndexDiffSnapshot.write(snapshotFile, head, calculateIndexDiffData(),
+				IndexDiffSnapshot.State.capture(repository));
+		RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			raf.setLength(FIRST_SET_OFFSET + 2);
+		} finally {
+			raf.close();
+		}
+
+		assertInvalid(head);
+	}
+
+	private void overwrite(long offset, int value, int length)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			raf.seek(offset);
+			if (length == 4)
+				raf.writeInt(value);
+			else
+				raf.writeShort(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void assertInvalid(ObjectId head) {
+		try {
+			IndexDiffSnapshot.read(snapshotFile, repository, head);
+			fail("invalid snapshot was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private IndexDiffData calculateIndexDiffData() throws Exception {
+		IndexDiff diff = new IndexDiff(repository, Constants.HEAD,
+				new FileTreeIterator(repository));
+		diff.diff();
+		return new IndexDiffData(diff);
+	}
+
+	private ObjectId getHeadTree() throws Exception {
+		return repository.resolve(Constants.HEAD + "^{tree}");
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.ADDED;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.CHANGED;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.CONFLICTING;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.IGNORED;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.MISSING;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.MODIFIED;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.UNTRACKED;
+import static org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary.UNTRACKED_FOLDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexDiffSummaryTest {
+
+	private IndexDiffData data;
+
+	private IndexDiffSummary summary;
+
+	@Before
+	public void setUp() {
+		data = new IndexDiffData(set("a/added.txt"), set("a/b/changed.txt"),
+				set("removed.txt"), set("a/b/c/missing.txt"),
+				set("a/modified.txt", "a/b/changed.txt"), set("new/x.txt",
+						"untracked.txt"), set("new/"), set("c/conflict.txt"),
+				set("target", "a/b/ignored.txt"));
+		summary = data.getSummary();
+	}
+
+	@Test
+	public void shouldCreateSummaryOnce() {
+		assertSame(summary, data.getSummary());
+	}
+
+	@Test
+	public void shouldReturnFlagsOfFiles() {
+		assertEquals(ADDED, summary.getFlags("a/added.txt"));
+		assertEquals(CHANGED | MODIFIED, summary.getFlags("a/b/changed.txt"));
+		assertEquals(MISSING, summary.getFlags("a/b/c/missing.txt"));
+		assertEquals(UNTRACKED, summary.getFlags("untracked.txt"));
+		assertEquals(UNTRACKED | UNTRACKED_FOLDER, summary.getFlags("new/x.txt"));
+		assertEquals(CONFLICTING, summary.getFlags("c/conflict.txt"));
+		assertEquals(IGNORED, summary.getFlags("a/b/ignored.txt"));
+		assertEquals(0, summary.getFlags("a/clean.txt"));
+		assertEquals(0, summary.getFlags("a/added.txt2"));
+	}
+
+	@Test
+	public void shouldInheritFlagsOfParentFolders() {
+		assertEquals(IGNORED, summary.getFlags("target"));
+		assertEquals(IGNORED, summary.getFlags("target/classes/A.class"));
+		assertEquals(UNTRACKED_FOLDER, summary.getFlags("new"));
+		assertEquals(UNTRACKED_FOLDER, summary.getFlags("new/sub"));
+		assertEquals(0, summary.getFlags("targets"));
+		assertEquals(0, summary.getFlags(""));
+	}
+
+	@Test
+	public void shouldReturnFlagsContainedInFolders() {
+		assertEquals(ADDED | CHANGED | MODIFIED | MISSING | IGNORED,
+				summary.getContainedFlags("a"));
+		assertEquals(CHANGED | MODIFIED | MISSING | IGNORED,
+				summary.getContainedFlags("a/b"));
+		assertEquals(MISSING, summary.getContainedFlags("a/b/c"));
+		assertEquals(UNTRACKED, summary.getContainedFlags("new"));
+		assertEquals(0, summary.getContainedFlags("target"));
+		assertEquals(0, summary.getContainedFlags("a/b/changed.txt"));
+		assertEquals(0, summary.getContainedFlags("unknown"));
+		assertEquals(ADDED | CHANGED | IndexDiffSummary.REMOVED | MISSING
+				| MODIFIED | UNTRACKED | UNTRACKED_FOLDER | CONFLICTING
+				| IGNORED, summary.getContainedFlags(""));
+	}
+
+	private static Set<String> set(String... paths) {
+		return new HashSet<String>(Arrays.asList(paths));
+	}
+}
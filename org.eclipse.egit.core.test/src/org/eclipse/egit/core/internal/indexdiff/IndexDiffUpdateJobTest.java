@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.junit.After;
+import org.junit.Test;
+
+public class IndexDiffUpdateJobTest {
+
+	private static final long DELAY = 200;
+
+	private static final long TIMEOUT = 10000;
+
+	private TestJob job;
+
+	@After
+	public void tearDown() throws Exception {
+		if (job != null) {
+			job.cancel();
+			job.join();
+		}
+	}
+
+	@Test
+	public void shouldMergeRequestsOfQuietPeriod() throws Exception {
+		job = new TestJob(false);
+		// each request arrives before the quiet period of the previous one
+		// ended, the first window alone would have been over after the third
+		for (String path : Arrays.asList("a", "b", "c", "d", "e")) {
+			job.addFiles(Collections.singleton(path),
+					Collections.<IResource> emptyList());
+			Thread.sleep(DELAY / 2);
+		}
+		job.waitForCalls(1);
+		Thread.sleep(DELAY * 2);
+
+		assertEquals(Arrays.asList("update"), job.getCalls());
+		assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d",
+				"e")), job.files);
+	}
+
+	@Test
+	public void shouldDropFilesCoveredByReload() throws Exception {
+		job = new TestJob(false);
+		job.addFiles(Collections.singleton("a"),
+				Collections.<IResource> emptyList());
+		job.addReload("test");
+		job.addFiles(Collections.singleton("b"),
+				Collections.<IResource> emptyList());
+		job.waitForCalls(1);
+		Thread.sleep(DELAY * 2);
+
+		assertEquals(Arrays.asList("reload"), job.getCalls());
+	}
+
+	@Test
+	public void shouldCancelRunningUpdateOnReload() throws Exception {
+		job = new TestJob(true);
+		job.addFiles(Collections.singleton("a"),
+				Collections.<IResource> emptyList());
+		job.waitForCalls(1);
+
+		job.addReload("test");
+		job.waitForCalls(2);
+
+		assertEquals(Arrays.asList("update", "reload"), job.getCalls());
+		assertTrue(job.updateCanceled);
+	}
+
+	private static class TestJob extends IndexDiffUpdateJob {
+
+		private final boolean blockUpdate;
+
+		private final List<String> calls = new ArrayList<String>();
+
+		Collection<String> files;
+
+		volatile boolean updateCanceled;
+
+		TestJob(boolean blockUpdate) {
+			super("test", DELAY);
+			this.blockUpdate = blockUpdate;
+		}
+
+		@Override
+		protected void waitForWorkspaceLock(IProgressMonitor monitor) {
+			// no workspace
+		}
+
+		@Override
+		protected boolean restoreIndexDiff(IProgressMonitor monitor) {
+			called("restore");
+			return true;
+		}
+
+		@Override
+		protected IStatus reloadIndexDiff(String trigger,
+				IProgressMonitor monitor) {
+			called("reload");
+			return Status.OK_STATUS;
+		}
+
+		@Override
+		protected IStatus updateIndexDiff(Collection<String> filesToUpdate,
+				Collection<IResource> resources, IProgressMonitor monitor) {
+			files = filesToUpdate;
+			called("update");
+			if (blockUpdate) {
+				long end = System.currentTimeMillis() + TIMEOUT;
+				while (!monitor.isCanceled()
+						&& System.currentTimeMillis() < end)
+					pause();
+				updateCanceled = monitor.isCanceled();
+				return Status.CANCEL_STATUS;
+			}
+			return Status.OK_STATUS;
+		}
+
+		@Override
+		protected void notifyListeners() {
+			called("notify");
+		}
+
+		private synchronized void called(String name) {
+			calls.add(name);
+		}
+
+		synchronized List<String> getCalls() {
+			return new ArrayList<String>(calls);
+		}
+
+		void waitForCalls(int count) {
+			long end = System.currentTimeMillis() + TIMEOUT;
+			while (getCalls().size() < count
+					&& System.currentTimeMillis() < end)
+				pause();
+			assertTrue("expected " + count + " calls but got " + getCalls(),
+					getCalls().size() >= count);
+		}
+
+		private static void pause() {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
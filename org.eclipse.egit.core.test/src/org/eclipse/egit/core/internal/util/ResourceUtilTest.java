@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.egit.core.op.ConnectProviderOperation;
+import org.eclipse.egit.core.op.DisconnectProviderOperation;
+import org.eclipse.egit.core.test.GitTestCase;
+import org.eclipse.egit.core.test.TestRepository;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceUtilTest extends GitTestCase {
+
+	private Repository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = new TestRepository(gitDir).getRepository();
+		new ConnectProviderOperation(project.getProject(), gitDir)
+				.execute(null);
+	}
+
+	@Test
+	public void shouldSplitResourcesIntoSortedPaths() throws Exception {
+		IFolder folder = project.createFolder("folder");
+		IFile b = project.createFile("folder/b.txt", new byte[0]);
+		IFile a = project.createFile("a.txt", new byte[0]);
+
+		Map<Repository, Collection<String>> result = ResourceUtil
+				.splitResourcesByRepository(new IResource[] { b, folder, a,
+						b, project.getProject() });
+
+		assertEquals(1, result.size());
+		assertEquals(Arrays.asList("Project-1", "Project-1/a.txt",
+				"Project-1/folder", "Project-1/folder/b.txt"),
+				result.get(repository));
+	}
+
+	@Test
+	public void shouldSplitPathsIntoSortedPaths() throws Exception {
+		project.createFolder("folder");
+		IFile b = project.createFile("folder/b.txt", new byte[0]);
+		IFile a = project.createFile("a.txt", new byte[0]);
+		IPath outside = project.getProject().getWorkspace().getRoot()
+				.getLocation().removeLastSegments(1).append("outside.txt");
+
+		Map<Repository, Collection<String>> result = ResourceUtil
+				.splitPathsByRepository(Arrays.asList(b.getLocation(),
+						outside, a.getLocation()));
+
+		assertEquals(1, result.size());
+		assertEquals(Arrays.asList("Project-1/a.txt", "Project-1/folder/b.txt"),
+				result.get(repository));
+	}
+
+	@Test
+	public void shouldIgnoreUnsharedProjects() throws Exception {
+		IFile file = project.createFile("a.txt", new byte[0]);
+		new DisconnectProviderOperation(
+				Arrays.asList(project.getProject())).execute(null);
+
+		assertTrue(ResourceUtil.splitResourcesByRepository(
+				new IResource[] { file }).isEmpty());
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.project;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.egit.core.test.TestUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares bulk lookups in {@link RepositoryMappingIndex} with the linear scan
+ * over all mappings it replaced
+ */
+public class RepositoryMappingIndexPerformanceTest {
+
+	private static final int REPOSITORIES = 60;
+
+	private static final int PROJECTS = 600;
+
+	private static final int LOOKUPS = 5000;
+
+	private static final int RUNS = 5;
+
+	// the index must be at least this many times faster than the scan
+	private static final int MIN_SPEEDUP = 5;
+
+	private final TestUtils testUtils = new TestUtils();
+
+	private final RepositoryMappingIndex index = new RepositoryMappingIndex();
+
+	private final List<RepositoryMapping> mappings = new ArrayList<RepositoryMapping>();
+
+	private final List<Repository> repositories = new ArrayList<Repository>();
+
+	private final List<IPath> paths = new ArrayList<IPath>();
+
+	private File base;
+
+	@Before
+	public void setUp() throws Exception {
+		base = testUtils.createTempDir("mappingIndexPerformance");
+		for (int i = 0; i < REPOSITORIES; i++) {
+			File workTree = new File(base, "repo" + i + "/w");
+			Repository repository = new FileRepositoryBuilder()
+					.setWorkTree(workTree)
+					.setGitDir(new File(workTree, ".git")).build();
+			repository.create();
+			repositories.add(repository);
+		}
+		for (int i = 0; i < PROJECTS; i++) {
+			Properties properties = new Properties();
+			properties.setProperty(".gitdir", ".git");
+			RepositoryMapping mapping = new RepositoryMapping(properties,
+					".gitdir");
+			mapping.setRepository(repositories.get(i % REPOSITORIES));
+			index.add(ResourcesPlugin.getWorkspace().getRoot()
+					.getProject("project" + i), mapping);
+			mappings.add(mapping);
+		}
+		for (int i = 0; i < LOOKUPS; i++)
+			paths.add(new Path(new File(base, "repo" + i % REPOSITORIES
+					+ "/w/folder" + i % 10 + "/sub/file" + i + ".txt")
+					.getAbsolutePath()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (Repository repository : repositories)
+			repository.close();
+		testUtils.deleteTempDirs();
+	}
+
+	@Test
+	public void shouldLookUpFasterThanLinearScan() throws Exception {
+		long indexTime = Long.MAX_VALUE;
+		long scanTime = Long.MAX_VALUE;
+		// the fastest of several runs, the first ones include the warm-up
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (IPath p : paths)
+				assertEquals(repositoryName(p), index.find(p).getWorkTree()
+						.getParentFile().getName());
+			indexTime = Math.min(indexTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (IPath p : paths)
+				assertEquals(repositoryName(p), linearScan(p).getWorkTree()
+						.getParentFile().getName());
+			scanTime = Math.min(scanTime, System.nanoTime() - start);
+		}
+
+		assertTrue("index " + indexTime + " ns, scan " + scanTime + " ns",
+				indexTime * MIN_SPEEDUP < scanTime);
+	}
+
+	private static String repositoryName(IPath p) {
+		return p.segment(p.segmentCount() - 5);
+	}
+
+	private RepositoryMapping linearScan(IPath p) {
+		// the lookup previously done by RepositoryMapping.getMapping(IPath)
+		for (RepositoryMapping mapping : mappings) {
+			Path workingTree = new Path(mapping.getWorkTree().toString());
+			IPath relative = p.makeRelativeTo(workingTree);
+			String firstSegment = relative.segment(0);
+			if (firstSegment == null || !"..".equals(firstSegment))
+				return mapping;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.project;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.egit.core.test.TestUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryMappingIndexTest {
+
+	private final TestUtils testUtils = new TestUtils();
+
+	private final RepositoryMappingIndex index = new RepositoryMappingIndex();
+
+	private final List<Repository> repositories = new ArrayList<Repository>();
+
+	private File base;
+
+	@Before
+	public void setUp() throws Exception {
+		base = testUtils.createTempDir("mappingIndex");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (Repository repository : repositories)
+			repository.close();
+		testUtils.deleteTempDirs();
+	}
+
+	@Test
+	public void shouldFindMappingOfInnermostWorkTree() throws Exception {
+		RepositoryMapping outer = addMapping("outer", "repo");
+		RepositoryMapping inner = addMapping("inner", "repo/nested");
+
+		assertSame(outer, index.find(path("repo/file.txt")));
+		assertSame(outer, index.find(path("repo")));
+		assertSame(inner, index.find(path("repo/nested")));
+		assertSame(inner, index.find(path("repo/nested/folder/file.txt")));
+		assertNull(index.find(path("other/file.txt")));
+		assertNull(index.find(path("")));
+	}
+
+	@Test
+	public void shouldRemoveMappingsOfProject() throws Exception {
+		RepositoryMapping outer = addMapping("outer", "repo");
+		RepositoryMapping inner = addMapping("inner", "repo/nested");
+
+		index.remove(project("inner"));
+
+		assertSame(outer, index.find(path("repo/nested/file.txt")));
+		assertNull(index.find(inner.getRepository()));
+		assertSame(outer, index.find(outer.getRepository()));
+	}
+
+	@Test
+	public void shouldIgnoreClearedMappings() throws Exception {
+		RepositoryMapping mapping = addMapping("project", "repo");
+		Repository repository = mapping.getRepository();
+
+		mapping.clear();
+
+		assertNull(index.find(path("repo/file.txt")));
+		assertNull(index.find(repository));
+	}
+
+	@Test
+	public void shouldFindMappingOfDeeplyNestedWorkTrees() throws Exception {
+		RepositoryMapping outer = addMapping("outer", "repo");
+		RepositoryMapping middle = addMapping("middle", "repo/a/b");
+		RepositoryMapping inner = addMapping("inner", "repo/a/b/c/d");
+
+		assertSame(outer, index.find(path("repo/a/file.txt")));
+		assertSame(middle, index.find(path("repo/a/b/c/file.txt")));
+		assertSame(inner, index.find(path("repo/a/b/c/d/e/file.txt")));
+		assertSame(middle, index.find(path("repo/a/b/c/e/file.txt")));
+	}
+
+	@Test
+	public void shouldNotMatchWorkTreesWithCommonNamePrefix() throws Exception {
+		RepositoryMapping repo = addMapping("repo", "repo");
+		RepositoryMapping repo2 = addMapping("repo2", "repo2");
+
+		assertSame(repo, index.find(path("repo/file.txt")));
+		assertSame(repo2, index.find(path("repo2/file.txt")));
+		assertNull(index.find(path("repo3/file.txt")));
+	}
+
+	@Test
+	public void shouldKeepOverlappingMappingOfOtherProject() throws Exception {
+		// two projects located in the same working tree
+		RepositoryMapping first = addMapping("first", "repo");
+		RepositoryMapping second = addMapping("second", "repo");
+
+		assertSame(first, index.find(path("repo/file.txt")));
+
+		index.remove(project("first"));
+
+		assertSame(second, index.find(path("repo/file.txt")));
+		assertSame(second, index.find(second.getRepository()));
+		assertNull(index.find(first.getRepository()));
+
+		index.remove(project("second"));
+
+		assertNull(index.find(path("repo/file.txt")));
+	}
+
+	@Test
+	public void shouldFallBackToOuterMappingWhenInnerIsCleared()
+			throws Exception {
+		RepositoryMapping outer = addMapping("outer", "repo");
+		RepositoryMapping inner = addMapping("inner", "repo/nested");
+
+		inner.clear();
+
+		assertSame(outer, index.find(path("repo/nested/file.txt")));
+	}
+
+	private RepositoryMapping addMapping(String projectName, String workTree)
+			throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(".gitdir", ".git");
+		RepositoryMapping mapping = new RepositoryMapping(properties,
+				".gitdir");
+		File workTreeDir = new File(base, workTree);
+		Repository repository = new FileRepositoryBuilder()
+				.setWorkTree(workTreeDir)
+				.setGitDir(new File(workTreeDir, ".git")).build();
+		if (!repository.getDirectory().exists())
+			repository.create();
+		repositories.add(repository);
+		mapping.setRepository(repository);
+		index.add(project(projectName), mapping);
+		return mapping;
+	}
+
+	private IProject project(String name) {
+		return ResourcesPlugin.getWorkspace().getRoot().getProject(name);
+	}
+
+	private IPath path(String relativePath) {
+		return new Path(new File(base, relativePath).getAbsolutePath());
+	}
+}
@@ -20,12 +20,16 @@
 
 import java.util.Map;
 
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.IndexDiff;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.junit.Before;
 
 @SuppressWarnings("boxing")
@@ -48,6 +52,13 @@ public void setUp() throws Exception {
 		git.tag().setName(INITIAL_TAG).call();
 	}
 
+	protected IndexDiffData calculateIndexDiff() throws Exception {
+		IndexDiff indexDiff = new IndexDiff(db, Constants.HEAD,
+				new FileTreeIterator(db));
+		indexDiff.diff();
+		return new IndexDiffData(indexDiff);
+	}
+
 	protected void assertFileAddition(Map<String, Change> result, String path, String fileName) {
 		commonFileAsserts(result, path, fileName);
 		assertThat(result.get(path).getKind(), is(RIGHT | ADDITION));
@@ -20,16 +20,23 @@
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Commit;
+import org.eclipse.egit.core.synchronize.GitCommitsModelCache.CommitListener;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.errors.AmbiguousObjectException;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.junit.Test;
 
@@ -435,6 +442,76 @@ public void shouldListAllTypeOfChangesInsideFolderInOneCommit()
 				RIGHT);
 	}
 
+	@Test
+	public void shouldReturnCommitsInHistoryOrder() throws Exception {
+		// given
+		Git git = new Git(db);
+		RevCommit[] commits = new RevCommit[20];
+		for (int i = 0; i < commits.length; i++) {
+			writeTrashFile(db, "folder/" + i + ".txt", "content " + i);
+			git.add().addFilepattern("folder/" + i + ".txt").call();
+			commits[i] = commit(git, "commit " + i);
+		}
+		// when
+		List<Commit> result = GitCommitsModelCache.build(db, initialTagId(),
+				commits[commits.length - 1], null);
+		// then
+		assertThat(result.size(), is(commits.length));
+		for (int i = 0; i < commits.length; i++) {
+			RevCommit c = commits[commits.length - 1 - i];
+			assertCommit(result.get(i), c, 1);
+			int index = commits.length - 1 - i;
+			assertFileDeletion(c,
+					result.get(i).getChildren()
+							.get("folder/" + index + ".txt"), index + ".txt",
+					LEFT);
+		}
+	}
+
+	@Test
+	public void shouldStreamCommitsWhileHistoryIsTraversed() throws Exception {
+		// given
+		Git git = new Git(db);
+		// more commits than diffs are kept pending
+		int count = 300;
+		RevCommit last = null;
+		for (int i = 0; i < count; i++) {
+			writeTrashFile(db, "folder/" + i + ".txt", "content " + i);
+			git.add().addFilepattern("folder/" + i + ".txt").call();
+			last = commit(git, "commit " + i);
+		}
+		// each diff of a commit uses its own reader
+		final AtomicInteger readers = new AtomicInteger();
+		Repository repo = new FileRepository(db.getDirectory()) {
+			@Override
+			public ObjectReader newObjectReader() {
+				readers.incrementAndGet();
+				return super.newObjectReader();
+			}
+		};
+		final List<Commit> streamed = new ArrayList<Commit>();
+		final AtomicInteger readersAtFirstCommit = new AtomicInteger();
+		// when
+		List<Commit> result;
+		try {
+			result = GitCommitsModelCache.build(repo, initialTagId(), last,
+					null, new CommitListener() {
+						public void commitBuilt(Commit commit) {
+							if (streamed.isEmpty())
+								readersAtFirstCommit.set(readers.get());
+							streamed.add(commit);
+						}
+					});
+		} finally {
+			repo.close();
+		}
+		// then
+		assertThat(result.size(), is(count));
+		assertThat(streamed, is(result));
+		// the first commit arrived before the diffs of all commits started
+		assertTrue(readersAtFirstCommit.get() < count);
+	}
+
 	@Test
 	public void shouldListAllTypeOfChangesInsideSeparateFoldersInOneCommit()
 			throws Exception {
@@ -436,6 +436,64 @@ public void shouldReturnTrueWhenLongContentLengthIsDifferent()
 		assertTrue(grvc.compare(local, remote));
 	}
 
+	/**
+	 * A local file with the same content as the remote blob should be equal
+	 * without comparing the contents.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldReturnTrueWhenLocalFileHasRemoteObjectId()
+			throws Exception {
+		// when
+		GitSynchronizeData data = new GitSynchronizeData(repo, HEAD, HEAD, true);
+		GitSynchronizeDataSet dataSet = new GitSynchronizeDataSet(data);
+		GitResourceVariantComparator grvc = new GitResourceVariantComparator(
+				dataSet);
+
+		// given
+		File file = testRepo.createFile(iProject, "test-file");
+		RevCommit commit = testRepo.appendContentAndCommit(iProject, file,
+				"a", "initial commit");
+		String path = Repository.stripWorkDir(repo.getWorkTree(), file);
+		IFile local = testRepo.getIFile(iProject, file);
+		GitRemoteFile remote = new GitRemoteFile(repo, commit, TreeWalk
+				.forPath(repo, path, commit.getTree()).getObjectId(0), path);
+
+		// then
+		assertTrue(grvc.compare(local, remote));
+	}
+
+	/**
+	 * A local file modified after the commit should differ from the remote
+	 * blob.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void shouldReturnFalseWhenLocalFileHasDifferentObjectId()
+			throws Exception {
+		// when
+		GitSynchronizeData data = new GitSynchronizeData(repo, HEAD, HEAD, true);
+		GitSynchronizeDataSet dataSet = new GitSynchronizeDataSet(data);
+		GitResourceVariantComparator grvc = new GitResourceVariantComparator(
+				dataSet);
+
+		// given
+		File file = testRepo.createFile(iProject, "test-file");
+		RevCommit commit = testRepo.appendContentAndCommit(iProject, file,
+				"a", "initial commit");
+		String path = Repository.stripWorkDir(repo.getWorkTree(), file);
+		IFile local = testRepo.getIFile(iProject, file);
+		GitRemoteFile remote = new GitRemoteFile(repo, commit, TreeWalk
+				.forPath(repo, path, commit.getTree()).getObjectId(0), path);
+		testRepo.appendFileContent(file, "b");
+		local.refreshLocal(IResource.DEPTH_ZERO, null);
+
+		// then
+		assertFalse(grvc.compare(local, remote));
+	}
+
 	/* ==================================================
 	 * compare(IResourceVariant, IResourceVariant) tests
 	 * ================================================== */
@@ -10,6 +10,8 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -32,6 +34,7 @@
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.team.core.TeamException;
 import org.eclipse.team.core.variants.IResourceVariant;
+import org.eclipse.team.core.variants.IResourceVariantComparator;
 import org.eclipse.team.core.variants.IResourceVariantTree;
 import org.junit.After;
 import org.junit.Before;
@@ -95,6 +98,23 @@ public void shouldReturnSrcBranchAsBase() throws Exception {
 				actual.getContentIdentifier());
 	}
 
+	@Test
+	public void shouldShareResourceComparator() throws Exception {
+		File file = testRepo.createFile(iProject, "Main.java");
+		testRepo.appendContentAndCommit(iProject, file, "class Main {}",
+				"initial commit");
+		GitResourceVariantTreeSubscriber grvts = createGitResourceVariantTreeSubscriber(
+				Constants.HEAD, Constants.R_HEADS + Constants.MASTER);
+		IResourceVariantComparator comparator = grvts.getResourceComparator();
+
+		assertSame(comparator, grvts.getResourceComparator());
+
+		grvts.reset(new GitSynchronizeDataSet(new GitSynchronizeData(repo,
+				Constants.HEAD, Constants.R_HEADS + Constants.MASTER, false)));
+
+		assertNotSame(comparator, grvts.getResourceComparator());
+	}
+
 	/**
 	 * Both source and destination branches has some different commits but they
 	 * has also common ancestor. This situation is described more detailed in
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.synchronize;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.egit.core.synchronize.dto.GitSynchronizeData;
+import org.eclipse.egit.core.synchronize.dto.GitSynchronizeDataSet;
+import org.eclipse.egit.core.test.GitTestCase;
+import org.eclipse.egit.core.test.TestRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitSyncCacheTest extends GitTestCase {
+
+	// more than scanned concurrently
+	private static final int REPOSITORIES = 6;
+
+	private final List<TestRepository> repositories = new ArrayList<TestRepository>();
+
+	private GitSynchronizeDataSet gsds;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		gsds = new GitSynchronizeDataSet();
+		for (int i = 0; i < REPOSITORIES; i++) {
+			File workTree = testUtils.createTempDir("GitSyncCacheTest" + i);
+			TestRepository repository = new TestRepository(new File(workTree,
+					Constants.DOT_GIT));
+			repositories.add(repository);
+			repository.createInitialCommit("initial commit");
+			repository.appendFileContent(new File(workTree, "file" + i),
+					"content");
+			gsds.add(new GitSynchronizeData(repository.getRepository(),
+					Constants.HEAD, Constants.HEAD, true));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (TestRepository repository : repositories)
+			repository.dispose();
+		repositories.clear();
+		testUtils.deleteTempDirs();
+		super.tearDown();
+	}
+
+	@Test
+	public void shouldScanAllRepositories() throws Exception {
+		GitSyncCache cache = GitSyncCache.getAllData(gsds,
+				new NullProgressMonitor());
+
+		for (int i = 0; i < REPOSITORIES; i++) {
+			GitSyncObjectCache repoCache = cache.get(repositories.get(i)
+					.getRepository());
+			assertNotNull(repoCache);
+			assertNotNull(repoCache.get("file" + i));
+			assertNull(repoCache.get("file" + (i + 1) % REPOSITORIES));
+		}
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void shouldThrowWhenCanceled() throws Exception {
+		IProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+
+		GitSyncCache.getAllData(gsds, monitor);
+	}
+}
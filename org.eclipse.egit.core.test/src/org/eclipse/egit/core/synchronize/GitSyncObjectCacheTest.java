@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.synchronize;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.egit.core.synchronize.ThreeWayDiffEntry.ChangeType;
+import org.eclipse.egit.core.synchronize.ThreeWayDiffEntry.Direction;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class GitSyncObjectCacheTest {
+
+	@Test
+	public void shouldReturnAddedMembers() {
+		// given
+		GitSyncObjectCache root = createRoot();
+
+		// when
+		root.addMember(createEntry("b", true, 1));
+		root.addMember(createEntry("b/c.txt", false, 2));
+		root.addMember(createEntry("a.txt", false, 3));
+
+		// then
+		assertThat(Integer.valueOf(root.membersCount()), is(Integer.valueOf(2)));
+		Iterator<GitSyncObjectCache> members = root.members().iterator();
+		assertThat(members.next().getName(), is("a.txt"));
+		assertThat(members.next().getName(), is("b"));
+
+		GitSyncObjectCache file = root.get("b/c.txt");
+		assertThat(file, notNullValue());
+		ThreeWayDiffEntry entry = file.getDiffEntry();
+		assertThat(entry.getPath(), is("b/c.txt"));
+		assertThat(entry.getRemoteId(), is(createId(2)));
+		assertThat(entry.getLocalId(), is(createId(2)));
+		assertThat(entry.getDirection(), is(Direction.INCOMING));
+		assertThat(entry.getChangeType(), is(ChangeType.MODIFY));
+		assertThat(root.get("b/d.txt"), nullValue());
+		assertThat(root.get("c/c.txt"), nullValue());
+	}
+
+	@Test
+	public void shouldMergeMembers() {
+		// given
+		GitSyncObjectCache root = createRoot();
+		root.addMember(createEntry("a", true, 1));
+		root.addMember(createEntry("a/b.txt", false, 2));
+		root.addMember(createEntry("c.txt", false, 3));
+		GitSyncObjectCache newRoot = createRoot();
+		newRoot.addMember(createEntry("a", true, 4));
+		newRoot.addMember(createEntry("a/d.txt", false, 5));
+
+		// when
+		root.merge(newRoot);
+
+		// then
+		assertThat(root.get("c.txt").getDiffEntry().getChangeType(),
+				is(ChangeType.IN_SYNC));
+		assertThat(root.get("a/b.txt").getDiffEntry().getChangeType(),
+				is(ChangeType.IN_SYNC));
+		GitSyncObjectCache added = root.get("a/d.txt");
+		assertThat(added, notNullValue());
+		assertThat(added.getDiffEntry().getPath(), is("a/d.txt"));
+		assertThat(added.getDiffEntry().getChangeType(),
+				is(ChangeType.MODIFY));
+	}
+
+	@Test
+	public void shouldShareNamesOfMembers() {
+		// given
+		GitSyncObjectCache root = createRoot();
+
+		// when
+		root.addMember(createEntry("a", true, 1));
+		root.addMember(createEntry(new String("a/src"), true, 2));
+		root.addMember(createEntry("b", true, 3));
+		root.addMember(createEntry(new String("b/src"), true, 4));
+
+		// then
+		GitSyncObjectCache a = root.get("a/src");
+		GitSyncObjectCache b = root.get("b/src");
+		assertThat(a.getDiffEntry().getPath(), is("a/src"));
+		assertThat(b.getDiffEntry().getPath(), is("b/src"));
+		assertSame(a.getName(), b.getName());
+	}
+
+	@Test
+	public void shouldRetainOneNameInstancePerDistinctName() {
+		// given
+		GitSyncObjectCache root = createRoot();
+
+		// when
+		// 200 folders with the same layout, each name is a new instance
+		for (int i = 0; i < 200; i++) {
+			String folder = "dir" + i;
+			root.addMember(createEntry(new String(folder), true, i));
+			root.addMember(createEntry(folder + "/src", true, i));
+			for (int j = 0; j < 50; j++)
+				root.addMember(createEntry(folder + "/src/File" + j + ".java",
+						false, j));
+		}
+
+		// then
+		Map<String, String> names = new IdentityHashMap<String, String>();
+		int count = collectNames(root, names);
+		assertThat(Integer.valueOf(count), is(Integer.valueOf(200 * 52)));
+		// dir0..dir199, src and File0.java..File49.java
+		assertThat(Integer.valueOf(names.size()),
+				is(Integer.valueOf(200 + 1 + 50)));
+	}
+
+	@Test
+	public void shouldReturnChangeTypeAndDirection() {
+		// given
+		GitSyncObjectCache root = createRoot();
+		root.addMember(createEntry("a", true, 1));
+		root.addMember(createEntry("a/b.txt", false, 2));
+		GitSyncObjectCache newRoot = createRoot();
+		newRoot.addMember(createEntry("a", true, 3));
+
+		// when
+		root.merge(newRoot);
+
+		// then
+		GitSyncObjectCache file = root.get("a/b.txt");
+		assertThat(file.getDirection(), is(Direction.INCOMING));
+		assertThat(file.getChangeType(), is(ChangeType.IN_SYNC));
+		assertThat(file.getChangeType(),
+				is(file.getDiffEntry().getChangeType()));
+	}
+
+	private static int collectNames(GitSyncObjectCache object,
+			Map<String, String> names) {
+		Collection<GitSyncObjectCache> members = object.members();
+		if (members == null)
+			return 0;
+		int count = 0;
+		for (GitSyncObjectCache member : members) {
+			names.put(member.getName(), member.getName());
+			count += 1 + collectNames(member, names);
+		}
+		return count;
+	}
+
+	private static GitSyncObjectCache createRoot() {
+		return new GitSyncObjectCache("", createEntry("", true, 0));
+	}
+
+	private static ThreeWayDiffEntry createEntry(String path, boolean tree,
+			int id) {
+		return new ThreeWayDiffEntry(path, createId(id), createId(id + 1),
+				createId(id), ChangeType.MODIFY, Direction.INCOMING, tree);
+	}
+
+	private static AbbreviatedObjectId createId(int i) {
+		return AbbreviatedObjectId.fromObjectId(ObjectId.fromRaw(Constants
+				.newMessageDigest().digest(Constants.encode(Integer.toString(i)))));
+	}
+}
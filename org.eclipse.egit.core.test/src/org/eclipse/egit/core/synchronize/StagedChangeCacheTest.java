@@ -10,10 +10,12 @@
 
 import static org.eclipse.jgit.junit.JGitTestUtil.writeTrashFile;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
 import java.util.Map;
 
+import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
 import org.eclipse.jgit.api.Git;
 import org.junit.Test;
@@ -232,4 +234,42 @@ public void shouldListTwoWorkspaceChagneInFolder() throws Exception {
 		assertFileChange(result, "folder/b.txt", "b.txt");
 	}
 
+	@Test
+	public void shouldListChangesOfIndexDiff() throws Exception {
+		// given
+		Git git = new Git(db);
+		writeTrashFile(db, "a.txt", "trash");
+		writeTrashFile(db, "b.txt", "trash");
+		git.add().addFilepattern("a.txt").addFilepattern("b.txt").call();
+		git.commit().setMessage("new commit").call();
+		writeTrashFile(db, "a.txt", "modification");
+		writeTrashFile(db, "folder/c.txt", "trash");
+		git.add().addFilepattern("a.txt").addFilepattern("folder/c.txt").call();
+		git.rm().addFilepattern("b.txt").call();
+
+		// when
+		Map<String, Change> result = StagedChangeCache.build(db,
+				calculateIndexDiff());
+
+		// then
+		assertThat(result.size(), is(3));
+		assertFileChange(result, "a.txt", "a.txt");
+		assertFileDeletion(result, "b.txt", "b.txt");
+		assertFileAddition(result, "folder/c.txt", "c.txt");
+	}
+
+	@Test
+	public void shouldNotCreateIndexDiffCacheEntry() throws Exception {
+		// given
+		writeTrashFile(db, "a.txt", "trash");
+		new Git(db).add().addFilepattern("a.txt").call();
+
+		// when
+		StagedChangeCache.build(db);
+
+		// then
+		assertNull(Activator.getDefault().getIndexDiffCache()
+				.findIndexDiffCacheEntry(db));
+	}
+
 }
@@ -11,10 +11,12 @@
 import static org.eclipse.jgit.junit.JGitTestUtil.deleteTrashFile;
 import static org.eclipse.jgit.junit.JGitTestUtil.writeTrashFile;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
 import java.util.Map;
 
+import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
 import org.eclipse.jgit.api.Git;
 import org.junit.Test;
@@ -224,4 +226,38 @@ public void shouldNotListIgnorefFile() throws Exception {
 		assertFileAddition(result, ".gitignore", ".gitignore");
 	}
 
+	@Test
+	public void shouldListChangesOfIndexDiff() throws Exception {
+		// given
+		writeTrashFile(db, "a.txt", "trash");
+		writeTrashFile(db, "b.txt", "trash");
+		new Git(db).add().addFilepattern("a.txt").addFilepattern("b.txt").call();
+		writeTrashFile(db, "a.txt", "modification");
+		deleteTrashFile(db, "b.txt");
+		writeTrashFile(db, "folder/c.txt", "trash");
+
+		// when
+		Map<String, Change> result = WorkingTreeChangeCache.build(db,
+				calculateIndexDiff());
+
+		// then
+		assertThat(result.size(), is(3));
+		assertFileChange(result, "a.txt", "a.txt");
+		assertFileDeletion(result, "b.txt", "b.txt");
+		assertFileAddition(result, "folder/c.txt", "c.txt");
+	}
+
+	@Test
+	public void shouldNotCreateIndexDiffCacheEntry() throws Exception {
+		// given
+		writeTrashFile(db, "a.txt", "trash");
+
+		// when
+		WorkingTreeChangeCache.build(db);
+
+		// then
+		assertNull(Activator.getDefault().getIndexDiffCache()
+				.findIndexDiffCacheEntry(db));
+	}
+
 }
@@ -108,6 +108,30 @@ public void testAddFileFromUntrackedFolder() throws Exception {
 		assertThat(data2.getUntrackedFolders(), hasItem("Project-1/folder/b/"));
 	}
 
+	@Test
+	public void testGitIgnoreChangedInFolder() throws Exception {
+		testRepository.connect(project.project);
+		testRepository.addToIndex(project.project);
+		testRepository.createInitialCommit("testGitIgnoreChangedInFolder\n\nfirst commit\n");
+		prepareCacheEntry();
+
+		project.createFolder("folder");
+		project.createFile("folder/file", new byte[] {});
+		project.createFile("other", new byte[] {});
+
+		IndexDiffData data1 = waitForListenerCalled();
+		assertThat(data1.getUntracked(), hasItem("Project-1/folder/file"));
+		assertThat(data1.getUntracked(), hasItem("Project-1/other"));
+
+		project.createFile("folder/.gitignore", "file\n".getBytes("UTF-8"));
+
+		IndexDiffData data2 = waitForListenerCalled();
+		assertThat(data2.getUntracked(), not(hasItem("Project-1/folder/file")));
+		assertThat(data2.getIgnoredNotInIndex(),
+				hasItem("Project-1/folder/file"));
+		assertThat(data2.getUntracked(), hasItem("Project-1/other"));
+	}
+
 	private void prepareCacheEntry() {
 		IndexDiffCache indexDiffCache = Activator.getDefault()
 				.getIndexDiffCache();
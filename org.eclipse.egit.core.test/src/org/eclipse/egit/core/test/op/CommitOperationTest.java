@@ -22,8 +22,10 @@
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.egit.core.op.AddToIndexOperation;
 import org.eclipse.egit.core.op.CommitOperation;
 import org.eclipse.egit.core.test.GitTestCase;
@@ -111,6 +113,16 @@ public void testCommitAddedToIndexDeletedInWorkspace() throws Exception {
 		assertFalse(treeWalk.next());
 	}
 
+	@Test
+	public void testSchedulingRule() throws Exception {
+		CommitOperation commitOperation = new CommitOperation(repository,
+				TestUtils.AUTHOR, TestUtils.COMMITTER, "first commit");
+
+		ISchedulingRule rule = commitOperation.getSchedulingRule();
+		assertTrue(rule.contains(project.getProject()));
+		assertFalse(rule.contains(ResourcesPlugin.getWorkspace().getRoot()));
+	}
+
 	@Test
 	public void testCommitAll() throws Exception {
 		IFile file1 = testUtils.addFileToProject(project.getProject(),
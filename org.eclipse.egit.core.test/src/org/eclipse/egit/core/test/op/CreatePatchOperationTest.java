@@ -13,7 +13,9 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 
 import org.eclipse.core.runtime.IPath;
@@ -314,6 +316,39 @@ public void testWorkspacePatchForCommit() throws Exception {
 		assertPatch(SIMPLE_WORKSPACE_PATCH_CONTENT, operation.getPatchContent());
 	}
 
+	@Test
+	public void testWorkspacePatchToOutputStream() throws Exception {
+		// setup workspace
+		File deletedFile = testRepository.createFile(project.getProject(), "deleted-file");
+		commit = testRepository.addAndCommit(project.getProject(), deletedFile,
+				"whatever");
+		FileUtils.delete(deletedFile);
+		testRepository.appendFileContent(file, "another line");
+		File newFile = testRepository.createFile(project.getProject(), "new-file");
+		testRepository.appendFileContent(newFile, "new content");
+		testRepository.untrack(deletedFile);
+		testRepository.track(file);
+		testRepository.track(newFile);
+		commit = testRepository.commit("2nd commit");
+
+		// create patch
+		CreatePatchOperation operation = new CreatePatchOperation(
+				testRepository.getRepository(), commit);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		operation.setHeaderFormat(DiffHeaderFormat.WORKSPACE);
+		operation.setOutputStream(out);
+		operation.execute(new NullProgressMonitor());
+
+		assertPatch(SIMPLE_WORKSPACE_PATCH_CONTENT, out.toString("UTF-8"));
+		try {
+			operation.getPatchContent();
+			fail("patch content must not be kept when writing to a stream");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
 	@Test
 	public void testWorkspacePatchForWorkingDir() throws Exception {
 		// setup workspace
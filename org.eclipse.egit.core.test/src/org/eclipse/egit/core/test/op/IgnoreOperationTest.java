@@ -25,10 +25,14 @@
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.op.IgnoreOperation;
+import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.core.test.GitTestCase;
 import org.eclipse.egit.core.test.TestRepository;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.util.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -119,6 +123,30 @@ public void testIgnoreProject() throws Exception {
 		assertTrue(operation.isGitignoreOutsideWSChanged());
 	}
 
+	@Test
+	public void testIgnoreFileInRepositoryRoot() throws Exception {
+		Repository repository = RepositoryMapping.getMapping(
+				project.getProject()).getRepository();
+		// the index diff is refreshed for known repositories only
+		assertNotNull(Activator.getDefault().getIndexDiffCache()
+				.getIndexDiffCacheEntry(repository));
+		File file = new File(repository.getWorkTree(), "root.txt");
+		FileUtils.createNewFile(file);
+		try {
+			IgnoreOperation operation = executeIgnore(new Path(file
+					.getAbsolutePath()));
+
+			File ignoreFile = new File(repository.getWorkTree(),
+					Constants.GITIGNORE_FILENAME);
+			String content = testUtils.slurpAndClose(ignoreFile.toURI()
+					.toURL().openStream());
+			assertEquals("/root.txt\n", content);
+			assertTrue(operation.isGitignoreOutsideWSChanged());
+		} finally {
+			FileUtils.delete(file);
+		}
+	}
+
 	@Test
 	public void testIgnoreNoTrailingNewline() throws Exception {
 		String existing = "/nonewline";
@@ -136,6 +164,21 @@ public void testIgnoreNoTrailingNewline() throws Exception {
 		assertFalse(operation.isGitignoreOutsideWSChanged());
 	}
 
+	@Test
+	public void testIgnoreMultipleFilesInFolder() throws Exception {
+		IFile ignored = project.createFile("a.txt", new byte[0]);
+		IFile b = project.createFile("b.txt", new byte[0]);
+		IFile c = project.createFile("c.txt", new byte[0]);
+		project.createFile(Constants.GITIGNORE_FILENAME, "/a.txt\n".getBytes());
+
+		IgnoreOperation operation = executeIgnore(ignored.getLocation(),
+				b.getLocation(), c.getLocation(), b.getLocation());
+
+		String content = project.getFileContent(Constants.GITIGNORE_FILENAME);
+		assertEquals("/a.txt\n/b.txt\n/c.txt\n", content);
+		assertFalse(operation.isGitignoreOutsideWSChanged());
+	}
+
 	private IgnoreOperation executeIgnore(IPath... paths) throws Exception {
 		IgnoreOperation operation = new IgnoreOperation(Arrays.asList(paths));
 		operation.execute(new NullProgressMonitor());
@@ -30,6 +30,8 @@
 import org.eclipse.core.runtime.preferences.DefaultScope;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.egit.core.internal.CommitDiffCache;
+import org.eclipse.egit.core.internal.FileObjectIdCache;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
 import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.egit.core.internal.trace.GitTraceLocation;
@@ -52,8 +54,12 @@
 public class Activator extends Plugin implements DebugOptionsListener {
 	private static Activator plugin;
 	private static String pluginId;
+	private static final String COMMIT_DIFF_CACHE_FOLDER = "commitDiffCache"; //$NON-NLS-1$
+	private static final int FILE_OBJECT_ID_CACHE_SIZE = 50000;
 	private RepositoryCache repositoryCache;
 	private IndexDiffCache indexDiffCache;
+	private CommitDiffCache commitDiffCache;
+	private FileObjectIdCache fileObjectIdCache;
 	private RepositoryUtil repositoryUtil;
 	private EGitSecureStore secureStore;
 	private AutoShareProjects shareGitProjectsJob;
@@ -130,6 +136,10 @@ public void start(final BundleContext context) throws Exception {
 		if (gitPrefix != null)
 			FS.DETECTED.setGitPrefix(new File(gitPrefix));
 
+		commitDiffCache = createCommitDiffCache();
+
+		fileObjectIdCache = new FileObjectIdCache(FILE_OBJECT_ID_CACHE_SIZE);
+
 		repositoryUtil = new RepositoryUtil();
 
 		secureStore = new EGitSecureStore(SecurePreferencesFactory.getDefault());
@@ -156,6 +166,35 @@ public IndexDiffCache getIndexDiffCache() {
 		return indexDiffCache;
 	}
 
+	/**
+	 * @return cache for the changes between trees
+	 */
+	public CommitDiffCache getCommitDiffCache() {
+		return commitDiffCache;
+	}
+
+	/**
+	 * @return cache for the blob ids of local files
+	 */
+	public FileObjectIdCache getFileObjectIdCache() {
+		return fileObjectIdCache;
+	}
+
+	private CommitDiffCache createCommitDiffCache() {
+		IEclipsePreferences d = DefaultScope.INSTANCE.getNode(getPluginId());
+		IEclipsePreferences p = InstanceScope.INSTANCE.getNode(getPluginId());
+		int size = p.getInt(GitCorePreferences.core_commitDiffCacheSize,
+				d.getInt(GitCorePreferences.core_commitDiffCacheSize, 0));
+		boolean onDisk = p.getBoolean(
+				GitCorePreferences.core_commitDiffCacheOnDisk, d.getBoolean(
+						GitCorePreferences.core_commitDiffCacheOnDisk, false));
+		File spillDirectory = null;
+		if (onDisk)
+			spillDirectory = getStateLocation().append(COMMIT_DIFF_CACHE_FOLDER)
+					.toFile();
+		return new CommitDiffCache(size, spillDirectory);
+	}
+
 	/**
 	 * @return the {@link RepositoryUtil} instance
 	 */
@@ -173,7 +212,10 @@ public EGitSecureStore getSecureStore() {
 	public void stop(final BundleContext context) throws Exception {
 		GitProjectData.detachFromWorkspace();
 		repositoryCache = null;
+		indexDiffCache.dispose();
 		indexDiffCache = null;
+		commitDiffCache = null;
+		fileObjectIdCache = null;
 		repositoryUtil.dispose();
 		repositoryUtil = null;
 		secureStore = null;
@@ -26,5 +26,8 @@ public void initializeDefaultPreferences() {
 		p.putInt(GitCorePreferences.core_deltaBaseCacheLimit, 10 * MB);
 		p.putInt(GitCorePreferences.core_streamFileThreshold, 50 * MB);
 		p.putBoolean(GitCorePreferences.core_autoShareProjects, false);
+		p.putInt(GitCorePreferences.core_indexDiffUpdateDelay, 100);
+		p.putInt(GitCorePreferences.core_commitDiffCacheSize, 200000);
+		p.putBoolean(GitCorePreferences.core_commitDiffCacheOnDisk, false);
 	}
 }
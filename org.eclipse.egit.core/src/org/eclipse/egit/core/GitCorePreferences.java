@@ -32,4 +32,13 @@ public class GitCorePreferences {
 	/** */
 	public static final String core_gitPrefix =
 		"core_gitPrefix"; //$NON-NLS-1$
+	/** */
+	public static final String core_indexDiffUpdateDelay =
+		"core_indexDiffUpdateDelay"; //$NON-NLS-1$
+	/** */
+	public static final String core_commitDiffCacheSize =
+		"core_commitDiffCacheSize"; //$NON-NLS-1$
+	/** */
+	public static final String core_commitDiffCacheOnDisk =
+		"core_commitDiffCacheOnDisk"; //$NON-NLS-1$
 }
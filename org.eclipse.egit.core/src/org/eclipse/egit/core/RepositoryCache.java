@@ -14,25 +14,91 @@
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.storage.file.FileRepository;
 
 /**
  * Central cache for Repository instances
- *
+ * <p>
+ * The cache keeps at most a given number of repositories open. When more
+ * repositories are opened or a repository wasn't looked up for the idle time,
+ * the least recently used repositories are closed, which releases their pack
+ * files and caches. A closed repository is still referenced weakly, so the
+ * same instance is returned and opened again as long as it is used elsewhere.
+ * <p>
+ * Lookups of cached repositories don't lock the cache and don't access the
+ * file system.
  */
 public class RepositoryCache {
-	private final Map<File, Reference<Repository>> repositoryCache = new HashMap<File, Reference<Repository>>();
+
+	/** Default maximum number of open repositories */
+	static final int DEFAULT_MAX_OPEN = 20;
+
+	/** Default idle time (in milliseconds) after which a repository is closed */
+	static final long DEFAULT_IDLE_TIME = 10 * 60 * 1000L;
+
+	private final ConcurrentMap<File, Entry> repositoryCache = new ConcurrentHashMap<File, Entry>();
+
+	private final ReferenceQueue<Repository> queue = new ReferenceQueue<Repository>();
+
+	private final int maxOpen;
+
+	private final long idleTime;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	// guarded by this
+	private int openCount;
+
+	private volatile long nextIdleCheck;
+
+	/**
+	 * Cache entry of a repository, holding a strong reference while the
+	 * repository is open
+	 */
+	private static class Entry extends WeakReference<Repository> {
+
+		final File gitDir;
+
+		// strong reference while open, only changed by the cache while locked
+		volatile Repository open;
+
+		volatile long lastAccess;
+
+		Entry(File gitDir, Repository repository,
+				ReferenceQueue<Repository> queue) {
+			super(repository, queue);
+			this.gitDir = gitDir;
+			this.open = repository;
+			this.lastAccess = System.currentTimeMillis();
+		}
+	}
 
 	RepositoryCache() {
-		// package private constructor
+		this(DEFAULT_MAX_OPEN, DEFAULT_IDLE_TIME);
+	}
+
+	/**
+	 * @param maxOpen
+	 *            maximum number of repositories kept open
+	 * @param idleTime
+	 *            time (in milliseconds) after which a repository which wasn't
+	 *            looked up is closed
+	 */
+	RepositoryCache(int maxOpen, long idleTime) {
+		this.maxOpen = maxOpen;
+		this.idleTime = idleTime;
+		this.nextIdleCheck = System.currentTimeMillis() + idleTime;
 	}
 
 	/**
@@ -43,37 +109,144 @@ public class RepositoryCache {
 	 *         in the cache.
 	 * @throws IOException
 	 */
-	public synchronized Repository lookupRepository(final File gitDir)
+	public Repository lookupRepository(final File gitDir)
 			throws IOException {
-		prune(repositoryCache);
-		Reference<Repository> r = repositoryCache.get(gitDir);
-		Repository d = r != null ? r.get() : null;
-		if (d == null) {
-			d = new FileRepository(gitDir);
-			repositoryCache.put(gitDir, new WeakReference<Repository>(d));
+		expunge();
+		Entry entry = repositoryCache.get(gitDir);
+		Repository d = entry != null ? entry.get() : null;
+		if (d != null) {
+			hitCount.incrementAndGet();
+			long now = System.currentTimeMillis();
+			entry.lastAccess = now;
+			if (entry.open == null || now >= nextIdleCheck)
+				synchronized (this) {
+					reopen(entry, d);
+					evict(entry);
+				}
+			return d;
+		}
+
+		synchronized (this) {
+			entry = repositoryCache.get(gitDir);
+			d = entry != null ? entry.get() : null;
+			if (d != null) {
+				hitCount.incrementAndGet();
+				entry.lastAccess = System.currentTimeMillis();
+				reopen(entry, d);
+			} else {
+				missCount.incrementAndGet();
+				d = new FileRepository(gitDir);
+				entry = new Entry(gitDir, d, queue);
+				repositoryCache.put(gitDir, entry);
+				openCount++;
+			}
+			evict(entry);
+			return d;
 		}
-		return d;
 	}
 
 	/**
 	 * @return all Repository instances contained in the cache
 	 */
-	public synchronized Repository[] getAllRepositories() {
-		prune(repositoryCache);
+	public Repository[] getAllRepositories() {
+		expunge();
 		List<Repository> repositories = new ArrayList<Repository>();
-		for (Reference<Repository> reference : repositoryCache.values()) {
-			repositories.add(reference.get());
+		for (Entry entry : repositoryCache.values()) {
+			Repository repository = entry.get();
+			if (repository != null && repository.getDirectory().exists())
+				repositories.add(repository);
 		}
 		return repositories.toArray(new Repository[repositories.size()]);
 	}
 
-	private static void prune(Map<File, Reference<Repository>> map) {
-		for (final Iterator<Map.Entry<File, Reference<Repository>>> i = map.entrySet()
-				.iterator(); i.hasNext();) {
-			Repository repository = i.next().getValue().get();
-			if (repository == null
-					|| !repository.getDirectory().exists())
-				i.remove();
+	/**
+	 * Closes the repository if it is open in the cache, e.g. because it was
+	 * removed from the configured repositories. If it is still used elsewhere,
+	 * the same instance is returned by the next lookup.
+	 *
+	 * @param gitDir
+	 */
+	public synchronized void evict(File gitDir) {
+		Entry entry = repositoryCache.get(gitDir);
+		if (entry != null)
+			close(entry);
+	}
+
+	/**
+	 * @return number of lookups which returned a cached repository
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of lookups which created a new repository
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of repositories currently kept open by the cache
+	 */
+	public synchronized int getOpenCount() {
+		return openCount;
+	}
+
+	private void reopen(Entry entry, Repository repository) {
+		if (entry.open != null)
+			return;
+		repository.incrementOpen();
+		entry.open = repository;
+		openCount++;
+	}
+
+	/**
+	 * Closes the repositories which were idle for too long and the least
+	 * recently used repositories exceeding the maximum number of open
+	 * repositories
+	 *
+	 * @param keep
+	 *            entry which was just looked up
+	 */
+	private void evict(Entry keep) {
+		long now = System.currentTimeMillis();
+		if (now >= nextIdleCheck) {
+			nextIdleCheck = now + idleTime / 10;
+			for (Entry entry : repositoryCache.values())
+				if (entry != keep && entry.open != null
+						&& now - entry.lastAccess > idleTime)
+					close(entry);
+		}
+		while (openCount > maxOpen) {
+			Entry eldest = null;
+			for (Entry entry : repositoryCache.values())
+				if (entry != keep && entry.open != null
+						&& (eldest == null || entry.lastAccess < eldest.lastAccess))
+					eldest = entry;
+			if (eldest == null)
+				break;
+			close(eldest);
+		}
+	}
+
+	private void close(Entry entry) {
+		Repository repository = entry.open;
+		if (repository == null)
+			return;
+		entry.open = null;
+		openCount--;
+		repository.close();
+	}
+
+	/**
+	 * Removes the entries of repositories which were garbage collected
+	 */
+	private void expunge() {
+		Reference<? extends Repository> reference;
+		while ((reference = queue.poll()) != null) {
+			Entry entry = (Entry) reference;
+			repositoryCache.remove(entry.gitDir, entry);
 		}
 	}
 
@@ -81,8 +254,9 @@ private static void prune(Map<File, Reference<Repository>> map) {
 	 * TESTING ONLY!
 	 * Unit tests can use this method to get a clean beginning state
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		repositoryCache.clear();
+		openCount = 0;
 	}
 
 }
@@ -0,0 +1,583 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.egit.core.Activator;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Cache of the files changed between two trees.
+ * <p>
+ * The changes between two trees never change, therefore the result of a
+ * recursive tree walk is cached for the pair of trees and the path filter.
+ * Only path filters which can be identified by their string representation
+ * are cached, see {@link #getFilterKey(TreeFilter)}. The cache is bounded by
+ * the total number of cached paths, the least recently used diffs are evicted
+ * first. If a spill directory is given, evicted diffs are written to that
+ * directory and read from there on the next request, so they survive a
+ * restart as well.
+ */
+public class CommitDiffCache {
+
+	private static final int MAGIC = 0x45474443; // "EGDC"
+
+	private static final int VERSION = 1;
+
+	private static final int MAX_SPILL_FILES = 10000;
+
+	// number of spilled diffs after which the spill directory is trimmed
+	private static final int TRIM_INTERVAL = MAX_SPILL_FILES / 10;
+
+	private static final int ID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+	private final int maxPaths;
+
+	private final File spillDirectory;
+
+	private final LinkedHashMap<Key, TreeDiff> cache = new LinkedHashMap<Key, TreeDiff>(
+			16, 0.75f, true);
+
+	private int cachedPaths;
+
+	private int spillsUntilTrim;
+
+	private long hitCount;
+
+	private long spillHitCount;
+
+	private long missCount;
+
+	/**
+	 * The files changed between two trees. The paths, modes and object ids
+	 * are stored in arrays, one entry per changed file in tree walk order.
+	 */
+	public static class TreeDiff {
+
+		private static final AbbreviatedObjectId A_ZERO = AbbreviatedObjectId
+				.fromObjectId(ObjectId.zeroId());
+
+		private final String[] paths;
+
+		// old and new mode of each path
+		private final int[] modes;
+
+		// raw old and new object id of each path
+		private final byte[] ids;
+
+		private TreeDiff(String[] paths, int[] modes, byte[] ids) {
+			this.paths = paths;
+			this.modes = modes;
+			this.ids = ids;
+		}
+
+		/**
+		 * @return number of changed files
+		 */
+		public int size() {
+			return paths.length;
+		}
+
+		/**
+		 * @param index
+		 * @return repository relative path of the changed file
+		 */
+		public String getPath(int index) {
+			return paths[index];
+		}
+
+		/**
+		 * @param index
+		 * @return mode of the file in the first tree
+		 */
+		public FileMode getOldMode(int index) {
+			return FileMode.fromBits(modes[2 * index]);
+		}
+
+		/**
+		 * @param index
+		 * @return mode of the file in the second tree
+		 */
+		public FileMode getNewMode(int index) {
+			return FileMode.fromBits(modes[2 * index + 1]);
+		}
+
+		/**
+		 * @param index
+		 * @return object id of the file in the first tree, zero id if it
+		 *         doesn't exist there
+		 */
+		public ObjectId getOldId(int index) {
+			return ObjectId.fromRaw(ids, 2 * index * ID_LENGTH);
+		}
+
+		/**
+		 * @param index
+		 * @return object id of the file in the second tree, zero id if it
+		 *         doesn't exist there
+		 */
+		public ObjectId getNewId(int index) {
+			return ObjectId.fromRaw(ids, (2 * index + 1) * ID_LENGTH);
+		}
+
+		/**
+		 * Creates the same entries as {@link DiffEntry#scan(TreeWalk)} for a
+		 * recursive walk of the two trees without rename detection.
+		 *
+		 * @return the diff entries
+		 */
+		public List<DiffEntry> toDiffEntries() {
+			List<DiffEntry> entries = new ArrayList<DiffEntry>(paths.length);
+			for (int i = 0; i < paths.length; i++) {
+				FileMode oldMode = getOldMode(i);
+				FileMode newMode = getNewMode(i);
+				AbbreviatedObjectId oldId = AbbreviatedObjectId
+						.fromObjectId(getOldId(i));
+				AbbreviatedObjectId newId = AbbreviatedObjectId
+						.fromObjectId(getNewId(i));
+				if (oldMode == FileMode.MISSING)
+					entries.add(new CachedDiffEntry(DiffEntry.ChangeType.ADD,
+							DiffEntry.DEV_NULL, paths[i], oldMode, newMode,
+							A_ZERO, newId));
+				else if (newMode == FileMode.MISSING)
+					entries.add(new CachedDiffEntry(
+							DiffEntry.ChangeType.DELETE, paths[i],
+							DiffEntry.DEV_NULL, oldMode, newMode, oldId, A_ZERO));
+				else if (sameType(oldMode, newMode))
+					entries.add(new CachedDiffEntry(
+							DiffEntry.ChangeType.MODIFY, paths[i], paths[i],
+							oldMode, newMode, oldId, newId));
+				else {
+					// a change of the file type is a deletion and an addition
+					entries.add(new CachedDiffEntry(
+							DiffEntry.ChangeType.DELETE, paths[i],
+							DiffEntry.DEV_NULL, oldMode, FileMode.MISSING,
+							oldId, A_ZERO));
+					entries.add(new CachedDiffEntry(DiffEntry.ChangeType.ADD,
+							DiffEntry.DEV_NULL, paths[i], FileMode.MISSING,
+							newMode, A_ZERO, newId));
+				}
+			}
+			return entries;
+		}
+
+		private static boolean sameType(FileMode a, FileMode b) {
+			return (a.getBits() & FileMode.TYPE_MASK) == (b.getBits() & FileMode.TYPE_MASK);
+		}
+	}
+
+	private static class CachedDiffEntry extends DiffEntry {
+
+		CachedDiffEntry(ChangeType changeType, String oldPath, String newPath,
+				FileMode oldMode, FileMode newMode, AbbreviatedObjectId oldId,
+				AbbreviatedObjectId newId) {
+			this.changeType = changeType;
+			this.oldPath = oldPath;
+			this.newPath = newPath;
+			this.oldMode = oldMode;
+			this.newMode = newMode;
+			this.oldId = oldId;
+			this.newId = newId;
+		}
+	}
+
+	private static class Key {
+
+		private final ObjectId treeA;
+
+		private final ObjectId treeB;
+
+		private final String filter;
+
+		Key(AnyObjectId treeA, AnyObjectId treeB, String filter) {
+			this.treeA = treeA != null ? treeA.copy() : ObjectId.zeroId();
+			this.treeB = treeB != null ? treeB.copy() : ObjectId.zeroId();
+			this.filter = filter;
+		}
+
+		String getFileName() {
+			MessageDigest md = Constants.newMessageDigest();
+			byte[] raw = new byte[ID_LENGTH];
+			treeA.copyRawTo(raw, 0);
+			md.update(raw);
+			treeB.copyRawTo(raw, 0);
+			md.update(raw);
+			md.update(Constants.encode(filter));
+			return ObjectId.fromRaw(md.digest()).name();
+		}
+
+		@Override
+		public int hashCode() {
+			return treeA.hashCode() * 31 + treeB.hashCode() + filter.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return treeA.equals(other.treeA) && treeB.equals(other.treeB)
+					&& filter.equals(other.filter);
+		}
+	}
+
+	/**
+	 * @param maxPaths
+	 *            maximum number of changed paths kept in memory
+	 * @param spillDirectory
+	 *            directory evicted diffs are written to or {@code null} if
+	 *            they should be discarded
+	 */
+	public CommitDiffCache(int maxPaths, File spillDirectory) {
+		this.maxPaths = maxPaths;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Returns the files changed between the two trees, calculating them if
+	 * they are not cached yet
+	 *
+	 * @param reader
+	 *            reader used to read the trees
+	 * @param treeA
+	 *            the first tree or {@code null} for an empty tree
+	 * @param treeB
+	 *            the second tree or {@code null} for an empty tree
+	 * @param filter
+	 *            path filter or {@code null} if all paths should be included;
+	 *            the diff is calculated without caching for filters other
+	 *            than {@link TreeFilter#ALL}, {@link PathFilter} and
+	 *            {@link PathFilterGroup}
+	 * @return the changed files
+	 * @throws IOException
+	 */
+	public TreeDiff get(ObjectReader reader, AnyObjectId treeA,
+			AnyObjectId treeB, TreeFilter filter) throws IOException {
+		String filterKey = getFilterKey(filter);
+		Key key = new Key(treeA, treeB, filterKey != null ? filterKey : ""); //$NON-NLS-1$
+		if (filterKey == null) {
+			synchronized (this) {
+				missCount++;
+			}
+			return calculate(reader, key, filter);
+		}
+		synchronized (this) {
+			TreeDiff diff = cache.get(key);
+			if (diff != null) {
+				hitCount++;
+				return diff;
+			}
+		}
+
+		TreeDiff diff = readSpilled(key);
+		boolean spilled = diff != null;
+		if (!spilled)
+			diff = calculate(reader, key, filter);
+
+		Map<Key, TreeDiff> evicted;
+		synchronized (this) {
+			if (spilled)
+				spillHitCount++;
+			else
+				missCount++;
+			evicted = put(key, diff);
+		}
+		for (Map.Entry<Key, TreeDiff> entry : evicted.entrySet())
+			spill(entry.getKey(), entry.getValue());
+		return diff;
+	}
+
+	/**
+	 * @return number of requests answered from memory
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return number of requests answered from the spill directory
+	 */
+	public synchronized long getSpillHitCount() {
+		return spillHitCount;
+	}
+
+	/**
+	 * @return number of requests which required a tree walk
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Removes all diffs from memory
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		cachedPaths = 0;
+	}
+
+	/**
+	 * The diff of a filter is cached under its string representation, this
+	 * is only done for filters which are known to represent all of their
+	 * state in it.
+	 *
+	 * @param filter
+	 * @return the key of the filter or {@code null} if diffs of the filter
+	 *         must not be cached
+	 */
+	private static String getFilterKey(TreeFilter filter) {
+		if (filter == null || filter == TreeFilter.ALL)
+			return ""; //$NON-NLS-1$
+		if (filter instanceof PathFilter
+				|| filter.getClass().getEnclosingClass() == PathFilterGroup.class)
+			return filter.toString();
+		return null;
+	}
+
+	private Map<Key, TreeDiff> put(Key key, TreeDiff diff) {
+		Map<Key, TreeDiff> evicted = new LinkedHashMap<Key, TreeDiff>();
+		if (cache.put(key, diff) == null)
+			cachedPaths += weight(diff);
+		Iterator<Map.Entry<Key, TreeDiff>> it = cache.entrySet().iterator();
+		while (cachedPaths > maxPaths && it.hasNext()) {
+			Map.Entry<Key, TreeDiff> eldest = it.next();
+			if (eldest.getKey().equals(key))
+				break;
+			evicted.put(eldest.getKey(), eldest.getValue());
+			cachedPaths -= weight(eldest.getValue());
+			it.remove();
+		}
+		return evicted;
+	}
+
+	private static int weight(TreeDiff diff) {
+		return diff.size() + 1;
+	}
+
+	private static TreeDiff calculate(ObjectReader reader, Key key,
+			TreeFilter filter) throws IOException {
+		TreeWalk walk = new TreeWalk(reader);
+		addTree(walk, key.treeA);
+		addTree(walk, key.treeB);
+		walk.setRecursive(true);
+		if (filter == null || filter == TreeFilter.ALL)
+			walk.setFilter(TreeFilter.ANY_DIFF);
+		else
+			walk.setFilter(AndTreeFilter.create(TreeFilter.ANY_DIFF,
+					filter.clone()));
+
+		List<String> paths = new ArrayList<String>();
+		int[] modes = new int[32];
+		byte[] ids = new byte[32 * ID_LENGTH];
+		MutableObjectId idBuf = new MutableObjectId();
+		while (walk.next()) {
+			int n = paths.size();
+			if (2 * n + 2 > modes.length) {
+				modes = grow(modes);
+				byte[] newIds = new byte[ids.length * 2];
+				System.arraycopy(ids, 0, newIds, 0, ids.length);
+				ids = newIds;
+			}
+			paths.add(walk.getPathString());
+			modes[2 * n] = walk.getRawMode(0);
+			modes[2 * n + 1] = walk.getRawMode(1);
+			walk.getObjectId(idBuf, 0);
+			idBuf.copyRawTo(ids, 2 * n * ID_LENGTH);
+			walk.getObjectId(idBuf, 1);
+			idBuf.copyRawTo(ids, (2 * n + 1) * ID_LENGTH);
+		}
+
+		int n = paths.size();
+		int[] trimmedModes = new int[2 * n];
+		System.arraycopy(modes, 0, trimmedModes, 0, trimmedModes.length);
+		byte[] trimmedIds = new byte[2 * n * ID_LENGTH];
+		System.arraycopy(ids, 0, trimmedIds, 0, trimmedIds.length);
+		return new TreeDiff(paths.toArray(new String[n]), trimmedModes,
+				trimmedIds);
+	}
+
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static void addTree(TreeWalk walk, ObjectId tree)
+			throws IOException {
+		if (ObjectId.zeroId().equals(tree))
+			walk.addTree(new EmptyTreeIterator());
+		else
+			walk.addTree(tree);
+	}
+
+	/**
+	 * @param key
+	 * @return the spilled diff or {@code null} if there is no valid spilled
+	 *         diff for the key, an invalid file is deleted
+	 */
+	private TreeDiff readSpilled(Key key) {
+		if (spillDirectory == null)
+			return null;
+		File file = new File(spillDirectory, key.getFileName());
+		if (!file.isFile())
+			return null;
+		TreeDiff diff = null;
+		try {
+			diff = readSpilled(file, key);
+		} catch (IOException e) {
+			// invalid, the diff is calculated again
+		} catch (RuntimeException e) {
+			// invalid, the diff is calculated again
+		}
+		if (diff == null)
+			file.delete();
+		return diff;
+	}
+
+	private static TreeDiff readSpilled(File file, Key key) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			byte[] raw = new byte[ID_LENGTH];
+			in.readFully(raw);
+			if (!key.treeA.equals(ObjectId.fromRaw(raw)))
+				return null;
+			in.readFully(raw);
+			if (!key.treeB.equals(ObjectId.fromRaw(raw)))
+				return null;
+			if (!key.filter.equals(in.readUTF()))
+				return null;
+			int n = in.readInt();
+			// each path needs at least 10 bytes
+			if (n < 0 || n > file.length() / 10)
+				return null;
+			String[] paths = new String[n];
+			int[] modes = new int[2 * n];
+			byte[] ids = new byte[2 * n * ID_LENGTH];
+			for (int i = 0; i < n; i++) {
+				paths[i] = in.readUTF();
+				modes[2 * i] = in.readInt();
+				modes[2 * i + 1] = in.readInt();
+			}
+			in.readFully(ids);
+			if (in.read() != -1)
+				return null;
+			return new TreeDiff(paths, modes, ids);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the diff to a temporary file first which is renamed when
+	 * complete, so that a spill file is either complete or missing
+	 */
+	private void spill(Key key, TreeDiff diff) {
+		if (spillDirectory == null)
+			return;
+		try {
+			prepareSpillDirectory();
+			File file = new File(spillDirectory, key.getFileName());
+			if (file.isFile())
+				return;
+			File tmp = File.createTempFile("spill", ".tmp", spillDirectory); //$NON-NLS-1$ //$NON-NLS-2$
+			try {
+				writeSpilled(tmp, key, diff);
+				// another thread may have spilled the same diff
+				if (!tmp.renameTo(file) && !file.isFile())
+					throw new IOException(file.getPath());
+			} finally {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			Activator.logError(e.getMessage(), e);
+		}
+	}
+
+	private static void writeSpilled(File file, Key key, TreeDiff diff)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			key.treeA.copyRawTo(out);
+			key.treeB.copyRawTo(out);
+			out.writeUTF(key.filter);
+			out.writeInt(diff.paths.length);
+			for (int i = 0; i < diff.paths.length; i++) {
+				out.writeUTF(diff.paths[i]);
+				out.writeInt(diff.modes[2 * i]);
+				out.writeInt(diff.modes[2 * i + 1]);
+			}
+			out.write(diff.ids);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Creates the spill directory and deletes the oldest files if it
+	 * contains more than {@link #MAX_SPILL_FILES} files. This is done before
+	 * the first diff is spilled and then after every {@link #TRIM_INTERVAL}
+	 * spilled diffs.
+	 */
+	private synchronized void prepareSpillDirectory() throws IOException {
+		if (spillsUntilTrim-- > 0)
+			return;
+		spillsUntilTrim = TRIM_INTERVAL;
+		if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs())
+			throw new IOException(spillDirectory.getPath());
+		File[] files = spillDirectory.listFiles();
+		if (files == null || files.length <= MAX_SPILL_FILES)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < files.length - MAX_SPILL_FILES / 2; i++)
+			files[i].delete();
+	}
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+/**
+ * Cache of the blob ids of local files, keyed by the path, length and
+ * modification time of the files.
+ * <p>
+ * A file is hashed at most once as long as its length and modification time
+ * do not change. Like git does for the index, the id of a file is not cached
+ * if the file was modified shortly before it was hashed, since it could be
+ * modified again without changing its time stamp.
+ */
+public class FileObjectIdCache {
+
+	/**
+	 * Files modified less than this number of milliseconds before they were
+	 * hashed are racy; covers file systems with a time stamp resolution of
+	 * up to two seconds
+	 */
+	private static final long RACY_INTERVAL = 2000;
+
+	private final int maxEntries;
+
+	private final LinkedHashMap<String, Entry> cache;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private static class Entry {
+
+		final long length;
+
+		final long lastModified;
+
+		final ObjectId id;
+
+		Entry(long length, long lastModified, ObjectId id) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * @param maxEntries
+	 *            maximum number of files kept in the cache
+	 */
+	public FileObjectIdCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > FileObjectIdCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the id the file would get as a blob in a repository, without
+	 * any conversion of its content
+	 *
+	 * @param file
+	 *            a local file
+	 * @return the blob id of the content of the file, or null if the file
+	 *         was modified while it was hashed
+	 * @throws IOException
+	 */
+	public ObjectId getObjectId(File file) throws IOException {
+		String path = file.getPath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		synchronized (this) {
+			Entry entry = cache.get(path);
+			if (entry != null && entry.length == length
+					&& entry.lastModified == lastModified) {
+				hitCount++;
+				return entry.id;
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		ObjectId id;
+		InputStream in = new FileInputStream(file);
+		try {
+			id = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+					length, in);
+			if (in.read() != -1)
+				return null;
+		} finally {
+			in.close();
+		}
+		if (file.length() != length || file.lastModified() != lastModified)
+			return null;
+
+		synchronized (this) {
+			missCount++;
+			if (start - lastModified >= RACY_INTERVAL)
+				cache.put(path, new Entry(length, lastModified, id));
+		}
+		return id;
+	}
+
+	/**
+	 * @return number of requests answered from the cache
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return number of requests which required hashing a file
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Removes all ids from the cache
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+}
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Reverse index of the tags, local branches and remote branches of one
+ * repository, mapping object ids to the names of the refs pointing to them.
+ * <p>
+ * Tags are peeled, so an annotated tag is found by the id of the object it
+ * finally points to. The refs of an object are ordered by precedence:
+ * <ul>
+ * <li>Tags take precedence over branches</li>
+ * <li>Local branches take precedence over remote branches</li>
+ * <li>Newer tags take precedence over older ones; the tagger time stamp is
+ * used, or the committer time stamp of the commit if the tag has no tagger</li>
+ * <li>Otherwise the ref name with the highest lexicographic value comes
+ * first</li>
+ * </ul>
+ * <p>
+ * The index is built from the ref database on the first access and rebuilt
+ * after {@link #invalidate()} was called, e.g. on a refs changed event. Tag
+ * objects are immutable, so their peeled ids and time stamps are kept across
+ * rebuilds and only new tags are parsed. Reading the index does not lock.
+ */
+public class RefIndex {
+
+	private static final int TAG = 0;
+
+	private static final int LOCAL_BRANCH = 1;
+
+	private static final int REMOTE_BRANCH = 2;
+
+	private static final String[] NO_REFS = new String[0];
+
+	private static final Comparator<RefEntry> PRECEDENCE = new Comparator<RefEntry>() {
+		public int compare(RefEntry a, RefEntry b) {
+			if (a.kind != b.kind)
+				return a.kind - b.kind;
+			if (a.when != b.when)
+				return a.when > b.when ? -1 : 1;
+			return b.name.compareTo(a.name);
+		}
+	};
+
+	private final Object lock = new Object();
+
+	private volatile Map<ObjectId, String[]> refs;
+
+	private volatile boolean stale = true;
+
+	/** Peeled tag targets by ref target id; only accessed while locked */
+	private Map<ObjectId, TagTarget> tags = new HashMap<ObjectId, TagTarget>();
+
+	private static class TagTarget {
+
+		final ObjectId tagId;
+
+		final ObjectId id;
+
+		final long when;
+
+		TagTarget(ObjectId tagId, ObjectId id, long when) {
+			this.tagId = tagId;
+			this.id = id;
+			this.when = when;
+		}
+	}
+
+	private static class RefEntry {
+
+		final String name;
+
+		final int kind;
+
+		final long when;
+
+		RefEntry(String name, int kind, long when) {
+			this.name = name;
+			this.kind = kind;
+			this.when = when;
+		}
+	}
+
+	/**
+	 * Returns the refs pointing to an object, ordered by precedence
+	 *
+	 * @param repository
+	 *            the repository of this index
+	 * @param id
+	 *            the object id
+	 * @return the full names of the refs, may be empty
+	 * @throws IOException
+	 *             if the index could not be built
+	 */
+	public String[] getRefs(Repository repository, AnyObjectId id)
+			throws IOException {
+		Map<ObjectId, String[]> current = refs;
+		if (current == null || stale)
+			current = update(repository);
+		String[] names = current.get(id);
+		return names != null ? names : NO_REFS;
+	}
+
+	/**
+	 * Returns the ref with the highest precedence pointing to an object
+	 *
+	 * @param repository
+	 *            the repository of this index
+	 * @param id
+	 *            the object id
+	 * @return the full name of the ref, or <code>null</code> if no tag or
+	 *         branch points to the object
+	 * @throws IOException
+	 *             if the index could not be built
+	 */
+	public String getRef(Repository repository, AnyObjectId id)
+			throws IOException {
+		String[] names = getRefs(repository, id);
+		return names.length > 0 ? names[0] : null;
+	}
+
+	/**
+	 * Marks the index as outdated; it is rebuilt on the next access
+	 */
+	public void invalidate() {
+		stale = true;
+	}
+
+	private Map<ObjectId, String[]> update(Repository repository)
+			throws IOException {
+		synchronized (lock) {
+			if (refs != null && !stale)
+				return refs;
+			// reset first so that changes during the build are not lost
+			stale = false;
+			Map<ObjectId, String[]> result;
+			try {
+				result = build(repository);
+			} catch (IOException e) {
+				stale = true;
+				throw e;
+			}
+			refs = result;
+			return result;
+		}
+	}
+
+	private Map<ObjectId, String[]> build(Repository repository)
+			throws IOException {
+		Map<String, Ref> allRefs = repository.getRefDatabase().getRefs(
+				RefDatabase.ALL);
+		Map<ObjectId, List<RefEntry>> entries = new HashMap<ObjectId, List<RefEntry>>();
+		Map<ObjectId, TagTarget> newTags = new HashMap<ObjectId, TagTarget>();
+		RevWalk walk = new RevWalk(repository);
+		try {
+			for (Ref ref : allRefs.values()) {
+				String name = ref.getName();
+				ObjectId id = ref.getObjectId();
+				if (id == null)
+					continue;
+				int kind;
+				long when = 0;
+				if (name.startsWith(Constants.R_TAGS)) {
+					TagTarget target = getTagTarget(walk, id);
+					if (target == null)
+						continue;
+					newTags.put(target.tagId, target);
+					kind = TAG;
+					id = target.id;
+					when = target.when;
+				} else if (name.startsWith(Constants.R_HEADS))
+					kind = LOCAL_BRANCH;
+				else if (name.startsWith(Constants.R_REMOTES))
+					kind = REMOTE_BRANCH;
+				else
+					continue;
+				List<RefEntry> list = entries.get(id);
+				if (list == null) {
+					list = new ArrayList<RefEntry>(1);
+					entries.put(id, list);
+				}
+				list.add(new RefEntry(name, kind, when));
+			}
+		} finally {
+			walk.release();
+		}
+		// forget deleted tags
+		tags = newTags;
+
+		Map<ObjectId, String[]> result = new HashMap<ObjectId, String[]>(
+				entries.size() * 4 / 3 + 1);
+		for (Map.Entry<ObjectId, List<RefEntry>> entry : entries.entrySet()) {
+			List<RefEntry> list = entry.getValue();
+			if (list.size() > 1)
+				Collections.sort(list, PRECEDENCE);
+			String[] names = new String[list.size()];
+			for (int i = 0; i < names.length; i++)
+				names[i] = list.get(i).name;
+			result.put(entry.getKey(), names);
+		}
+		return result;
+	}
+
+	private TagTarget getTagTarget(RevWalk walk, ObjectId id)
+			throws IOException {
+		TagTarget target = tags.get(id);
+		if (target != null)
+			return target;
+		RevObject object;
+		try {
+			object = walk.parseAny(id);
+		} catch (MissingObjectException e) {
+			// broken tag, ignore
+			return null;
+		}
+		long when = 0;
+		if (object instanceof RevTag) {
+			PersonIdent tagger = ((RevTag) object).getTaggerIdent();
+			if (tagger != null)
+				when = tagger.getWhen().getTime();
+			try {
+				object = walk.peel(object);
+			} catch (MissingObjectException e) {
+				return null;
+			}
+		}
+		if (when == 0 && object instanceof RevCommit) {
+			walk.parseHeaders(object);
+			when = ((RevCommit) object).getCommitTime() * 1000L;
+		}
+		return new TagTarget(id.copy(), object.copy(), when);
+	}
+}
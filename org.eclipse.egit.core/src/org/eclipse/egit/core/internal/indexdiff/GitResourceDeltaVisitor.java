@@ -48,6 +48,8 @@ public class GitResourceDeltaVisitor implements IResourceDeltaVisitor {
 
 	private final Collection<IResource> resourcesToUpdate;
 
+	private final Collection<String> gitIgnoreFolders;
+
 	private boolean gitIgnoreChanged = false;
 
 	/**
@@ -62,6 +64,7 @@ public GitResourceDeltaVisitor(Repository repository) {
 
 		filesToUpdate = new HashSet<String>();
 		resourcesToUpdate = new HashSet<IResource>();
+		gitIgnoreFolders = new HashSet<String>();
 	}
 
 	public boolean visit(IResourceDelta delta) throws CoreException {
@@ -92,12 +95,16 @@ public boolean visit(IResourceDelta delta) throws CoreException {
 		if (resource.getType() != IResource.FILE)
 			return true;
 
+		String repoRelativePath = mapping.getRepoRelativePath(resource);
+
 		if (resource.getName().equals(GITIGNORE_NAME)) {
 			gitIgnoreChanged = true;
+			if (repoRelativePath != null)
+				gitIgnoreFolders.add(repoRelativePath.substring(0,
+						repoRelativePath.length() - GITIGNORE_NAME.length()));
 			return false;
 		}
 
-		String repoRelativePath = mapping.getRepoRelativePath(resource);
 		if (repoRelativePath!= null)
 			filesToUpdate.add(repoRelativePath);
 		resourcesToUpdate.add(resource);
@@ -137,4 +144,13 @@ public Collection<String> getFilesToUpdate() {
 	public boolean getGitIgnoreChanged() {
 		return gitIgnoreChanged;
 	}
+
+	/**
+	 * @return collection of folders containing a changed .gitignore file.
+	 *         Folder paths end with /, the repository root is represented by
+	 *         the empty string.
+	 */
+	public Collection<String> getGitIgnoreFolders() {
+		return gitIgnoreFolders;
+	}
 }
\ No newline at end of file
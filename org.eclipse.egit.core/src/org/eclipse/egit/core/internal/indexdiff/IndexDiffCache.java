@@ -55,6 +55,20 @@ public IndexDiffCacheEntry getIndexDiffCacheEntry(Repository repository) {
 		return entry;
 	}
 
+	/**
+	 * Returns the cache entry of the repository without creating it
+	 *
+	 * @param repository
+	 * @return cache entry or null if
+	 *         {@link #getIndexDiffCacheEntry(Repository)} was not called for
+	 *         the repository yet
+	 */
+	public IndexDiffCacheEntry findIndexDiffCacheEntry(Repository repository) {
+		synchronized (entries) {
+			return entries.get(repository);
+		}
+	}
+
 	/**
 	 * Adds a listener for IndexDiff changes. Note that only caches are
 	 * available for those repositories for which getIndexDiffCacheEntry was
@@ -77,6 +91,20 @@ public void removeIndexDiffChangedListener(IndexDiffChangedListener listener) {
 		}
 	}
 
+	/**
+	 * Disposes all cache entries, see {@link IndexDiffCacheEntry#dispose()}
+	 */
+	public void dispose() {
+		IndexDiffCacheEntry[] tmpEntries;
+		synchronized (entries) {
+			tmpEntries = entries.values().toArray(
+					new IndexDiffCacheEntry[entries.size()]);
+			entries.clear();
+		}
+		for (IndexDiffCacheEntry entry : tmpEntries)
+			entry.dispose();
+	}
+
 	private void createGlobalListener() {
 		globalListener = new IndexDiffChangedListener() {
 			public void indexDiffChanged(Repository repository,
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.egit.core.internal.indexdiff;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -19,25 +20,25 @@
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
-import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
 import org.eclipse.egit.core.EclipseGitProgressTransformer;
+import org.eclipse.egit.core.GitCorePreferences;
 import org.eclipse.egit.core.IteratorService;
-import org.eclipse.egit.core.JobFamilies;
 import org.eclipse.egit.core.internal.trace.GitTraceLocation;
 import org.eclipse.egit.core.internal.util.ProjectUtil;
 import org.eclipse.jgit.dircache.DirCache;
@@ -48,6 +49,7 @@
 import org.eclipse.jgit.events.RefsChangedListener;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
@@ -65,16 +67,21 @@ public class IndexDiffCacheEntry {
 
 	private static final int RESOURCE_LIST_UPDATE_LIMIT = 1000;
 
+	private static final String SNAPSHOT_FOLDER = "indexDiffSnapshots"; //$NON-NLS-1$
+
 	private Repository repository;
 
 	private volatile IndexDiffData indexDiffData;
 
-	private Job reloadJob;
+	private final IndexDiffUpdateJob updateJob;
 
 	private DirCache lastIndex;
 
-	// used to serialize index diff update jobs
-	private ReentrantLock lock = new ReentrantLock(true);
+	// tree of HEAD the current indexDiffData is based on
+	private volatile ObjectId lastHeadTree;
+
+	// state the current indexDiffData was calculated for, null if unknown
+	private volatile IndexDiffSnapshot.State snapshotState;
 
 	private Set<IndexDiffChangedListener> listeners = new HashSet<IndexDiffChangedListener>();
 
@@ -85,6 +92,7 @@ public class IndexDiffCacheEntry {
 	 */
 	public IndexDiffCacheEntry(Repository repository) {
 		this.repository = repository;
+		updateJob = createUpdateJob();
 		repository.getListenerList().addIndexChangedListener(
 				new IndexChangedListener() {
 					public void onIndexChanged(IndexChangedEvent event) {
@@ -94,10 +102,11 @@ public void onIndexChanged(IndexChangedEvent event) {
 		repository.getListenerList().addRefsChangedListener(
 				new RefsChangedListener() {
 					public void onRefsChanged(RefsChangedEvent event) {
-						scheduleReloadJob("RefsChanged"); //$NON-NLS-1$
+						refreshHeadDelta();
 					}
 				});
-		scheduleReloadJob("IndexDiffCacheEntry construction"); //$NON-NLS-1$
+		if (checkRepository())
+			updateJob.addRestore();
 		createResourceChangeListener();
 		if (!repository.isBare()) {
 			try {
@@ -223,7 +232,9 @@ private void refreshIndexDelta() {
 			}
 
 			if (!paths.isEmpty())
-				refreshFiles(paths);
+				scheduleScopedUpdateJob(paths,
+						Collections.<IResource> emptyList(),
+						"Too many index entries changed"); //$NON-NLS-1$
 
 		} catch (IOException ex) {
 			Activator.error(MessageFormat.format(
@@ -233,6 +244,64 @@ private void refreshIndexDelta() {
 		}
 	}
 
+	/**
+	 * Refreshes all paths that differ between the tree of HEAD the current
+	 * index diff is based on and the tree HEAD points to now. A ref change
+	 * which does not change the tree of HEAD (e.g. a fetch or a new tag) only
+	 * notifies the listeners.
+	 *
+	 * For bare repositories this does nothing.
+	 */
+	private void refreshHeadDelta() {
+		if (repository.isBare())
+			return;
+
+		try {
+			ObjectId oldTree = lastHeadTree;
+			ObjectId newTree = getHeadTree();
+
+			if (oldTree == null || newTree == null || indexDiffData == null) {
+				scheduleReloadJob("RefsChanged, no HEAD tree to compare"); //$NON-NLS-1$
+				return;
+			}
+			lastHeadTree = newTree;
+
+			if (oldTree.equals(newTree)) {
+				scheduleNotifyJob();
+				return;
+			}
+
+			Set<String> paths = new TreeSet<String>();
+			TreeWalk walk = new TreeWalk(repository);
+			try {
+				walk.addTree(oldTree);
+				walk.addTree(newTree);
+				walk.setRecursive(true);
+				walk.setFilter(TreeFilter.ANY_DIFF);
+				while (walk.next())
+					paths.add(walk.getPathString());
+			} finally {
+				walk.release();
+			}
+
+			if (paths.isEmpty())
+				scheduleNotifyJob();
+			else
+				scheduleScopedUpdateJob(paths,
+						Collections.<IResource> emptyList(),
+						"HEAD changed"); //$NON-NLS-1$
+		} catch (IOException ex) {
+			Activator.error(MessageFormat.format(
+					CoreText.IndexDiffCacheEntry_errorCalculatingIndexDelta,
+					repository), ex);
+			scheduleReloadJob("Exception while calculating HEAD delta, doing full reload instead"); //$NON-NLS-1$
+		}
+	}
+
+	private ObjectId getHeadTree() throws IOException {
+		return repository.resolve(Constants.HEAD + "^{tree}"); //$NON-NLS-1$
+	}
+
 	/**
 	 * The method returns the current index diff or null. Null is returned if
 	 * the first index diff calculation has not completed yet.
@@ -244,27 +313,173 @@ public IndexDiffData getIndexDiff() {
 	}
 
 	private void scheduleReloadJob(final String trigger) {
-		if (reloadJob != null)
-			reloadJob.cancel();
 		if (!checkRepository())
 			return;
-		reloadJob = new Job(getReloadJobName()) {
+		updateJob.addReload(trigger);
+	}
+
+	private boolean checkRepository() {
+		if (Activator.getDefault() == null)
+			return false;
+		if (!repository.getDirectory().exists())
+			return false;
+		return true;
+	}
+
+	private void scheduleNotifyJob() {
+		if (indexDiffData == null || !checkRepository())
+			return;
+		updateJob.addNotification();
+	}
+
+	/**
+	 * Schedules an update for the given files and folders. If there are too
+	 * many of them, the update is done for their common parent folders
+	 * instead. A full reload is only done if this would mean to re-evaluate
+	 * the whole working tree anyway.
+	 *
+	 * @param filesToUpdate
+	 *            repository relative paths, folders end with /
+	 * @param resourcesToUpdate
+	 * @param trigger
+	 */
+	private void scheduleScopedUpdateJob(Collection<String> filesToUpdate,
+			Collection<IResource> resourcesToUpdate, String trigger) {
+		Collection<String> scope = collapseToFolders(filesToUpdate,
+				RESOURCE_LIST_UPDATE_LIMIT);
+		if (scope == null)
+			scheduleReloadJob(trigger);
+		else
+			scheduleUpdateJob(scope, resourcesToUpdate);
+	}
+
+	/**
+	 * Replaces the deepest paths by their parent folders until less than
+	 * limit paths are left.
+	 *
+	 * @param paths
+	 *            repository relative paths, folders end with /
+	 * @param limit
+	 * @return the reduced paths or null if the paths can only be reduced to
+	 *         the repository root
+	 */
+	static Collection<String> collapseToFolders(Collection<String> paths,
+			int limit) {
+		if (paths.contains("")) //$NON-NLS-1$
+			return null;
+		Collection<String> result = paths;
+		while (result.size() >= limit) {
+			int maxDepth = 0;
+			for (String path : result)
+				maxDepth = Math.max(maxDepth, getDepth(path));
+			if (maxDepth == 0)
+				return null;
+			Set<String> reduced = new HashSet<String>();
+			for (String path : result)
+				if (getDepth(path) == maxDepth)
+					reduced.add(getParentFolder(path));
+				else
+					reduced.add(path);
+			result = reduced;
+		}
+		return result;
+	}
+
+	private static int getDepth(String path) {
+		int depth = 0;
+		int end = path.endsWith("/") ? path.length() - 1 : path.length(); //$NON-NLS-1$
+		for (int i = 0; i < end; i++)
+			if (path.charAt(i) == '/')
+				depth++;
+		return depth;
+	}
+
+	private static String getParentFolder(String path) {
+		int end = path.endsWith("/") ? path.length() - 1 : path.length(); //$NON-NLS-1$
+		return path.substring(0, path.lastIndexOf('/', end - 1) + 1);
+	}
+
+	private void scheduleUpdateJob(final Collection<String> filesToUpdate,
+			final Collection<IResource> resourcesToUpdate) {
+		if (!checkRepository())
+			return;
+		updateJob.addFiles(filesToUpdate, resourcesToUpdate);
+	}
+
+	private IndexDiffUpdateJob createUpdateJob() {
+		return new IndexDiffUpdateJob(getReloadJobName(), getUpdateDelay()) {
+
 			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				waitForWorkspaceLock(monitor);
-				if (monitor.isCanceled())
-					return Status.CANCEL_STATUS;
-				lock.lock();
+			protected boolean restoreIndexDiff(IProgressMonitor monitor) {
+				try {
+					long startTime = System.currentTimeMillis();
+					ObjectId headTree = getHeadTree();
+					IndexDiffSnapshot snapshot = IndexDiffSnapshot.read(
+							getSnapshotFile(), repository, headTree);
+					if (snapshot == null)
+						return false;
+					indexDiffData = new IndexDiffData(snapshot.getData(),
+							indexDiffData);
+					lastHeadTree = headTree;
+					snapshotState = snapshot.getState();
+					notifyListeners();
+
+					Collection<String> modifiedPaths = snapshot
+							.findModifiedPaths(repository, monitor);
+					if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
+						long time = System.currentTimeMillis() - startTime;
+						GitTraceLocation.getTrace().trace(
+								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
+								NLS.bind(
+										"Restored IndexDiffData from snapshot in {0} ms, {1} modified paths\nRepository: {2}", //$NON-NLS-1$
+										new Object[] { Long.valueOf(time),
+												Integer.valueOf(modifiedPaths
+														.size()),
+												repository.getWorkTree()
+														.getName() }));
+					}
+					if (monitor.isCanceled())
+						scheduleReloadJob("Validation of snapshot canceled"); //$NON-NLS-1$
+					else if (!modifiedPaths.isEmpty())
+						scheduleScopedUpdateJob(modifiedPaths,
+								Collections.<IResource> emptyList(),
+								"Modified after snapshot"); //$NON-NLS-1$
+					return true;
+				} catch (IOException e) {
+					if (GitTraceLocation.INDEXDIFFCACHE.isActive())
+						GitTraceLocation.getTrace().trace(
+								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
+								"Restoring IndexDiff snapshot failed", e); //$NON-NLS-1$
+					return indexDiffData != null;
+				} catch (RuntimeException e) {
+					// invalid snapshot, the index diff is calculated again
+					if (GitTraceLocation.INDEXDIFFCACHE.isActive())
+						GitTraceLocation.getTrace().trace(
+								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
+								"Restoring IndexDiff snapshot failed", e); //$NON-NLS-1$
+					return false;
+				}
+			}
+
+			@Override
+			protected IStatus reloadIndexDiff(String trigger,
+					IProgressMonitor monitor) {
 				try {
 					long startTime = System.currentTimeMillis();
+					ObjectId headTree = getHeadTree();
+					IndexDiffSnapshot.State state = IndexDiffSnapshot.State
+							.capture(repository);
 					IndexDiff result = calcIndexDiff(monitor, getName());
 					if (monitor.isCanceled())
 						return Status.CANCEL_STATUS;
-					indexDiffData = new IndexDiffData(result);
+					indexDiffData = new IndexDiffData(new IndexDiffData(result),
+							indexDiffData);
+					lastHeadTree = headTree;
+					snapshotState = state;
 					if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
 						long time = System.currentTimeMillis() - startTime;
 						StringBuilder message = new StringBuilder(
-								getTraceMessage(time));
+								getTraceMessage(time, trigger));
 						GitTraceLocation.getTrace().trace(
 								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
 								message.append(indexDiffData.toString())
@@ -278,12 +493,10 @@ protected IStatus run(IProgressMonitor monitor) {
 								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
 								"Calculating IndexDiff failed", e); //$NON-NLS-1$
 					return Status.OK_STATUS;
-				} finally {
-					lock.unlock();
 				}
 			}
 
-			private String getTraceMessage(long time) {
+			private String getTraceMessage(long time, String trigger) {
 				return NLS
 						.bind("\nUpdated IndexDiffData in {0} ms\nReason: {1}\nRepository: {2}\n", //$NON-NLS-1$
 						new Object[] { Long.valueOf(time), trigger,
@@ -291,58 +504,24 @@ private String getTraceMessage(long time) {
 			}
 
 			@Override
-			public boolean belongsTo(Object family) {
-				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE))
-					return true;
-				return super.belongsTo(family);
-			}
-
-		};
-		reloadJob.schedule();
-	}
-
-	private boolean checkRepository() {
-		if (Activator.getDefault() == null)
-			return false;
-		if (!repository.getDirectory().exists())
-			return false;
-		return true;
-	}
-
-	private void waitForWorkspaceLock(IProgressMonitor monitor) {
-		// Wait for the workspace lock to avoid starting the calculation
-		// of an IndexDiff while the workspace changes (e.g. due to a
-		// branch switch).
-		// The index diff calculation jobs do not lock the workspace
-		// during execution to avoid blocking the workspace.
-		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-		try {
-			Job.getJobManager().beginRule(root, monitor);
-		} catch (OperationCanceledException e) {
-			return;
-		} finally {
-			Job.getJobManager().endRule(root);
-		}
-	}
-
-	private void scheduleUpdateJob(final Collection<String> filesToUpdate,
-			final Collection<IResource> resourcesToUpdate) {
-		if (!checkRepository())
-			return;
-		Job job = new Job(getReloadJobName()) {
-			@Override
-			protected IStatus run(IProgressMonitor monitor) {
-				waitForWorkspaceLock(monitor);
-				if (monitor.isCanceled())
-					return Status.CANCEL_STATUS;
-				lock.lock();
+			protected IStatus updateIndexDiff(Collection<String> filesToUpdate,
+					Collection<IResource> resourcesToUpdate,
+					IProgressMonitor monitor) {
+				if (indexDiffData == null)
+					return reloadIndexDiff(
+							"Update requested, no diff available", monitor); //$NON-NLS-1$
 				try {
 					long startTime = System.currentTimeMillis();
+					IndexDiffSnapshot.State state = IndexDiffSnapshot.State
+							.capture(repository);
 					IndexDiffData result = calcIndexDiffData(monitor,
 							getName(), filesToUpdate, resourcesToUpdate);
 					if (monitor.isCanceled())
 						return Status.CANCEL_STATUS;
-					indexDiffData = result;
+					indexDiffData = new IndexDiffData(result, indexDiffData);
+					IndexDiffSnapshot.State previous = snapshotState;
+					snapshotState = previous != null ? previous.update(state)
+							: null;
 					if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
 						long time = System.currentTimeMillis() - startTime;
 						StringBuilder message = new StringBuilder(
@@ -363,19 +542,55 @@ protected IStatus run(IProgressMonitor monitor) {
 								GitTraceLocation.INDEXDIFFCACHE.getLocation(),
 								"Calculating IndexDiff failed", e); //$NON-NLS-1$
 					return Status.OK_STATUS;
-				} finally {
-					lock.unlock();
 				}
 			}
+
 			@Override
-			public boolean belongsTo(Object family) {
-				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE))
-					return true;
-				return super.belongsTo(family);
+			protected void notifyListeners() {
+				IndexDiffCacheEntry.this.notifyListeners();
 			}
-
 		};
-		job.schedule();
+	}
+
+	/**
+	 * Saves a snapshot of the current index diff to the state location of
+	 * the plug-in and stops listening to workspace changes. The snapshot is
+	 * restored when an entry for the repository is created next time.
+	 */
+	public void dispose() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+				resourceChangeListener);
+		// only save up-to-date data
+		boolean upToDate = updateJob.getState() == Job.NONE;
+		updateJob.cancel();
+		IndexDiffData data = indexDiffData;
+		IndexDiffSnapshot.State state = snapshotState;
+		if (data == null || state == null || !upToDate)
+			return;
+		try {
+			IndexDiffSnapshot.write(getSnapshotFile(), lastHeadTree, data,
+					state);
+		} catch (IOException e) {
+			Activator.logError(e.getMessage(), e);
+		}
+	}
+
+	private File getSnapshotFile() {
+		String key = ObjectId.fromRaw(
+				Constants.newMessageDigest().digest(
+						Constants.encode(repository.getDirectory()
+								.getAbsolutePath()))).name();
+		return Activator.getDefault().getStateLocation()
+				.append(SNAPSHOT_FOLDER).append(key).toFile();
+	}
+
+	private static long getUpdateDelay() {
+		IEclipsePreferences d = DefaultScope.INSTANCE.getNode(Activator
+				.getPluginId());
+		IEclipsePreferences p = InstanceScope.INSTANCE.getNode(Activator
+				.getPluginId());
+		return p.getInt(GitCorePreferences.core_indexDiffUpdateDelay,
+				d.getInt(GitCorePreferences.core_indexDiffUpdateDelay, 0));
 	}
 
 	private IndexDiffData calcIndexDiffData(IProgressMonitor monitor,
@@ -458,18 +673,23 @@ public void resourceChanged(IResourceChangeEvent event) {
 					Activator.logError(e.getMessage(), e);
 					return;
 				}
+				// if no diff is available yet, the update job falls back to
+				// a full reload
 				Collection<String> filesToUpdate = visitor.getFilesToUpdate();
-				if (visitor.getGitIgnoreChanged())
-					scheduleReloadJob("A .gitignore changed"); //$NON-NLS-1$
-				else if (indexDiffData == null)
-					scheduleReloadJob("Resource changed, no diff available"); //$NON-NLS-1$
-				else if (!filesToUpdate.isEmpty())
-					if (filesToUpdate.size() < RESOURCE_LIST_UPDATE_LIMIT)
-						scheduleUpdateJob(filesToUpdate, visitor.getResourcesToUpdate());
-					else
-						// Calculate new IndexDiff if too many resources changed
-						// This happens e.g. when a project is opened
-						scheduleReloadJob("Too many resources changed"); //$NON-NLS-1$
+				if (visitor.getGitIgnoreChanged()) {
+					// a changed .gitignore only affects the folder it is
+					// located in
+					Set<String> scope = new HashSet<String>(filesToUpdate);
+					scope.addAll(visitor.getGitIgnoreFolders());
+					scheduleScopedUpdateJob(scope,
+							visitor.getResourcesToUpdate(),
+							"A .gitignore changed"); //$NON-NLS-1$
+				} else if (!filesToUpdate.isEmpty())
+					// If too many resources changed (e.g. when a project is
+					// opened) the update is done for the parent folders
+					scheduleScopedUpdateJob(filesToUpdate,
+							visitor.getResourcesToUpdate(),
+							"Too many resources changed"); //$NON-NLS-1$
 			}
 
 		};
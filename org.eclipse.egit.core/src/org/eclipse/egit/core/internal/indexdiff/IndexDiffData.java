@@ -11,6 +11,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 import org.eclipse.core.resources.IResource;
@@ -45,6 +46,11 @@ public class IndexDiffData {
 
 	private final Collection<IResource> changedResources;
 
+	private final Collection<String> changedPaths;
+
+	// created on first use
+	private volatile IndexDiffSummary summary;
+
 	/**
 	 * @param indexDiff
 	 */
@@ -67,6 +73,39 @@ public IndexDiffData(IndexDiff indexDiff) {
 		ignored = Collections.unmodifiableSet(new HashSet<String>(indexDiff
 				.getIgnoredNotInIndex()));
 		changedResources = null;
+		changedPaths = null;
+	}
+
+	/**
+	 * Creates the data from sets of paths, e.g. restored from a snapshot. The
+	 * sets are not copied.
+	 *
+	 * @param added
+	 * @param changed
+	 * @param removed
+	 * @param missing
+	 * @param modified
+	 * @param untracked
+	 * @param untrackedFolders
+	 *            folder paths ending with /
+	 * @param conflicts
+	 * @param ignored
+	 */
+	IndexDiffData(Set<String> added, Set<String> changed,
+			Set<String> removed, Set<String> missing, Set<String> modified,
+			Set<String> untracked, Set<String> untrackedFolders,
+			Set<String> conflicts, Set<String> ignored) {
+		this.added = Collections.unmodifiableSet(added);
+		this.changed = Collections.unmodifiableSet(changed);
+		this.removed = Collections.unmodifiableSet(removed);
+		this.missing = Collections.unmodifiableSet(missing);
+		this.modified = Collections.unmodifiableSet(modified);
+		this.untracked = Collections.unmodifiableSet(untracked);
+		this.untrackedFolders = Collections.unmodifiableSet(untrackedFolders);
+		this.conflicts = Collections.unmodifiableSet(conflicts);
+		this.ignored = Collections.unmodifiableSet(ignored);
+		changedResources = null;
+		changedPaths = null;
 	}
 
 	private Set<String> getUntrackedFolders(IndexDiff indexDiff) {
@@ -80,6 +119,12 @@ private Set<String> getUntrackedFolders(IndexDiff indexDiff) {
 	 * This constructor merges the existing IndexDiffData object baseDiff with a
 	 * new IndexDiffData object that was calculated for a subset of files
 	 * (changedFiles).
+	 * <p>
+	 * A folder in changedFiles marks the whole folder as re-evaluated: all
+	 * entries of baseDiff below that folder are replaced by the entries of
+	 * diffForChangedFiles. This allows to patch the data for scoped updates
+	 * (e.g. a changed .gitignore or a large number of changed files) without
+	 * calculating an {@link IndexDiff} for the whole working tree.
 	 *
 	 * @param baseDiff
 	 * @param changedFiles
@@ -102,18 +147,28 @@ public IndexDiffData(IndexDiffData baseDiff,
 		Set<String> conflicts2 = new HashSet<String>(baseDiff.getConflicting());
 		Set<String> ignored2 = new HashSet<String>(baseDiff.getIgnoredNotInIndex());
 
-		mergeList(added2, changedFiles, diffForChangedFiles.getAdded());
-		mergeList(changed2, changedFiles, diffForChangedFiles.getChanged());
-		mergeList(removed2, changedFiles, diffForChangedFiles.getRemoved());
-		mergeList(missing2, changedFiles, diffForChangedFiles.getMissing());
-		mergeList(modified2, changedFiles, diffForChangedFiles.getModified());
-		mergeList(untracked2, changedFiles, diffForChangedFiles.getUntracked());
+		Set<String> files = new HashSet<String>();
+		Set<String> folders = new HashSet<String>();
+		for (String path : changedFiles)
+			if (path.endsWith("/")) //$NON-NLS-1$
+				folders.add(path);
+			else
+				files.add(path);
+
+		mergeList(added2, files, folders, diffForChangedFiles.getAdded());
+		mergeList(changed2, files, folders, diffForChangedFiles.getChanged());
+		mergeList(removed2, files, folders, diffForChangedFiles.getRemoved());
+		mergeList(missing2, files, folders, diffForChangedFiles.getMissing());
+		mergeList(modified2, files, folders,
+				diffForChangedFiles.getModified());
+		mergeList(untracked2, files, folders,
+				diffForChangedFiles.getUntracked());
 		Set<String> untrackedFolders2 = mergeUntrackedFolders(
-				baseDiff.getUntrackedFolders(), changedFiles,
+				baseDiff.getUntrackedFolders(), changedFiles, folders,
 				getUntrackedFolders(diffForChangedFiles));
-		mergeList(conflicts2, changedFiles,
+		mergeList(conflicts2, files, folders,
 				diffForChangedFiles.getConflicting());
-		mergeList(ignored2, changedFiles,
+		mergeList(ignored2, files, folders,
 				diffForChangedFiles.getIgnoredNotInIndex());
 
 		added = Collections.unmodifiableSet(added2);
@@ -125,27 +180,109 @@ public IndexDiffData(IndexDiffData baseDiff,
 		untrackedFolders = Collections.unmodifiableSet(untrackedFolders2);
 		conflicts = Collections.unmodifiableSet(conflicts2);
 		ignored = Collections.unmodifiableSet(ignored2);
+		changedPaths = null;
+	}
+
+	/**
+	 * Creates a copy of data which knows the paths changed compared to the
+	 * previous data
+	 *
+	 * @param data
+	 * @param previous
+	 *            the data replaced by data, may be null
+	 */
+	IndexDiffData(IndexDiffData data, IndexDiffData previous) {
+		added = data.added;
+		changed = data.changed;
+		removed = data.removed;
+		missing = data.missing;
+		modified = data.modified;
+		untracked = data.untracked;
+		untrackedFolders = data.untrackedFolders;
+		conflicts = data.conflicts;
+		ignored = data.ignored;
+		changedResources = data.changedResources;
+		if (previous == null)
+			changedPaths = null;
+		else {
+			Set<String> paths = new HashSet<String>();
+			addDifferences(paths, previous.added, added);
+			addDifferences(paths, previous.changed, changed);
+			addDifferences(paths, previous.removed, removed);
+			addDifferences(paths, previous.missing, missing);
+			addDifferences(paths, previous.modified, modified);
+			addDifferences(paths, previous.untracked, untracked);
+			addDifferences(paths, previous.untrackedFolders, untrackedFolders);
+			addDifferences(paths, previous.conflicts, conflicts);
+			addDifferences(paths, previous.ignored, ignored);
+			changedPaths = Collections.unmodifiableSet(paths);
+		}
 	}
 
-	private void mergeList(Set<String> baseList,
-			Collection<String> changedFiles, Set<String> listForChangedFiles) {
-		for (String file : changedFiles) {
-			if (baseList.contains(file)) {
-				if (!listForChangedFiles.contains(file))
-					baseList.remove(file);
-			} else {
-				if (listForChangedFiles.contains(file))
-					baseList.add(file);
+	private static void addDifferences(Set<String> result,
+			Set<String> oldSet, Set<String> newSet) {
+		if (oldSet == newSet)
+			return;
+		for (String path : oldSet)
+			if (!newSet.contains(path))
+				result.add(path);
+		for (String path : newSet)
+			if (!oldSet.contains(path))
+				result.add(path);
+	}
+
+	private static void mergeList(Set<String> baseList, Set<String> files,
+			Set<String> folders, Set<String> listForChangedFiles) {
+		if (folders.isEmpty()) {
+			for (String file : files) {
+				if (baseList.contains(file)) {
+					if (!listForChangedFiles.contains(file))
+						baseList.remove(file);
+				} else {
+					if (listForChangedFiles.contains(file))
+						baseList.add(file);
+				}
 			}
+			return;
 		}
+		for (Iterator<String> it = baseList.iterator(); it.hasNext();)
+			if (isCovered(it.next(), files, folders))
+				it.remove();
+		for (String file : listForChangedFiles)
+			if (isCovered(file, files, folders))
+				baseList.add(file);
+	}
+
+	/**
+	 * @param path
+	 * @param files
+	 * @param folders
+	 *            folder paths ending with /
+	 * @return true if path is one of the files or located in one of the
+	 *         folders
+	 */
+	private static boolean isCovered(String path, Set<String> files,
+			Set<String> folders) {
+		if (files.contains(path))
+			return true;
+		int slash = path.indexOf('/');
+		while (slash >= 0) {
+			if (folders.contains(path.substring(0, slash + 1)))
+				return true;
+			slash = path.indexOf('/', slash + 1);
+		}
+		return false;
 	}
 
 	private static Set<String> mergeUntrackedFolders(Set<String> oldUntrackedFolders,
-			Collection<String> changedFiles, Set<String> newUntrackedFolders) {
+			Collection<String> changedFiles, Set<String> changedFolders,
+			Set<String> newUntrackedFolders) {
 		Set<String> merged = new HashSet<String>();
+		Set<String> noFiles = Collections.emptySet();
 		for (String oldUntrackedFolder : oldUntrackedFolders) {
 			boolean changeInUntrackedFolder = isAnyFileContainedInFolder(
-					oldUntrackedFolder, changedFiles);
+					oldUntrackedFolder, changedFiles)
+					|| isCovered(oldUntrackedFolder, noFiles, changedFolders);
 			if (!changeInUntrackedFolder)
 				merged.add(oldUntrackedFolder);
 		}
@@ -233,6 +370,28 @@ public Collection<IResource> getChangedResources() {
 		return changedResources;
 	}
 
+	/**
+	 * @return the repository relative paths whose state differs from the
+	 *         data replaced by this data, or null if unknown. Folder paths
+	 *         end with /
+	 */
+	public Collection<String> getChangedPaths() {
+		return changedPaths;
+	}
+
+	/**
+	 * @return the hierarchical summary of this data, e.g. to determine the
+	 *         status of folders
+	 */
+	public IndexDiffSummary getSummary() {
+		IndexDiffSummary result = summary;
+		if (result == null) {
+			result = new IndexDiffSummary(this);
+			summary = result;
+		}
+		return result;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
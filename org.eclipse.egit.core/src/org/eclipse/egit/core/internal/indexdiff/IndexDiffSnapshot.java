@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.egit.core.IteratorService;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+
+/**
+ * Binary snapshot of an {@link IndexDiffData} which allows to show the state
+ * of a repository right after startup without calculating the index diff for
+ * the whole working tree.
+ * <p>
+ * A snapshot is only valid for the index and HEAD the data was calculated
+ * for, both are stored in the snapshot. The working tree is validated by
+ * re-evaluating only the files and folders modified after the calculation of
+ * the data was started, see
+ * {@link #findModifiedPaths(Repository, IProgressMonitor)}.
+ * <p>
+ * The paths of each set are stored sorted, every path is written as the length
+ * of the prefix it shares with the previous path followed by the remaining
+ * characters.
+ */
+class IndexDiffSnapshot {
+
+	private static final int MAGIC = 0x45474944; // "EGID"
+
+	private static final int VERSION = 1;
+
+	private static final int CHECKSUM_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+	// file systems with a timestamp resolution of 2 seconds (e.g. FAT)
+	private static final long TIMESTAMP_TOLERANCE = 2000;
+
+	private static final String GITIGNORE_NAME = Constants.DOT_GIT_IGNORE;
+
+	/**
+	 * The index checksum and the time taken right before an
+	 * {@link IndexDiffData} is calculated. A snapshot of the data is only
+	 * valid for this state.
+	 */
+	static class State {
+
+		final byte[] indexChecksum;
+
+		final long timestamp;
+
+		State(byte[] indexChecksum, long timestamp) {
+			this.indexChecksum = indexChecksum;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * @param repository
+		 * @return the current state of the repository, the checksum is null
+		 *         if there is no index
+		 * @throws IOException
+		 */
+		static State capture(Repository repository) throws IOException {
+			long timestamp = System.currentTimeMillis();
+			return new State(readIndexChecksum(repository), timestamp);
+		}
+
+		/**
+		 * An incremental update only re-evaluates some paths, all other
+		 * paths are still only known as of the previous calculation.
+		 *
+		 * @param update
+		 *            the state taken before the incremental update
+		 * @return the state of the data after the update
+		 */
+		State update(State update) {
+			return new State(update.indexChecksum, Math.min(timestamp,
+					update.timestamp));
+		}
+	}
+
+	private final IndexDiffData data;
+
+	private final State state;
+
+	private IndexDiffSnapshot(IndexDiffData data, State state) {
+		this.data = data;
+		this.state = state;
+	}
+
+	/**
+	 * @return the restored index diff data
+	 */
+	IndexDiffData getData() {
+		return data;
+	}
+
+	/**
+	 * @return the state the restored data was calculated for
+	 */
+	State getState() {
+		return state;
+	}
+
+	/**
+	 * Writes the snapshot of the given data. The snapshot is written to a
+	 * temporary file first which replaces the given file when complete, so
+	 * that a failed write never leaves a truncated snapshot behind.
+	 *
+	 * @param file
+	 * @param head
+	 *            the tree of HEAD the data is based on, may be null
+	 * @param data
+	 * @param state
+	 *            the state taken before the data was calculated
+	 * @throws IOException
+	 */
+	static void write(File file, ObjectId head, IndexDiffData data,
+			State state) throws IOException {
+		if (state.indexChecksum == null)
+			return;
+		File parent = file.getParentFile();
+		if (!parent.exists() && !parent.mkdirs())
+			throw new IOException(parent.getPath());
+
+		File tmp = File.createTempFile("snapshot", ".tmp", parent); //$NON-NLS-1$ //$NON-NLS-2$
+		boolean renamed = false;
+		try {
+			writeData(tmp, head, data, state);
+			if (!tmp.renameTo(file)) {
+				// renaming does not replace existing files on all platforms
+				file.delete();
+				if (!tmp.renameTo(file))
+					throw new IOException(file.getPath());
+			}
+			renamed = true;
+		} finally {
+			if (!renamed)
+				tmp.delete();
+		}
+	}
+
+	private static void writeData(File file, ObjectId head,
+			IndexDiffData data, State state) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(state.indexChecksum);
+			writeObjectId(out, head);
+			out.writeLong(state.timestamp);
+			writeSet(out, data.getAdded());
+			writeSet(out, data.getChanged());
+			writeSet(out, data.getRemoved());
+			writeSet(out, data.getMissing());
+			writeSet(out, data.getModified());
+			writeSet(out, data.getUntracked());
+			writeSet(out, data.getUntrackedFolders());
+			writeSet(out, data.getConflicting());
+			writeSet(out, data.getIgnoredNotInIndex());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the snapshot from the given file
+	 *
+	 * @param file
+	 * @param repository
+	 * @param head
+	 *            the current tree of HEAD, may be null
+	 * @return the snapshot or null if there is no snapshot for the current
+	 *         index and HEAD
+	 * @throws IOException
+	 *             if the file can't be read or is invalid
+	 */
+	static IndexDiffSnapshot read(File file, Repository repository,
+			ObjectId head) throws IOException {
+		if (!file.isFile())
+			return null;
+		byte[] checksum = readIndexChecksum(repository);
+		if (checksum == null)
+			return null;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			byte[] snapshotChecksum = new byte[CHECKSUM_LENGTH];
+			in.readFully(snapshotChecksum);
+			if (!Arrays.equals(checksum, snapshotChecksum))
+				return null;
+			ObjectId snapshotHead = readObjectId(in);
+			if (head == null ? snapshotHead != null : !head
+					.equals(snapshotHead))
+				return null;
+			long timestamp = in.readLong();
+			// each path needs at least 4 bytes
+			long maxSize = file.length() / 4;
+			IndexDiffData data = new IndexDiffData(readSet(in, maxSize),
+					readSet(in, maxSize), readSet(in, maxSize),
+					readSet(in, maxSize), readSet(in, maxSize),
+					readSet(in, maxSize), readSet(in, maxSize),
+					readSet(in, maxSize), readSet(in, maxSize));
+			return new IndexDiffSnapshot(data, new State(snapshotChecksum,
+					timestamp));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Finds the files and folders in the working tree that were modified
+	 * after the calculation of the snapshot data was started. Only the timestamps are compared, the
+	 * content of the files is not read.
+	 * <p>
+	 * Adding or deleting a file modifies the parent folder, such folders are
+	 * returned as a whole. The content of ignored folders is not visited, the
+	 * same applies to the {@link IndexDiffData}.
+	 *
+	 * @param repository
+	 * @param monitor
+	 * @return repository relative paths, folders end with /
+	 * @throws IOException
+	 */
+	Collection<String> findModifiedPaths(Repository repository,
+			IProgressMonitor monitor) throws IOException {
+		long since = state.timestamp - TIMESTAMP_TOLERANCE;
+		Set<String> paths = new HashSet<String>();
+		TreeWalk walk = new TreeWalk(repository);
+		try {
+			walk.addTree(IteratorService.createInitialIterator(repository));
+			while (walk.next()) {
+				if (monitor.isCanceled())
+					break;
+				WorkingTreeIterator iterator = walk.getTree(0,
+						WorkingTreeIterator.class);
+				boolean modified = iterator.getEntryLastModified() >= since;
+				if (walk.isSubtree()) {
+					if (modified)
+						paths.add(walk.getPathString() + "/"); //$NON-NLS-1$
+					else if (!iterator.isEntryIgnored())
+						walk.enterSubtree();
+				} else if (modified) {
+					String path = walk.getPathString();
+					if (walk.getNameString().equals(GITIGNORE_NAME))
+						paths.add(path.substring(0, path.length()
+								- GITIGNORE_NAME.length()));
+					else
+						paths.add(path);
+				}
+			}
+		} finally {
+			walk.release();
+		}
+		if (repository.getWorkTree().lastModified() >= since)
+			addRootEntries(repository, paths);
+		return paths;
+	}
+
+	/**
+	 * The working tree root can't be re-evaluated as a whole without
+	 * calculating the complete index diff, so deletions in the root folder
+	 * are detected by re-evaluating all entries of the root folder which are
+	 * known to the index or to the snapshot.
+	 */
+	private void addRootEntries(Repository repository, Set<String> paths)
+			throws IOException {
+		DirCache index = repository.readDirCache();
+		for (int i = 0; i < index.getEntryCount(); i++) {
+			String path = index.getEntry(i).getPathString();
+			if (path.indexOf('/') < 0)
+				paths.add(path);
+		}
+		for (Set<String> set : Arrays.asList(data.getAdded(),
+				data.getChanged(), data.getRemoved(), data.getMissing(),
+				data.getModified(), data.getUntracked(),
+				data.getUntrackedFolders(), data.getConflicting(),
+				data.getIgnoredNotInIndex()))
+			for (String path : set) {
+				int slash = path.indexOf('/');
+				if (slash < 0 || slash == path.length() - 1)
+					paths.add(path);
+			}
+	}
+
+	/**
+	 * @param repository
+	 * @return the checksum at the end of the index file or null if there is
+	 *         no index
+	 * @throws IOException
+	 */
+	private static byte[] readIndexChecksum(Repository repository)
+			throws IOException {
+		File indexFile = repository.getIndexFile();
+		if (!indexFile.isFile() || indexFile.length() < CHECKSUM_LENGTH)
+			return null;
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r"); //$NON-NLS-1$
+		try {
+			byte[] checksum = new byte[CHECKSUM_LENGTH];
+			raf.seek(raf.length() - CHECKSUM_LENGTH);
+			raf.readFully(checksum);
+			return checksum;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void writeObjectId(DataOutputStream out, ObjectId id)
+			throws IOException {
+		out.writeBoolean(id != null);
+		if (id != null)
+			id.copyRawTo(out);
+	}
+
+	private static ObjectId readObjectId(DataInputStream in)
+			throws IOException {
+		if (!in.readBoolean())
+			return null;
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		in.readFully(raw);
+		return ObjectId.fromRaw(raw);
+	}
+
+	private static void writeSet(DataOutputStream out, Set<String> set)
+			throws IOException {
+		String[] paths = set.toArray(new String[set.size()]);
+		Arrays.sort(paths);
+		out.writeInt(paths.length);
+		String previous = ""; //$NON-NLS-1$
+		for (String path : paths) {
+			int common = 0;
+			int max = Math.min(previous.length(), path.length());
+			while (common < max
+					&& previous.charAt(common) == path.charAt(common))
+				common++;
+			out.writeShort(common);
+			out.writeUTF(path.substring(common));
+			previous = path;
+		}
+	}
+
+	private static Set<String> readSet(DataInputStream in, long maxSize)
+			throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > maxSize)
+			throw new IOException("Invalid snapshot"); //$NON-NLS-1$
+		Set<String> paths = new HashSet<String>(size * 4 / 3 + 1);
+		String previous = ""; //$NON-NLS-1$
+		for (int i = 0; i < size; i++) {
+			int common = in.readUnsignedShort();
+			if (common > previous.length())
+				throw new IOException("Invalid snapshot"); //$NON-NLS-1$
+			String path = previous.substring(0, common) + in.readUTF();
+			paths.add(path);
+			previous = path;
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hierarchical summary of an {@link IndexDiffData}.
+ * <p>
+ * The paths of the index diff are stored in a tree of path segments. Each
+ * node knows the status flags of its own path and the combined flags of all
+ * paths below it, so the status of a file or folder is determined by
+ * walking the segments of its path once. Lookups don't allocate any
+ * objects.
+ *
+ * @see IndexDiffData#getSummary()
+ */
+public class IndexDiffSummary {
+
+	/** file was added to the index */
+	public static final int ADDED = 1;
+
+	/** file was changed from tree to index */
+	public static final int CHANGED = 1 << 1;
+
+	/** file was removed from the index */
+	public static final int REMOVED = 1 << 2;
+
+	/** file is in the index, but not in the file system */
+	public static final int MISSING = 1 << 3;
+
+	/** file was modified relative to the index */
+	public static final int MODIFIED = 1 << 4;
+
+	/** file is not ignored and not in the index */
+	public static final int UNTRACKED = 1 << 5;
+
+	/** file is in conflict */
+	public static final int CONFLICTING = 1 << 6;
+
+	/** file or folder or one of its parent folders is ignored */
+	public static final int IGNORED = 1 << 7;
+
+	/**
+	 * folder or one of its parent folders contains only untracked files and
+	 * folders
+	 */
+	public static final int UNTRACKED_FOLDER = 1 << 8;
+
+	/** {@link #ADDED}, {@link #CHANGED} or {@link #REMOVED} */
+	public static final int STAGED = ADDED | CHANGED | REMOVED;
+
+	/** {@link #MODIFIED}, {@link #UNTRACKED} or {@link #MISSING} */
+	public static final int DIRTY = MODIFIED | UNTRACKED | MISSING;
+
+	// flags which are passed on to all paths below a folder
+	private static final int INHERITED = IGNORED | UNTRACKED_FOLDER;
+
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private final Node root;
+
+	IndexDiffSummary(IndexDiffData data) {
+		Builder builder = new Builder();
+		builder.add(data.getAdded(), ADDED);
+		builder.add(data.getChanged(), CHANGED);
+		builder.add(data.getRemoved(), REMOVED);
+		builder.add(data.getMissing(), MISSING);
+		builder.add(data.getModified(), MODIFIED);
+		builder.add(data.getUntracked(), UNTRACKED);
+		builder.add(data.getUntrackedFolders(), UNTRACKED_FOLDER);
+		builder.add(data.getConflicting(), CONFLICTING);
+		builder.add(data.getIgnoredNotInIndex(), IGNORED);
+		root = builder.build();
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of a file or folder, without
+	 *            trailing /
+	 * @return the flags of the path itself, including {@link #IGNORED} and
+	 *         {@link #UNTRACKED_FOLDER} of its parent folders
+	 */
+	public int getFlags(String path) {
+		int inherited = 0;
+		Node node = root;
+		int start = 0;
+		int length = path.length();
+		while (start < length) {
+			inherited |= node.flags & INHERITED;
+			int end = path.indexOf('/', start);
+			if (end < 0)
+				end = length;
+			node = node.getChild(path, start, end);
+			if (node == null)
+				return inherited;
+			start = end + 1;
+		}
+		return node.flags | inherited;
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path of a folder, without trailing /, the
+	 *            empty string for the root of the working tree
+	 * @return the combined flags of all paths below the folder
+	 */
+	public int getContainedFlags(String path) {
+		Node node = root;
+		int start = 0;
+		int length = path.length();
+		while (start < length) {
+			int end = path.indexOf('/', start);
+			if (end < 0)
+				end = length;
+			node = node.getChild(path, start, end);
+			if (node == null)
+				return 0;
+			start = end + 1;
+		}
+		return node.containedFlags;
+	}
+
+	private static class Node {
+
+		final String name;
+
+		int flags;
+
+		int containedFlags;
+
+		Node[] children = NO_CHILDREN;
+
+		Node(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return the child named <code>path[start, end)</code> or null
+		 */
+		Node getChild(String path, int start, int end) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(children[mid].name, path, start, end);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
+				else
+					return children[mid];
+			}
+			return null;
+		}
+
+		private static int compare(String name, String path, int start,
+				int end) {
+			int length = Math.min(name.length(), end - start);
+			for (int i = 0; i < length; i++) {
+				int cmp = name.charAt(i) - path.charAt(start + i);
+				if (cmp != 0)
+					return cmp;
+			}
+			return name.length() - (end - start);
+		}
+	}
+
+	private static class Builder {
+
+		private final Map<Node, Map<String, Node>> children = new HashMap<Node, Map<String, Node>>();
+
+		private final Node root = new Node(""); //$NON-NLS-1$
+
+		void add(Collection<String> paths, int flag) {
+			for (String path : paths) {
+				Node node = root;
+				int start = 0;
+				int length = path.endsWith("/") ? path.length() - 1 //$NON-NLS-1$
+						: path.length();
+				while (start < length) {
+					int end = path.indexOf('/', start);
+					if (end < 0 || end > length)
+						end = length;
+					node.containedFlags |= flag;
+					node = getChild(node, path.substring(start, end));
+					start = end + 1;
+				}
+				if (node != root)
+					node.flags |= flag;
+			}
+		}
+
+		private Node getChild(Node node, String name) {
+			Map<String, Node> nodeChildren = children.get(node);
+			if (nodeChildren == null) {
+				nodeChildren = new HashMap<String, Node>();
+				children.put(node, nodeChildren);
+			}
+			Node child = nodeChildren.get(name);
+			if (child == null) {
+				child = new Node(name);
+				nodeChildren.put(name, child);
+			}
+			return child;
+		}
+
+		Node build() {
+			for (Map.Entry<Node, Map<String, Node>> entry : children
+					.entrySet()) {
+				Map<String, Node> nodeChildren = entry.getValue();
+				String[] names = nodeChildren.keySet().toArray(
+						new String[nodeChildren.size()]);
+				Arrays.sort(names);
+				Node[] sorted = new Node[names.length];
+				for (int i = 0; i < names.length; i++)
+					sorted[i] = nodeChildren.get(names[i]);
+				entry.getKey().children = sorted;
+			}
+			return root;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.egit.core.internal.trace.GitTraceLocation;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Job which calculates the index diff updates of one repository.
+ * <p>
+ * Update requests arriving while the job is sleeping, waiting or running are
+ * merged into one pending update. Requests for single files are dropped if a
+ * full reload is pending since the reload covers them. As there is only one
+ * job per repository, at most one update runs at a time.
+ * <p>
+ * The update starts once no further request arrived for the delay passed to
+ * the constructor, but waits at most {@link #MAX_DELAY_FACTOR} times the delay
+ * after the first request so that a steady stream of requests cannot starve
+ * it.
+ */
+abstract class IndexDiffUpdateJob extends Job {
+
+	/** Maximum wait for a quiet period, as a multiple of the delay */
+	static final int MAX_DELAY_FACTOR = 10;
+
+	private final long delay;
+
+	// time of the first and the last request since the last update, 0 if
+	// there is none
+	private long firstRequestTime;
+
+	private long lastRequestTime;
+
+	private Set<String> pendingFiles = new HashSet<String>();
+
+	private Set<IResource> pendingResources = new HashSet<IResource>();
+
+	// trigger of the pending reload or null
+	private String pendingReload;
+
+	private boolean pendingNotification;
+
+	private boolean pendingRestore;
+
+	private int pendingRequests;
+
+	private int mergedRequests;
+
+	private int droppedRequests;
+
+	/**
+	 * @param name
+	 * @param delay
+	 *            time in milliseconds to wait for further requests before an
+	 *            update is calculated
+	 */
+	IndexDiffUpdateJob(String name, long delay) {
+		super(name);
+		this.delay = delay;
+	}
+
+	/**
+	 * Requests an update of the given files
+	 *
+	 * @param files
+	 *            repository relative paths, folders end with /
+	 * @param resources
+	 */
+	void addFiles(Collection<String> files, Collection<IResource> resources) {
+		synchronized (this) {
+			pendingRequests++;
+			requested();
+			if (pendingReload != null)
+				droppedRequests++;
+			else {
+				if (!pendingFiles.isEmpty())
+					mergedRequests++;
+				pendingFiles.addAll(files);
+				pendingResources.addAll(resources);
+			}
+		}
+		schedule(delay);
+	}
+
+	/**
+	 * Requests a full reload. A running update is canceled as its result
+	 * would be replaced by the reload anyway.
+	 *
+	 * @param trigger
+	 *            the reason for the reload, used for tracing
+	 */
+	void addReload(String trigger) {
+		synchronized (this) {
+			pendingRequests++;
+			requested();
+			if (pendingReload != null || !pendingFiles.isEmpty())
+				droppedRequests++;
+			pendingReload = trigger;
+			pendingFiles = new HashSet<String>();
+			pendingResources = new HashSet<IResource>();
+		}
+		cancel();
+		schedule(delay);
+	}
+
+	/**
+	 * Requests to restore the index diff from a snapshot. If a full reload is
+	 * requested before the snapshot was restored, the snapshot is not used.
+	 */
+	void addRestore() {
+		synchronized (this) {
+			pendingRequests++;
+			requested();
+			pendingRestore = true;
+		}
+		schedule(delay);
+	}
+
+	/**
+	 * Requests a notification of the listeners without recalculating the
+	 * index diff
+	 */
+	void addNotification() {
+		synchronized (this) {
+			pendingRequests++;
+			requested();
+			pendingNotification = true;
+		}
+		schedule(delay);
+	}
+
+	private void requested() {
+		lastRequestTime = System.currentTimeMillis();
+		if (firstRequestTime == 0)
+			firstRequestTime = lastRequestTime;
+	}
+
+	/**
+	 * @return the time in milliseconds until the quiet period after the last
+	 *         request ends, or 0 if the update is due
+	 */
+	private synchronized long getRemainingDelay() {
+		if (firstRequestTime == 0)
+			return 0;
+		long now = System.currentTimeMillis();
+		if (now - firstRequestTime >= delay * MAX_DELAY_FACTOR)
+			return 0;
+		return Math.max(0, lastRequestTime + delay - now);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		// a request arriving while the job waits does not reschedule it, so
+		// the quiet period is checked here
+		long remaining = getRemainingDelay();
+		if (remaining > 0) {
+			schedule(remaining);
+			return Status.OK_STATUS;
+		}
+		waitForWorkspaceLock(monitor);
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+
+		String reload;
+		Collection<String> files;
+		Collection<IResource> resources;
+		boolean notification;
+		boolean restore;
+		synchronized (this) {
+			if (GitTraceLocation.INDEXDIFFCACHE.isActive())
+				GitTraceLocation.getTrace().trace(
+						GitTraceLocation.INDEXDIFFCACHE.getLocation(),
+						NLS.bind(
+								"{0}: {1} requests queued, {2} merged, {3} covered by pending reload, {4} paths to update", //$NON-NLS-1$
+								new Object[] { getName(),
+										Integer.valueOf(pendingRequests),
+										Integer.valueOf(mergedRequests),
+										Integer.valueOf(droppedRequests),
+										Integer.valueOf(pendingFiles.size()) }));
+			reload = pendingReload;
+			files = pendingFiles;
+			resources = pendingResources;
+			notification = pendingNotification;
+			restore = pendingRestore;
+			pendingReload = null;
+			pendingFiles = new HashSet<String>();
+			pendingResources = new HashSet<IResource>();
+			pendingNotification = false;
+			pendingRestore = false;
+			pendingRequests = 0;
+			mergedRequests = 0;
+			droppedRequests = 0;
+			firstRequestTime = 0;
+			lastRequestTime = 0;
+		}
+
+		if (restore && reload == null && !restoreIndexDiff(monitor))
+			reload = "No valid snapshot to restore"; //$NON-NLS-1$
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		if (reload != null)
+			return reloadIndexDiff(reload, monitor);
+		if (!files.isEmpty())
+			return updateIndexDiff(files, resources, monitor);
+		if (notification)
+			notifyListeners();
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Restores the index diff from a snapshot
+	 *
+	 * @param monitor
+	 * @return true if a valid snapshot was restored
+	 */
+	protected abstract boolean restoreIndexDiff(IProgressMonitor monitor);
+
+	/**
+	 * Calculates the index diff of the whole working tree
+	 *
+	 * @param trigger
+	 * @param monitor
+	 * @return the status of the calculation
+	 */
+	protected abstract IStatus reloadIndexDiff(String trigger,
+			IProgressMonitor monitor);
+
+	/**
+	 * Calculates the index diff for the given files and merges it into the
+	 * current one
+	 *
+	 * @param files
+	 * @param resources
+	 * @param monitor
+	 * @return the status of the calculation
+	 */
+	protected abstract IStatus updateIndexDiff(Collection<String> files,
+			Collection<IResource> resources, IProgressMonitor monitor);
+
+	/**
+	 * Notifies the listeners about the current index diff
+	 */
+	protected abstract void notifyListeners();
+
+	/**
+	 * Waits until no other job holds the workspace root rule
+	 *
+	 * @param monitor
+	 */
+	protected void waitForWorkspaceLock(IProgressMonitor monitor) {
+		// Wait for the workspace lock to avoid starting the calculation
+		// of an IndexDiff while the workspace changes (e.g. due to a
+		// branch switch).
+		// The index diff calculation jobs do not lock the workspace
+		// during execution to avoid blocking the workspace.
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		try {
+			Job.getJobManager().beginRule(root, monitor);
+		} catch (OperationCanceledException e) {
+			return;
+		} finally {
+			Job.getJobManager().endRule(root);
+		}
+	}
+
+	@Override
+	public boolean belongsTo(Object family) {
+		if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE))
+			return true;
+		return super.belongsTo(family);
+	}
+
+}
@@ -11,10 +11,12 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -77,6 +79,9 @@ public static IFile getFileForLocation(Repository repository,
 	 * occurring repository a list is built containing the repository relative
 	 * paths of the related resources.
 	 * <p>
+	 * The resources are grouped by project and the mapping of each project is
+	 * looked up once. The lists are sorted and contain each path once.
+	 * <p>
 	 * When one of the passed resources corresponds to the working directory,
 	 * <code>""</code> will be returned as part of the collection.
 	 *
@@ -87,21 +92,37 @@ public static IFile getFileForLocation(Repository repository,
 	public static Map<Repository, Collection<String>> splitResourcesByRepository(
 			IResource[] resources) {
 		Map<Repository, Collection<String>> result = new HashMap<Repository, Collection<String>>();
+		Map<IProject, ProjectPaths> projects = new HashMap<IProject, ProjectPaths>();
 		for (IResource resource : resources) {
-			RepositoryMapping repositoryMapping = RepositoryMapping
-					.getMapping(resource);
-			if (repositoryMapping == null)
+			IProject project = resource.getProject();
+			if (project == null)
 				continue;
-			String path = repositoryMapping.getRepoRelativePath(resource);
-			addPathToMap(repositoryMapping, path, result);
+			ProjectPaths projectPaths = projects.get(project);
+			if (projectPaths == null) {
+				projectPaths = new ProjectPaths(project);
+				projects.put(project, projectPaths);
+			}
+			String path = projectPaths.getRepoRelativePath(resource);
+			if (path != null)
+				addPathToMap(projectPaths.mapping, path, result);
+			else {
+				// resource of a nested mapping or a linked resource
+				RepositoryMapping repositoryMapping = RepositoryMapping
+						.getMapping(resource);
+				if (repositoryMapping == null)
+					continue;
+				path = repositoryMapping.getRepoRelativePath(resource);
+				addPathToMap(repositoryMapping, path, result);
+			}
 		}
+		sortPaths(result);
 		return result;
 	}
 
 	/**
 	 * The method splits the given paths by their repository. For each occurring
 	 * repository a list is built containing the repository relative paths of
-	 * the related resources.
+	 * the related resources. The lists are sorted and contain each path once.
 	 * <p>
 	 * When one of the passed paths corresponds to the working directory,
 	 * <code>""</code> will be returned as part of the collection.
@@ -113,13 +134,16 @@ public static Map<Repository, Collection<String>> splitResourcesByRepository(
 	public static Map<Repository, Collection<String>> splitPathsByRepository(
 			Collection<IPath> paths) {
 		Map<Repository, Collection<String>> result = new HashMap<Repository, Collection<String>>();
+		RepositoryMapping[] mappings = RepositoryMapping.getMappings(paths);
+		int i = 0;
 		for (IPath path : paths) {
-			RepositoryMapping repositoryMapping = RepositoryMapping.getMapping(path);
+			RepositoryMapping repositoryMapping = mappings[i++];
 			if (repositoryMapping == null)
 				continue;
 			String p = repositoryMapping.getRepoRelativePath(path);
 			addPathToMap(repositoryMapping, p, result);
 		}
+		sortPaths(result);
 		return result;
 	}
 
@@ -146,4 +170,76 @@ private static void addPathToMap(RepositoryMapping repositoryMapping,
 			resourcesList.add(path);
 		}
 	}
+
+	/**
+	 * Sorts the path lists and removes duplicate paths, so that the lists can
+	 * be used for path filters without copying
+	 */
+	private static void sortPaths(Map<Repository, Collection<String>> result) {
+		for (Collection<String> paths : result.values()) {
+			ArrayList<String> list = (ArrayList<String>) paths;
+			Collections.sort(list);
+			int size = 0;
+			for (int i = 0; i < list.size(); i++) {
+				String path = list.get(i);
+				if (size == 0 || !path.equals(list.get(size - 1)))
+					list.set(size++, path);
+			}
+			list.subList(size, list.size()).clear();
+			list.trimToSize();
+		}
+	}
+
+	/**
+	 * Computes the repository relative paths of the resources of a project
+	 * from their workspace paths, if all resources of the project belong to
+	 * the mapping of the project
+	 */
+	private static class ProjectPaths {
+
+		final RepositoryMapping mapping;
+
+		/** Repository relative path of the project */
+		private final String projectPath;
+
+		/** Repository relative path of the project, with trailing slash */
+		private final String prefix;
+
+		/** Length of the workspace path of the project */
+		private final int projectPathLength;
+
+		ProjectPaths(IProject project) {
+			RepositoryMapping m = RepositoryMapping.getProjectMapping(project);
+			projectPath = m != null ? m.getRepoRelativePath(project) : null;
+			if (projectPath == null) {
+				mapping = null;
+				prefix = null;
+				projectPathLength = 0;
+			} else {
+				mapping = m;
+				prefix = projectPath.length() > 0 ? projectPath + '/'
+						: projectPath;
+				projectPathLength = project.getName().length() + 1;
+			}
+		}
+
+		/**
+		 * @param resource
+		 *            a resource of the project
+		 * @return the repository relative path, or null if it has to be
+		 *         determined using the mapping of the resource
+		 */
+		String getRepoRelativePath(IResource resource) {
+			if (mapping == null)
+				return null;
+			if (resource.getType() == IResource.PROJECT)
+				return projectPath;
+			// the location of linked resources is not inside the project
+			if (resource.isLinked(IResource.CHECK_ANCESTORS))
+				return null;
+			// "/project/folder/file" -> "folder/file"
+			String path = resource.getFullPath().toString();
+			return prefix + path.substring(projectPathLength + 1);
+		}
+	}
 }
@@ -17,9 +17,12 @@
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.TimeZone;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -29,6 +32,8 @@
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
 import org.eclipse.egit.core.RepositoryUtil;
+import org.eclipse.egit.core.internal.job.RuleUtil;
+import org.eclipse.egit.core.internal.util.ResourceUtil;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.CommitCommand;
@@ -158,14 +163,17 @@ public void setRepository(Repository repository) {
 	}
 
 	private Collection<String> buildFileList(Collection<IFile> files) throws CoreException {
+		// resolves the mapping once per project
+		Map<Repository, Collection<String>> pathsByRepository = ResourceUtil
+				.splitResourcesByRepository(files.toArray(new IResource[files
+						.size()]));
 		Collection<String> result = new HashSet<String>();
-		for (IFile file : files) {
-			RepositoryMapping mapping = RepositoryMapping.getMapping(file);
-			if (mapping == null)
-				throw new CoreException(Activator.error(NLS.bind(CoreText.CommitOperation_couldNotFindRepositoryMapping, file), null));
-			String repoRelativePath = mapping.getRepoRelativePath(file);
-			result.add(repoRelativePath);
-		}
+		for (Collection<String> paths : pathsByRepository.values())
+			result.addAll(paths);
+		if (result.size() < new HashSet<IFile>(files).size())
+			for (IFile file : files)
+				if (RepositoryMapping.getMapping(file) == null)
+					throw new CoreException(Activator.error(NLS.bind(CoreText.CommitOperation_couldNotFindRepositoryMapping, file), null));
 		return result;
 	}
 
@@ -175,19 +183,23 @@ public void execute(IProgressMonitor m) throws CoreException {
 			monitor = new NullProgressMonitor();
 		else
 			monitor = m;
+		final boolean commitFiles = amending || commitFileList != null
+				&& commitFileList.size() > 0 || commitIndex;
+		// prepared without holding a scheduling rule
+		final PersonIdent[] idents = commitAll || commitFiles ? getAuthorAndCommitter()
+				: null;
 		IWorkspaceRunnable action = new IWorkspaceRunnable() {
 
 			public void run(IProgressMonitor actMonitor) throws CoreException {
 				if (commitAll)
-					commitAll();
-				else if (amending || commitFileList != null
-						&& commitFileList.size() > 0 || commitIndex) {
+					commitAll(idents);
+				else if (commitFiles) {
 					actMonitor.beginTask(
 							CoreText.CommitOperation_PerformingCommit,
 							20);
 					actMonitor.setTaskName(CoreText.CommitOperation_PerformingCommit);
 					addUntracked();
-					commit();
+					commit(idents);
 					actMonitor.worked(10);
 				} else if (commitWorkingDirChanges) {
 					// TODO commit -a
@@ -197,7 +209,10 @@ else if (amending || commitFileList != null
 			}
 
 		};
-		ResourcesPlugin.getWorkspace().run(action, monitor);
+		// the commit only changes the index and the refs, so the projects of
+		// the repository are locked instead of the workspace root
+		ResourcesPlugin.getWorkspace().run(action, getSchedulingRule(),
+				IWorkspace.AVOID_UPDATE, monitor);
 	}
 
 	private void addUntracked() throws CoreException {
@@ -219,14 +234,16 @@ private void addUntracked() throws CoreException {
 	}
 
 	public ISchedulingRule getSchedulingRule() {
-		return ResourcesPlugin.getWorkspace().getRoot();
+		if (repo == null)
+			return null;
+		return RuleUtil.getRule(repo);
 	}
 
-	private void commit() throws TeamException {
+	private void commit(PersonIdent[] idents) throws TeamException {
 		Git git = new Git(repo);
 		try {
 			CommitCommand commitCommand = git.commit();
-			setAuthorAndCommitter(commitCommand);
+			commitCommand.setAuthor(idents[0]).setCommitter(idents[1]);
 			commitCommand.setAmend(amending)
 					.setMessage(message)
 					.setInsertChangeId(createChangeId);
@@ -272,12 +289,12 @@ public RevCommit getCommit() {
 	}
 
 	// TODO: can the commit message be change by the user in case of a merge commit?
-	private void commitAll() throws TeamException {
+	private void commitAll(PersonIdent[] idents) throws TeamException {
 
 		Git git = new Git(repo);
 		try {
 			CommitCommand commitCommand = git.commit();
-			setAuthorAndCommitter(commitCommand);
+			commitCommand.setAuthor(idents[0]).setCommitter(idents[1]);
 			commit = commitCommand.setAll(true).setMessage(message)
 					.setInsertChangeId(createChangeId).call();
 		} catch (JGitInternalException e) {
@@ -287,7 +304,7 @@ private void commitAll() throws TeamException {
 		}
 	}
 
-	private void setAuthorAndCommitter(CommitCommand commitCommand) throws TeamException {
+	private PersonIdent[] getAuthorAndCommitter() throws TeamException {
 		final Date commitDate = new Date();
 		final TimeZone timeZone = TimeZone.getDefault();
 
@@ -314,7 +331,6 @@ private void setAuthorAndCommitter(CommitCommand commitCommand) throws TeamExcep
 			}
 		}
 
-		commitCommand.setAuthor(authorIdent);
-		commitCommand.setCommitter(committerIdent);
+		return new PersonIdent[] { authorIdent, committerIdent };
 	}
 }
@@ -14,15 +14,18 @@
  *******************************************************************************/
 package org.eclipse.egit.core.op;
 
+import static org.eclipse.jgit.lib.Constants.encode;
 import static org.eclipse.jgit.lib.Constants.encodeASCII;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -51,10 +54,13 @@
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -145,6 +151,11 @@ public String getDescription() {
 
 	private TreeFilter pathFilter = null;
 
+	private OutputStream outputStream;
+
+	// encodings by directory and file extension
+	private final Map<String, String> encodings = new HashMap<String, String>();
+
 	/**
 	 * Creates the new operation.
 	 *
@@ -167,24 +178,11 @@ public void execute(IProgressMonitor monitor) throws CoreException {
 		else
 			gitMonitor = new EclipseGitProgressTransformer(monitor);
 
-		final StringBuilder sb = new StringBuilder();
-		final DiffFormatter diffFmt = new DiffFormatter(
-				new ByteArrayOutputStream() {
-
-					@Override
-					public synchronized void write(byte[] b, int off, int len) {
-						super.write(b, off, len);
-						if (currentEncoding == null)
-							sb.append(toString());
-						else
-							try {
-								sb.append(toString(currentEncoding));
-							} catch (UnsupportedEncodingException e) {
-								sb.append(toString());
-							}
-						reset();
-					}
-				}) {
+		final StringBuilder sb = outputStream == null ? new StringBuilder()
+				: null;
+		final PatchOutputStream patchOut = new PatchOutputStream(sb,
+				outputStream);
+		final DiffFormatter diffFmt = new DiffFormatter(patchOut) {
 			private IProject project;
 
 			@Override
@@ -198,21 +196,25 @@ public void format(DiffEntry ent) throws IOException,
 						getOutputStream().write(
 								encodeASCII("#P " + project.getName() + "\n")); //$NON-NLS-1$ //$NON-NLS-2$
 					}
+					patchOut.rewritePaths(ent, project, getOldPrefix(),
+							getNewPrefix());
 				}
 				super.format(ent);
+				patchOut.rewritePaths(null, null, null, null);
 			}
 		};
 
 		diffFmt.setProgressMonitor(gitMonitor);
 		diffFmt.setContext(contextLines);
 
-		if (headerFormat != null && headerFormat != DiffHeaderFormat.NONE)
-			writeGitPatchHeader(sb);
-
 		diffFmt.setRepository(repository);
 		diffFmt.setPathFilter(pathFilter);
 
+		encodings.clear();
 		try {
+			if (headerFormat != null && headerFormat != DiffHeaderFormat.NONE)
+				patchOut.writeHeader(writeGitPatchHeader());
+
 			if (commit != null) {
 				RevCommit[] parents = commit.getParents();
 				if (parents.length > 1)
@@ -222,32 +224,71 @@ public void format(DiffEntry ent) throws IOException,
 					throw new IllegalStateException(
 							CoreText.CreatePatchOperation_cannotCreatePatchForFirstCommit);
 
-				List<DiffEntry> diffs = diffFmt.scan(parents[0].getId(),commit.getId());
+				List<DiffEntry> diffs = scan(diffFmt, parents[0]);
 				for (DiffEntry ent : diffs) {
 					String path;
 					if (ChangeType.DELETE.equals(ent.getChangeType()))
 						path = ent.getOldPath();
 					else
 						path = ent.getNewPath();
-					currentEncoding = CompareCoreUtils.getResourceEncoding(repository, path);
+					if (sb != null)
+						currentEncoding = getEncoding(path);
 					diffFmt.format(ent);
 				}
 			} else
 				diffFmt.format(
 						new DirCacheIterator(repository.readDirCache()),
 						new FileTreeIterator(repository));
+			diffFmt.flush();
+			patchOut.finish();
 		} catch (IOException e) {
+			if (outputStream != null)
+				throw new CoreException(Activator.error(
+						CoreText.CreatePatchOperation_patchFileCouldNotBeWritten,
+						e));
 			Activator.logError(CoreText.CreatePatchOperation_patchFileCouldNotBeWritten, e);
+		} finally {
+			diffFmt.release();
 		}
 
-		if (DiffHeaderFormat.WORKSPACE == headerFormat)
-			updateWorkspacePatchPrefixes(sb, diffFmt);
+		if (sb != null)
+			patchContent = sb.toString();
+	}
 
-		// trim newline
-		if (sb.charAt(sb.length() - 1) == '\n')
-			sb.setLength(sb.length() - 1);
+	/**
+	 * Returns the encoding of a file, looked up once for all files with the
+	 * same extension in a directory
+	 */
+	private String getEncoding(String path) {
+		int slash = path.lastIndexOf('/');
+		int dot = path.lastIndexOf('.');
+		String key = dot > slash ? path.substring(0, slash + 1)
+				+ path.substring(dot) : path.substring(0, slash + 1);
+		if (encodings.containsKey(key))
+			return encodings.get(key);
+		String encoding = CompareCoreUtils.getResourceEncoding(repository, path);
+		encodings.put(key, encoding);
+		return encoding;
+	}
+
+	private List<DiffEntry> scan(DiffFormatter diffFmt, RevCommit parent)
+			throws IOException {
+		// renames are detected by the formatter only
+		if (diffFmt.isDetectRenames())
+			return diffFmt.scan(parent.getId(), commit.getId());
 
-		patchContent = sb.toString();
+		ObjectReader reader = repository.newObjectReader();
+		try {
+			RevWalk rw = new RevWalk(reader);
+			return Activator
+					.getDefault()
+					.getCommitDiffCache()
+					.get(reader, rw.parseTree(parent.getId()),
+							rw.parseTree(commit.getId()), pathFilter)
+					.toDiffEntries();
+		} finally {
+			reader.release();
+		}
 	}
 
 	private IProject getProject(final DiffEntry ent) {
@@ -268,6 +309,9 @@ private IProject getProject(String path) {
 	 * Retrieves the content of the requested patch
 	 *
 	 * @return the content of the patch
+	 * @throws IllegalStateException
+	 *             if the operation was not executed or the patch was written
+	 *             to an output stream
 	 */
 	public String getPatchContent() {
 		if (patchContent == null)
@@ -276,7 +320,7 @@ public String getPatchContent() {
 		return patchContent;
 	}
 
-	private void writeGitPatchHeader(StringBuilder sb) {
+	private String writeGitPatchHeader() {
 		String template = headerFormat.getTemplate();
 		String[] segments = template.split("\\$\\{"); //$NON-NLS-1$
 		Stack<String> evaluated = new Stack<String>();
@@ -299,11 +343,11 @@ private void writeGitPatchHeader(StringBuilder sb) {
 			} else if (!evaluated.isEmpty())
 				evaluated.add(trailingCharacters);
 		}
-		StringBuffer buffer = new StringBuffer();
+		StringBuilder buffer = new StringBuilder();
 		for (String string : evaluated)
 			buffer.append(string);
 
-		sb.append(buffer);
+		return buffer.toString();
 	}
 
 	private static String processKeyword(RevCommit commit, DiffHeaderKeyword keyword) {
@@ -457,6 +501,21 @@ public ISchedulingRule getSchedulingRule() {
 		return null;
 	}
 
+	/**
+	 * Writes the patch to the given stream instead of keeping its content in
+	 * memory. Each line is written as soon as it is formatted; the content of
+	 * the files is written as stored in the repository, the header and the
+	 * paths are UTF-8 encoded. Use {@link java.nio.channels.Channels#newOutputStream} to write
+	 * to a channel. The stream is flushed but not closed by the operation.
+	 *
+	 * @param outputStream
+	 *            the stream to write to, or <code>null</code> to keep the
+	 *            patch for {@link #getPatchContent()}
+	 */
+	public void setOutputStream(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
 	/**
 	 * Set the filter to produce patch for specified paths only.
 	 *
@@ -465,4 +524,164 @@ public ISchedulingRule getSchedulingRule() {
 	public void setPathFilter(TreeFilter pathFilter) {
 		this.pathFilter = pathFilter;
 	}
+
+	/**
+	 * Passes the formatted patch on line by line, rewriting the paths in the
+	 * header of a file for workspace patches. The last line delimiter is
+	 * dropped. Lines are either decoded into a string builder using the
+	 * encoding of the current file or written to an output stream unchanged.
+	 */
+	private class PatchOutputStream extends OutputStream {
+
+		private final StringBuilder sb;
+
+		private final OutputStream out;
+
+		private byte[] line = new byte[256];
+
+		private int length;
+
+		private boolean pendingNewline;
+
+		// header lines of the current file and their replacement
+		private String diffLine;
+
+		private String oldLine;
+
+		private String newLine;
+
+		private String[] replacements;
+
+		PatchOutputStream(StringBuilder sb, OutputStream out) {
+			this.sb = sb;
+			this.out = out;
+		}
+
+		void rewritePaths(DiffEntry ent, IProject project, String oldPrefix,
+				String newPrefix) {
+			if (ent == null) {
+				diffLine = null;
+				return;
+			}
+			String oldPath = ent.getChangeType() == ChangeType.ADD ? ent
+					.getNewPath() : ent.getOldPath();
+			String newPath = ent.getChangeType() == ChangeType.DELETE ? ent
+					.getOldPath() : ent.getNewPath();
+			String oldWorkspacePath = computeWorkspacePath(new Path(oldPath),
+					project).toString();
+			String newWorkspacePath = computeWorkspacePath(new Path(newPath),
+					project).toString();
+			diffLine = "diff --git " + oldPrefix + oldPath + " " + newPrefix //$NON-NLS-1$ //$NON-NLS-2$
+					+ newPath;
+			oldLine = "--- " + oldPrefix + oldPath; //$NON-NLS-1$
+			newLine = "+++ " + newPrefix + newPath; //$NON-NLS-1$
+			replacements = new String[] {
+					"diff --git " + oldWorkspacePath + " " + newWorkspacePath, //$NON-NLS-1$ //$NON-NLS-2$
+					"--- " + oldWorkspacePath, "+++ " + newWorkspacePath }; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		void writeHeader(String header) throws IOException {
+			boolean newline = header.endsWith("\n"); //$NON-NLS-1$
+			if (newline)
+				header = header.substring(0, header.length() - 1);
+			if (sb != null)
+				sb.append(header);
+			else {
+				byte[] bytes = encode(header);
+				out.write(bytes, 0, bytes.length);
+			}
+			pendingNewline = newline;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (b == '\n') {
+				endLine();
+				return;
+			}
+			if (length == line.length) {
+				byte[] grown = new byte[line.length * 2];
+				System.arraycopy(line, 0, grown, 0, length);
+				line = grown;
+			}
+			line[length++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			for (int i = off; i < off + len; i++)
+				write(b[i]);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (out != null)
+				out.flush();
+		}
+
+		void finish() throws IOException {
+			if (length > 0) {
+				emitNewline();
+				emit(line, 0, length);
+				length = 0;
+			}
+			flush();
+		}
+
+		private void endLine() throws IOException {
+			emitNewline();
+			if (diffLine == null || !rewriteLine())
+				emit(line, 0, length);
+			pendingNewline = true;
+			length = 0;
+		}
+
+		private boolean rewriteLine() throws IOException {
+			String text = RawParseUtils.decode(line, 0, length);
+			String replacement = null;
+			if (text.equals(diffLine))
+				replacement = replacements[0];
+			else if (text.equals(oldLine))
+				replacement = replacements[1];
+			else if (text.equals(newLine))
+				replacement = replacements[2];
+			else if (text.startsWith("@@")) //$NON-NLS-1$
+				// the content of the file follows
+				diffLine = null;
+			if (replacement == null)
+				return false;
+			if (sb != null)
+				sb.append(replacement);
+			else {
+				byte[] bytes = encode(replacement);
+				out.write(bytes, 0, bytes.length);
+			}
+			return true;
+		}
+
+		private void emitNewline() throws IOException {
+			if (!pendingNewline)
+				return;
+			if (sb != null)
+				sb.append('\n');
+			else
+				out.write('\n');
+			pendingNewline = false;
+		}
+
+		private void emit(byte[] b, int off, int len) throws IOException {
+			if (out != null) {
+				out.write(b, off, len);
+				return;
+			}
+			if (currentEncoding == null)
+				sb.append(new String(b, off, len));
+			else
+				try {
+					sb.append(new String(b, off, len, currentEncoding));
+				} catch (UnsupportedEncodingException e) {
+					sb.append(new String(b, off, len));
+				}
+		}
+	}
 }
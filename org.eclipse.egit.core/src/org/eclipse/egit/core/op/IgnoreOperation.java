@@ -12,17 +12,27 @@
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -33,15 +43,16 @@
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
 import org.eclipse.egit.core.internal.job.RuleUtil;
 import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.ignore.IgnoreNode.MatchResult;
+import org.eclipse.jgit.ignore.IgnoreRule;
 import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.CoreConfig;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.treewalk.FileTreeIterator;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.WorkingTreeIterator;
-import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.FS;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -68,21 +79,39 @@ public IgnoreOperation(Collection<IPath> paths) {
 	}
 
 	public void execute(IProgressMonitor monitor) throws CoreException {
-		monitor.beginTask(CoreText.IgnoreOperation_taskName, paths.size());
+		monitor.beginTask(CoreText.IgnoreOperation_taskName, paths.size() * 2);
 		try {
+			final Map<IPath, GitIgnoreUpdate> updates = new LinkedHashMap<IPath, GitIgnoreUpdate>();
+			Map<Repository, IgnoreRules> rulesByRepository = new HashMap<Repository, IgnoreRules>();
 			for (IPath path : paths) {
 				if (monitor.isCanceled())
 					break;
-				// TODO This is pretty inefficient; multiple ignores in
-				// the same directory cause multiple writes.
-
 				// NB This does the same thing in
 				// DecoratableResourceAdapter, but neither currently
 				// consult .gitignore
-				if (!isIgnored(path))
-					addIgnore(monitor, path);
+				RepositoryMapping mapping = RepositoryMapping.getMapping(path);
+				Repository repository = mapping.getRepository();
+				IgnoreRules rules = rulesByRepository.get(repository);
+				if (rules == null) {
+					rules = new IgnoreRules(repository);
+					rulesByRepository.put(repository, rules);
+				}
+				String repoRelativePath = mapping.getRepoRelativePath(path);
+				if (!rules.isIgnored(repoRelativePath)) {
+					addIgnore(updates, repository, path);
+					rules.addRule(repoRelativePath);
+				}
 				monitor.worked(1);
 			}
+			if (!updates.isEmpty())
+				ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+					public void run(IProgressMonitor pm) throws CoreException {
+						for (GitIgnoreUpdate update : updates.values())
+							update.write(pm);
+					}
+				}, schedulingRule, IWorkspace.AVOID_UPDATE,
+						new SubProgressMonitor(monitor, paths.size()));
+			refreshIndexDiffs(updates.values());
 			monitor.done();
 		} catch (CoreException e) {
 			throw e;
@@ -92,25 +121,6 @@ public void execute(IProgressMonitor monitor) throws CoreException {
 		}
 	}
 
-	private boolean isIgnored(IPath path) throws IOException {
-		RepositoryMapping mapping = RepositoryMapping.getMapping(path);
-		Repository repository = mapping.getRepository();
-		String repoRelativePath = mapping.getRepoRelativePath(path);
-		TreeWalk walk = new TreeWalk(repository);
-		walk.addTree(new FileTreeIterator(repository));
-		walk.setFilter(PathFilter.create(repoRelativePath));
-		while (walk.next()) {
-			WorkingTreeIterator workingTreeIterator = walk.getTree(0,
-					WorkingTreeIterator.class);
-			if (walk.getPathString().equals(repoRelativePath)) {
-				return workingTreeIterator.isEntryIgnored();
-			}
-			if (workingTreeIterator.getEntryFileMode().equals(FileMode.TREE))
-				walk.enterSubtree();
-		}
-		return false;
-	}
-
 	/**
 	 * @return true if a gitignore file outside the workspace was changed. In
 	 *         this case the caller may need to perform manual UI refreshes
@@ -124,43 +134,210 @@ public ISchedulingRule getSchedulingRule() {
 		return schedulingRule;
 	}
 
-	private void addIgnore(IProgressMonitor monitor, IPath path)
-			throws UnsupportedEncodingException, CoreException, IOException {
+	private void addIgnore(Map<IPath, GitIgnoreUpdate> updates,
+			Repository repository, IPath path) {
 		IPath parent = path.removeLastSegments(1);
-		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-		IContainer container = root.getContainerForLocation(parent);
+		GitIgnoreUpdate update = updates.get(parent);
+		if (update == null) {
+			update = new GitIgnoreUpdate(repository, path);
+			updates.put(parent, update);
+		}
+		update.entries.append("/").append(path.lastSegment()).append("\n"); //$NON-NLS-1$  //$NON-NLS-2$
+	}
+
+	/**
+	 * Changes of .gitignore files in the workspace are picked up by the
+	 * resource listener of the index diff cache; for the others one update
+	 * of their folders is triggered per repository
+	 */
+	private void refreshIndexDiffs(Collection<GitIgnoreUpdate> updates) {
+		Map<Repository, Collection<String>> folders = new HashMap<Repository, Collection<String>>();
+		for (GitIgnoreUpdate update : updates) {
+			if (!update.outsideWorkspace)
+				continue;
+			Collection<String> repositoryFolders = folders
+					.get(update.repository);
+			if (repositoryFolders == null) {
+				repositoryFolders = new HashSet<String>();
+				folders.put(update.repository, repositoryFolders);
+			}
+			repositoryFolders.add(update.getRepoRelativeFolder());
+		}
+		for (Map.Entry<Repository, Collection<String>> entry : folders
+				.entrySet()) {
+			IndexDiffCacheEntry cacheEntry = Activator.getDefault()
+					.getIndexDiffCache().getIndexDiffCacheEntry(entry.getKey());
+			if (cacheEntry == null)
+				continue;
+			// the root folder can only be updated as a whole
+			if (entry.getValue().contains("")) //$NON-NLS-1$
+				cacheEntry.refresh();
+			else
+				cacheEntry.refreshFiles(entry.getValue());
+		}
+	}
+
+	/**
+	 * The entries to append to the .gitignore file of one folder
+	 */
+	private class GitIgnoreUpdate {
+
+		final Repository repository;
 
-		String entry = "/" + path.lastSegment() + "\n"; //$NON-NLS-1$  //$NON-NLS-2$
+		final IPath firstPath;
 
-		if (container == null || container instanceof IWorkspaceRoot) {
-			Repository repository = RepositoryMapping.getMapping(
-					path).getRepository();
-			// .gitignore is not accessible as resource
-			IPath gitIgnorePath = parent.append(Constants.GITIGNORE_FILENAME);
+		final IPath parent;
+
+		final StringBuilder entries = new StringBuilder();
+
+		boolean outsideWorkspace;
+
+		GitIgnoreUpdate(Repository repository, IPath firstPath) {
+			this.repository = repository;
+			this.firstPath = firstPath;
+			this.parent = firstPath.removeLastSegments(1);
+		}
+
+		String getRepoRelativeFolder() {
 			IPath repoPath = new Path(repository.getWorkTree()
 					.getAbsolutePath());
-			if (!repoPath.isPrefixOf(gitIgnorePath)) {
-				String message = NLS.bind(
-						CoreText.IgnoreOperation_parentOutsideRepo,
-						path.toOSString(), repoPath.toOSString());
-				IStatus status = Activator.error(message, null);
-				throw new CoreException(status);
+			IPath folder = parent.removeFirstSegments(
+					parent.matchingFirstSegments(repoPath)).setDevice(null);
+			return folder.isEmpty() ? "" : folder.addTrailingSeparator() //$NON-NLS-1$
+					.toString();
+		}
+
+		void write(IProgressMonitor monitor) throws CoreException {
+			IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+			IContainer container = root.getContainerForLocation(parent);
+			String entry = entries.toString();
+
+			if (container == null || container instanceof IWorkspaceRoot) {
+				// .gitignore is not accessible as resource
+				IPath gitIgnorePath = parent
+						.append(Constants.GITIGNORE_FILENAME);
+				IPath repoPath = new Path(repository.getWorkTree()
+						.getAbsolutePath());
+				if (!repoPath.isPrefixOf(gitIgnorePath)) {
+					String message = NLS.bind(
+							CoreText.IgnoreOperation_parentOutsideRepo,
+							firstPath.toOSString(), repoPath.toOSString());
+					IStatus status = Activator.error(message, null);
+					throw new CoreException(status);
+				}
+				File gitIgnore = new File(gitIgnorePath.toOSString());
+				updateGitIgnore(gitIgnore, entry);
+				// no resource change event when updating .gitignore outside
+				// workspace => trigger manual decorator refresh
+				gitignoreOutsideWSChanged = true;
+				outsideWorkspace = true;
+			} else {
+				IFile gitignore = container.getFile(new Path(
+						Constants.GITIGNORE_FILENAME));
+				ByteArrayInputStream entryBytes;
+				try {
+					entry = getEntry(gitignore.getLocation().toFile(), entry);
+					entryBytes = asStream(entry);
+				} catch (IOException e) {
+					String error = NLS.bind(
+							CoreText.IgnoreOperation_updatingFailed, gitignore
+									.getLocation().toOSString());
+					throw new CoreException(Activator.error(error, e));
+				}
+				IProgressMonitor subMonitor = new SubProgressMonitor(monitor,
+						1);
+				if (gitignore.exists())
+					gitignore.appendContents(entryBytes, true, true,
+							subMonitor);
+				else
+					gitignore.create(entryBytes, true, subMonitor);
+			}
+		}
+	}
+
+	/**
+	 * The ignore rules of one repository, loaded once per folder. Rules are
+	 * evaluated like {@link org.eclipse.jgit.treewalk.WorkingTreeIterator#isEntryIgnored()} does: the
+	 * rules of the nearest folder decide, the rules of the root folder include
+	 * the excludes file and info/exclude.
+	 */
+	private static class IgnoreRules {
+
+		private final Repository repository;
+
+		private final Map<String, IgnoreNode> nodes = new HashMap<String, IgnoreNode>();
+
+		IgnoreRules(Repository repository) {
+			this.repository = repository;
+		}
+
+		boolean isIgnored(String repoRelativePath) throws IOException {
+			File file = new File(repository.getWorkTree(), repoRelativePath);
+			if (repoRelativePath.length() == 0 || !file.exists())
+				return false;
+			boolean isDirectory = file.isDirectory();
+			int end = repoRelativePath.lastIndexOf('/');
+			while (end >= 0) {
+				String folder = repoRelativePath.substring(0, end);
+				switch (getNode(folder).isIgnored(
+						repoRelativePath.substring(end), isDirectory)) {
+				case IGNORED:
+					return true;
+				case NOT_IGNORED:
+					return false;
+				default:
+					end = folder.lastIndexOf('/');
+				}
+			}
+			return getNode("").isIgnored(repoRelativePath, isDirectory) == MatchResult.IGNORED; //$NON-NLS-1$
+		}
+
+		void addRule(String repoRelativePath) throws IOException {
+			int slash = repoRelativePath.lastIndexOf('/');
+			String folder = slash < 0 ? "" : repoRelativePath.substring(0, //$NON-NLS-1$
+					slash);
+			List<IgnoreRule> rules = new ArrayList<IgnoreRule>(getNode(folder)
+					.getRules());
+			rules.add(new IgnoreRule("/" + repoRelativePath.substring(slash + 1))); //$NON-NLS-1$
+			nodes.put(folder, new IgnoreNode(rules));
+		}
+
+		private IgnoreNode getNode(String folder) throws IOException {
+			IgnoreNode node = nodes.get(folder);
+			if (node != null)
+				return node;
+			node = new IgnoreNode();
+			File dir = folder.length() == 0 ? repository.getWorkTree()
+					: new File(repository.getWorkTree(), folder);
+			parse(node, new File(dir, Constants.GITIGNORE_FILENAME));
+			if (folder.length() == 0) {
+				FS fs = repository.getFS();
+				String path = repository.getConfig().get(CoreConfig.KEY)
+						.getExcludesFile();
+				if (path != null) {
+					if (path.startsWith("~/")) //$NON-NLS-1$
+						parse(node, fs.resolve(fs.userHome(),
+								path.substring(2)));
+					else
+						parse(node, fs.resolve(null, path));
+				}
+				parse(node, fs.resolve(repository.getDirectory(),
+						"info/exclude")); //$NON-NLS-1$
+			}
+			nodes.put(folder, node);
+			return node;
+		}
+
+		private static void parse(IgnoreNode node, File file)
+				throws IOException {
+			if (!file.exists())
+				return;
+			InputStream in = new FileInputStream(file);
+			try {
+				node.parse(in);
+			} finally {
+				in.close();
 			}
-			File gitIgnore = new File(gitIgnorePath.toOSString());
-			updateGitIgnore(gitIgnore, entry);
-			// no resource change event when updating .gitignore outside
-			// workspace => trigger manual decorator refresh
-			gitignoreOutsideWSChanged = true;
-		} else {
-			IFile gitignore = container.getFile(new Path(
-					Constants.GITIGNORE_FILENAME));
-			entry = getEntry(gitignore.getLocation().toFile(), entry);
-			IProgressMonitor subMonitor = new SubProgressMonitor(monitor, 1);
-			ByteArrayInputStream entryBytes = asStream(entry);
-			if (gitignore.exists())
-				gitignore.appendContents(entryBytes, true, true, subMonitor);
-			else
-				gitignore.create(entryBytes, true, subMonitor);
 		}
 	}
 
@@ -29,6 +29,7 @@
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -66,10 +67,15 @@ public class GitProjectData {
 	@SuppressWarnings("synthetic-access")
 	private static final IResourceChangeListener rcl = new RCL();
 
+	private static final RepositoryMappingIndex mappingIndex = new RepositoryMappingIndex();
+
 	private static class RCL implements IResourceChangeListener {
 		@SuppressWarnings("synthetic-access")
 		public void resourceChanged(final IResourceChangeEvent event) {
 			switch (event.getType()) {
+			case IResourceChangeEvent.POST_CHANGE:
+				updateMappingIndex(event.getDelta());
+				break;
 			case IResourceChangeEvent.PRE_CLOSE:
 				uncache((IProject) event.getResource());
 				break;
@@ -86,6 +92,21 @@ public void resourceChanged(final IResourceChangeEvent event) {
 		}
 	}
 
+	private static void updateMappingIndex(IResourceDelta delta) {
+		if (delta == null)
+			return;
+		for (IResourceDelta projectDelta : delta.getAffectedChildren(
+				IResourceDelta.ADDED | IResourceDelta.REMOVED
+						| IResourceDelta.CHANGED, IResource.NONE)) {
+			if (projectDelta.getKind() == IResourceDelta.REMOVED)
+				mappingIndex.remove((IProject) projectDelta.getResource());
+			else if (projectDelta.getKind() == IResourceDelta.ADDED
+					|| (projectDelta.getFlags() & IResourceDelta.OPEN) != 0)
+				// the mappings of the project are loaded on the next lookup
+				mappingIndex.invalidate();
+		}
+	}
+
 	private static QualifiedName MAPPING_KEY = new QualifiedName(
 			GitProjectData.class.getName(), "RepositoryMapping");  //$NON-NLS-1$
 
@@ -219,6 +240,7 @@ public synchronized static GitProjectData get(final IProject p) {
 	 */
 	public static void delete(final IProject p) throws IOException {
 		trace("delete(" + p.getName() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+		mappingIndex.remove(p);
 		GitProjectData d = lookup(p);
 		if (d == null)
 			deletePropertyFiles(p);
@@ -240,6 +262,13 @@ public static void add(final IProject p, final GitProjectData d) {
 		cache(p, d);
 	}
 
+	/**
+	 * @return the index of the mappings of all projects
+	 */
+	static RepositoryMappingIndex getMappingIndex() {
+		return mappingIndex;
+	}
+
 	static void trace(final String m) {
 		// TODO is this the right location?
 		if (GitTraceLocation.CORE.isActive())
@@ -254,6 +283,7 @@ private synchronized static void cache(final IProject p,
 	}
 
 	private synchronized static void uncache(final IProject p) {
+		mappingIndex.remove(p);
 		if (projectDataCache.remove(p) != null) {
 			trace("uncacheDataFor(" //$NON-NLS-1$
 				+ p.getName() + ")"); //$NON-NLS-1$
@@ -350,6 +380,20 @@ public boolean isProtected(final IResource f) {
 		return protectedResources.contains(f);
 	}
 
+	/**
+	 * @return the mapping of the project itself if it is the only mapping of
+	 *         the project, i.e. the mapping of all its resources; otherwise
+	 *         null
+	 */
+	RepositoryMapping getProjectMapping() {
+		if (mappings.size() != 1)
+			return null;
+		RepositoryMapping m = mappings.iterator().next();
+		if (!project.equals(m.getContainer()))
+			return null;
+		return m;
+	}
+
 	/**
 	 * @param resource any workbench resource contained within this project.
 	 * @return the mapping for the specified project
@@ -465,6 +509,7 @@ private GitProjectData load() throws IOException {
 
 	private void remapAll() {
 		protectedResources.clear();
+		mappingIndex.remove(getProject());
 		for (final RepositoryMapping repoMapping : mappings) {
 			map(repoMapping);
 		}
@@ -519,6 +564,7 @@ private void map(final RepositoryMapping m) {
 			Activator.logError(
 					CoreText.GitProjectData_failedToCacheRepoMapping, err);
 		}
+		mappingIndex.add(getProject(), m);
 
 		dotGit = c.findMember(Constants.DOT_GIT);
 		if (dotGit != null && dotGit.getLocation().toFile().equals(git)) {
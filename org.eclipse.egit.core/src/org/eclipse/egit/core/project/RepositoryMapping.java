@@ -17,6 +17,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Properties;
 
 import org.eclipse.core.resources.IContainer;
@@ -260,6 +261,31 @@ public static RepositoryMapping getMapping(final IResource resource) {
 		return ((GitProvider)rp).getData().getRepositoryMapping(resource);
 	}
 
+	/**
+	 * Get the repository mapping which contains all resources of a project.
+	 * This is the case if the project itself is mapped and has no other
+	 * mappings, e.g. for nested repositories.
+	 *
+	 * @param project
+	 * @return the RepositoryMapping of all resources of the project, or null
+	 *         for non GitProvider or if the resources belong to different
+	 *         mappings
+	 */
+	public static RepositoryMapping getProjectMapping(IProject project) {
+		if (!project.isAccessible())
+			return null;
+
+		final RepositoryProvider rp = RepositoryProvider.getProvider(project);
+		if (!(rp instanceof GitProvider))
+			return null;
+
+		GitProjectData data = ((GitProvider) rp).getData();
+		if (data == null)
+			return null;
+
+		return data.getProjectMapping();
+	}
+
 	/**
 	 * Get the repository mapping for a path if it exists.
 	 *
@@ -268,25 +294,29 @@ public static RepositoryMapping getMapping(final IResource resource) {
 	 *         or null for non GitProvider.
 	 */
 	public static RepositoryMapping getMapping(IPath path) {
-		IProject[] projects = ResourcesPlugin.getWorkspace().getRoot()
-				.getProjects();
-
-		for (IProject project : projects) {
-			if (isNonWorkspace(project))
-				continue;
-			RepositoryMapping mapping = getMapping(project);
-			if (mapping == null)
-				continue;
-
-			Path workingTree = new Path(mapping.getWorkTree().toString());
-			IPath relative = path.makeRelativeTo(workingTree);
-			String firstSegment = relative.segment(0);
-
-			if (firstSegment == null || !"..".equals(firstSegment)) //$NON-NLS-1$
-				return mapping;
-		}
+		RepositoryMappingIndex index = GitProjectData.getMappingIndex();
+		index.ensureComplete(ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects());
+		return index.find(path);
+	}
 
-		return null;
+	/**
+	 * Get the repository mappings for multiple paths. The mappings of the
+	 * workspace projects are only checked once for all paths.
+	 *
+	 * @param paths
+	 * @return the RepositoryMappings in the order of the paths, with null for
+	 *         paths without mapping
+	 */
+	public static RepositoryMapping[] getMappings(Collection<IPath> paths) {
+		RepositoryMappingIndex index = GitProjectData.getMappingIndex();
+		index.ensureComplete(ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects());
+		RepositoryMapping[] result = new RepositoryMapping[paths.size()];
+		int i = 0;
+		for (IPath path : paths)
+			result[i++] = index.find(path);
+		return result;
 	}
 
 	/**
@@ -297,14 +327,10 @@ public static RepositoryMapping getMapping(IPath path) {
 	 *         RepositoryMapping exists.
 	 */
 	public static RepositoryMapping findRepositoryMapping(Repository repository) {
-		final IProject[] projects = ResourcesPlugin.getWorkspace().getRoot()
-				.getProjects();
-		for (IProject project : projects) {
-			RepositoryMapping mapping = RepositoryMapping.getMapping(project);
-			if (mapping != null && mapping.getRepository() == repository)
-				return mapping;
-		}
-		return null;
+		RepositoryMappingIndex index = GitProjectData.getMappingIndex();
+		index.ensureComplete(ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects());
+		return index.find(repository);
 	}
 
 	/**
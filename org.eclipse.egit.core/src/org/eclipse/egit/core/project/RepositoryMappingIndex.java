@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Index of the {@link RepositoryMapping}s of the workspace.
+ * <p>
+ * The mappings are stored in a trie of the path segments of their working
+ * trees, so finding the mapping of a path costs one map lookup per segment
+ * of the path, independent of the number of projects in the workspace. The
+ * index is maintained by {@link GitProjectData} when projects are mapped,
+ * closed or deleted.
+ * <p>
+ * Mappings of projects are created lazily, therefore the index may be
+ * incomplete after projects were opened or added. Lookups call
+ * {@link #ensureComplete(IProject[])} which loads the mappings of all projects once
+ * until the index is invalidated again.
+ */
+class RepositoryMappingIndex {
+
+	private final Node root = new Node();
+
+	private final Map<Repository, List<Entry>> repositories = new HashMap<Repository, List<Entry>>();
+
+	private final Map<IProject, List<Entry>> projects = new HashMap<IProject, List<Entry>>();
+
+	private boolean complete;
+
+	// incremented on each invalidation
+	private int generation;
+
+	/**
+	 * Adds the mapping of a project. The mapping must be connected to its
+	 * repository.
+	 *
+	 * @param project
+	 * @param mapping
+	 */
+	synchronized void add(IProject project, RepositoryMapping mapping) {
+		Repository repository = mapping.getRepository();
+		if (repository == null || repository.isBare())
+			return;
+
+		Entry entry = new Entry(mapping, repository);
+		Node node = getNode(new Path(repository.getWorkTree()
+				.getAbsolutePath()));
+		node.entries.add(entry);
+		entry.node = node;
+		add(repositories, repository, entry);
+		add(projects, project, entry);
+	}
+
+	/**
+	 * Removes all mappings of a project
+	 *
+	 * @param project
+	 */
+	synchronized void remove(IProject project) {
+		List<Entry> entries = projects.remove(project);
+		if (entries == null)
+			return;
+		for (Entry entry : entries) {
+			entry.node.entries.remove(entry);
+			List<Entry> repositoryEntries = repositories.get(entry.repository);
+			if (repositoryEntries != null) {
+				repositoryEntries.remove(entry);
+				if (repositoryEntries.isEmpty())
+					repositories.remove(entry.repository);
+			}
+		}
+	}
+
+	/**
+	 * Marks the index as incomplete, e.g. because a project was opened whose
+	 * mappings are not loaded yet
+	 */
+	synchronized void invalidate() {
+		complete = false;
+		generation++;
+	}
+
+	/**
+	 * Loads the mappings of all projects of the workspace if the index was
+	 * invalidated since the last load
+	 *
+	 * @param workspaceProjects
+	 *            the projects of the workspace
+	 */
+	void ensureComplete(IProject[] workspaceProjects) {
+		int loadedGeneration;
+		synchronized (this) {
+			if (complete)
+				return;
+			loadedGeneration = generation;
+		}
+		// loading the mappings adds them to the index, do it without holding
+		// the lock of the index
+		for (IProject project : workspaceProjects)
+			RepositoryMapping.getMapping(project);
+		synchronized (this) {
+			if (generation == loadedGeneration)
+				complete = true;
+		}
+	}
+
+	/**
+	 * @param path
+	 *            absolute file system path
+	 * @return the mapping with the innermost working tree containing the
+	 *         given path or null
+	 */
+	synchronized RepositoryMapping find(IPath path) {
+		Node node = root.children.get(getDevice(path));
+		RepositoryMapping result = null;
+		for (int i = 0; node != null; i++) {
+			RepositoryMapping mapping = node.getMapping();
+			if (mapping != null)
+				result = mapping;
+			if (i == path.segmentCount())
+				break;
+			node = node.children.get(path.segment(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @param repository
+	 * @return a mapping of the given repository or null
+	 */
+	synchronized RepositoryMapping find(Repository repository) {
+		List<Entry> entries = repositories.get(repository);
+		if (entries == null)
+			return null;
+		for (Entry entry : entries)
+			if (entry.mapping.getRepository() == repository)
+				return entry.mapping;
+		return null;
+	}
+
+	private Node getNode(IPath path) {
+		Node node = getChild(root, getDevice(path));
+		for (int i = 0; i < path.segmentCount(); i++)
+			node = getChild(node, path.segment(i));
+		return node;
+	}
+
+	private static Node getChild(Node node, String segment) {
+		Node child = node.children.get(segment);
+		if (child == null) {
+			child = new Node();
+			node.children.put(segment, child);
+		}
+		return child;
+	}
+
+	private static String getDevice(IPath path) {
+		String device = path.getDevice();
+		return device != null ? device : ""; //$NON-NLS-1$
+	}
+
+	private static <K> void add(Map<K, List<Entry>> map, K key, Entry entry) {
+		List<Entry> entries = map.get(key);
+		if (entries == null) {
+			entries = new ArrayList<Entry>(1);
+			map.put(key, entries);
+		}
+		entries.add(entry);
+	}
+
+	private static class Node {
+
+		final Map<String, Node> children = new HashMap<String, Node>(4);
+
+		final List<Entry> entries = new ArrayList<Entry>(1);
+
+		RepositoryMapping getMapping() {
+			for (Entry entry : entries)
+				// skip mappings which were cleared in the meantime
+				if (entry.mapping.getRepository() == entry.repository)
+					return entry.mapping;
+			return null;
+		}
+	}
+
+	private static class Entry {
+
+		final RepositoryMapping mapping;
+
+		final Repository repository;
+
+		Node node;
+
+		Entry(RepositoryMapping mapping, Repository repository) {
+			this.mapping = mapping;
+			this.repository = repository;
+		}
+	}
+}
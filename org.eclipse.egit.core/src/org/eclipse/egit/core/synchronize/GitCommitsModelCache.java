@@ -9,26 +9,36 @@
 package org.eclipse.egit.core.synchronize;
 
 import static org.eclipse.jgit.lib.ObjectId.zeroId;
-import static org.eclipse.jgit.treewalk.filter.TreeFilter.ANY_DIFF;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.CommitDiffCache.TreeDiff;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
-import org.eclipse.jgit.lib.MutableObjectId;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevFlagSet;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.treewalk.EmptyTreeIterator;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
@@ -293,12 +303,50 @@ private String getObjectId(AbbreviatedObjectId object) {
 
 	}
 
+	/**
+	 * Receives the commits found by
+	 * {@link GitCommitsModelCache#build(Repository, ObjectId, ObjectId, TreeFilter, CommitListener)}
+	 * as soon as the changes of a commit and of all commits before it are
+	 * calculated, while the history is still traversed.
+	 */
+	public interface CommitListener {
+
+		/**
+		 * Called on the building thread for each commit that contains
+		 * changes, in the same order as the commits are returned by
+		 * {@link GitCommitsModelCache#build(Repository, ObjectId, ObjectId, TreeFilter, CommitListener)}
+		 *
+		 * @param commit
+		 */
+		void commitBuilt(Commit commit);
+	}
+
+	private static final int MAX_PARALLEL_DIFFS = 4;
+
+	// limits the number of calculated but not yet consumed tree diffs
+	private static final int MAX_PENDING_DIFFS = 64 * MAX_PARALLEL_DIFFS;
+
+	private static final long IDLE_THREAD_TIMEOUT = 60;
+
+	/**
+	 * Shared by all builds, when all threads are busy the diff is calculated
+	 * on the thread traversing the history
+	 */
+	private static final ExecutorService DIFF_EXECUTOR = new ThreadPoolExecutor(
+			0, MAX_PARALLEL_DIFFS, IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), new DiffThreadFactory(),
+			new ThreadPoolExecutor.CallerRunsPolicy());
+
 	static final AbbreviatedObjectId ZERO_ID = AbbreviatedObjectId
 			.fromObjectId(zeroId());
 
 	/**
 	 * Scans given {@code repo} and build list of commits between two given
-	 * RevCommit objectId's. Each commit contains list of changed resources
+	 * RevCommit objectId's. Each commit contains list of changed resources.
+	 * <p>
+	 * The history is traversed on the calling thread while the changes of
+	 * each commit are calculated by up to {@link #MAX_PARALLEL_DIFFS} worker
+	 * threads shared by all builds.
 	 *
 	 * @param repo
 	 *            repository that should be scanned
@@ -315,6 +363,36 @@ private String getObjectId(AbbreviatedObjectId object) {
 	 */
 	public static List<Commit> build(Repository repo, ObjectId srcId,
 			ObjectId dstId, TreeFilter pathFilter) throws IOException {
+		return build(repo, srcId, dstId, pathFilter, null);
+	}
+
+	/**
+	 * Scans given {@code repo} and build list of commits between two given
+	 * RevCommit objectId's. Each commit contains list of changed resources.
+	 * <p>
+	 * The history is traversed on the calling thread while the changes of
+	 * each commit are calculated by up to {@link #MAX_PARALLEL_DIFFS} worker
+	 * threads shared by all builds. The commits are passed to the
+	 * {@code listener} in history order as soon as they are available.
+	 *
+	 * @param repo
+	 *            repository that should be scanned
+	 * @param srcId
+	 *            RevCommit id that git history traverse will start from
+	 * @param dstId
+	 *            RevCommit id that git history traverse will end
+	 * @param pathFilter
+	 *            path filter definition or {@code null} when all paths should
+	 *            be included
+	 * @param listener
+	 *            notified about each commit with changes, may be {@code null}
+	 * @return list of {@link Commit} object's between {@code srcId} and
+	 *         {@code dstId}
+	 * @throws IOException
+	 */
+	public static List<Commit> build(Repository repo, ObjectId srcId,
+			ObjectId dstId, TreeFilter pathFilter, CommitListener listener)
+			throws IOException {
 		if (dstId.equals(srcId))
 			return new ArrayList<Commit>(0);
 
@@ -341,40 +419,85 @@ public static List<Commit> build(Repository repo, ObjectId srcId,
 			rw.setTreeFilter(pathFilter);
 
 		List<Commit> result = new ArrayList<Commit>();
-		for (RevCommit revCommit : rw) {
-			if (revCommit.hasAll(allFlags))
-				break;
-
-			Commit commit = new Commit();
-			commit.shortMessage = revCommit.getShortMessage();
-			commit.commitId = AbbreviatedObjectId.fromObjectId(revCommit);
-			commit.authorName = revCommit.getAuthorIdent().getName();
-			commit.committerName = revCommit.getCommitterIdent().getName();
-			commit.commitDate = revCommit.getAuthorIdent().getWhen();
-
-			RevCommit actualCommit, parentCommit;
-			if (revCommit.has(localFlag)) {
-				actualCommit = revCommit;
-				parentCommit = getParentCommit(revCommit);
-				commit.direction = RIGHT;
-			} else if (revCommit.has(remoteFlag)) {
-				actualCommit = getParentCommit(revCommit);
-				parentCommit = revCommit;
-				commit.direction = LEFT;
-			} else
-				throw new GitCommitsModelDirectionException();
-
-			commit.children = getChangedObjects(repo, actualCommit,
-					parentCommit, pathFilter, commit.direction);
-
-			if (commit.children != null)
-				result.add(commit);
+		LinkedList<PendingCommit> pending = new LinkedList<PendingCommit>();
+		try {
+			for (RevCommit revCommit : rw) {
+				if (revCommit.hasAll(allFlags))
+					break;
+
+				Commit commit = new Commit();
+				commit.shortMessage = revCommit.getShortMessage();
+				commit.commitId = AbbreviatedObjectId.fromObjectId(revCommit);
+				commit.authorName = revCommit.getAuthorIdent().getName();
+				commit.committerName = revCommit.getCommitterIdent().getName();
+				commit.commitDate = revCommit.getAuthorIdent().getWhen();
+
+				RevCommit actualCommit, parentCommit;
+				if (revCommit.has(localFlag)) {
+					actualCommit = revCommit;
+					parentCommit = getParentCommit(revCommit);
+					commit.direction = RIGHT;
+				} else if (revCommit.has(remoteFlag)) {
+					actualCommit = getParentCommit(revCommit);
+					parentCommit = revCommit;
+					commit.direction = LEFT;
+				} else
+					throw new GitCommitsModelDirectionException();
+				if (parentCommit != null)
+					rw.parseHeaders(parentCommit);
+				if (actualCommit != null)
+					rw.parseHeaders(actualCommit);
+
+				pending.add(new PendingCommit(commit, DIFF_EXECUTOR
+						.submit(new ChangedObjectsTask(repo, actualCommit,
+								parentCommit, pathFilter, commit.direction))));
+
+				// pass on the finished commits, or wait for the oldest one
+				// if too many diffs are pending
+				while (!pending.isEmpty()
+						&& (pending.getFirst().changes.isDone() || pending
+								.size() > MAX_PENDING_DIFFS))
+					addCommit(pending.removeFirst(), result, listener);
+			}
+
+			while (!pending.isEmpty())
+				addCommit(pending.removeFirst(), result, listener);
+		} finally {
+			// only left if the build failed
+			for (PendingCommit pendingCommit : pending)
+				pendingCommit.changes.cancel(true);
+			rw.dispose();
 		}
-		rw.dispose();
 
 		return result;
 	}
 
+	private static void addCommit(PendingCommit pendingCommit,
+			List<Commit> result, CommitListener listener) throws IOException {
+		Commit commit = pendingCommit.commit;
+		try {
+			commit.children = pendingCommit.changes.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause.getMessage());
+		}
+
+		if (commit.children != null) {
+			result.add(commit);
+			if (listener != null)
+				listener.commitBuilt(commit);
+		}
+	}
+
 	private static RevCommit getParentCommit(RevCommit commit) {
 		if (commit.getParents().length > 0)
 			return commit.getParents()[0];
@@ -382,51 +505,105 @@ private static RevCommit getParentCommit(RevCommit commit) {
 			return null;
 	}
 
-	private static Map<String, Change> getChangedObjects(Repository repo,
-			RevCommit parentCommit, RevCommit remoteCommit,
-			TreeFilter pathFilter, final int direction) throws IOException {
-		final TreeWalk tw = new TreeWalk(repo);
-		addTreeFilter(tw, parentCommit);
-		addTreeFilter(tw, remoteCommit);
+	private static class PendingCommit {
 
-		tw.setRecursive(true);
-		if (pathFilter == null)
-			tw.setFilter(ANY_DIFF);
-		else
-			tw.setFilter(AndTreeFilter.create(ANY_DIFF, pathFilter));
+		final Commit commit;
 
-		final int localTreeId = direction == LEFT ? 1 : 0;
-		final int remoteTreeId = direction == LEFT ? 0 : 1;
-		final Map<String, Change> result = new HashMap<String, GitCommitsModelCache.Change>();
-		final AbbreviatedObjectId actualCommit = getAbbreviatedObjectId(parentCommit);
-		final AbbreviatedObjectId remoteCommitAbb = getAbbreviatedObjectId(remoteCommit);
+		final Future<Map<String, Change>> changes;
 
-		MutableObjectId idBuf = new MutableObjectId();
-		while (tw.next()) {
+		PendingCommit(Commit commit, Future<Map<String, Change>> changes) {
+			this.commit = commit;
+			this.changes = changes;
+		}
+	}
+
+	/**
+	 * Calculates the changes of one commit. The trees are resolved on the
+	 * thread traversing the history, the task only reads the tree objects
+	 * using its own {@link ObjectReader}.
+	 */
+	private static class ChangedObjectsTask implements
+			Callable<Map<String, Change>> {
+
+		private final Repository repo;
+
+		private final RevTree parentTree;
+
+		private final RevTree remoteTree;
+
+		private final AbbreviatedObjectId actualCommit;
+
+		private final AbbreviatedObjectId remoteCommit;
+
+		private final TreeFilter pathFilter;
+
+		private final int direction;
+
+		ChangedObjectsTask(Repository repo, RevCommit parentCommit,
+				RevCommit remoteCommit, TreeFilter pathFilter, int direction) {
+			this.repo = repo;
+			parentTree = parentCommit != null ? parentCommit.getTree() : null;
+			remoteTree = remoteCommit != null ? remoteCommit.getTree() : null;
+			actualCommit = getAbbreviatedObjectId(parentCommit);
+			this.remoteCommit = getAbbreviatedObjectId(remoteCommit);
+			// tree filters may keep state, every walk needs its own instance
+			this.pathFilter = pathFilter != null ? pathFilter.clone() : null;
+			this.direction = direction;
+		}
+
+		public Map<String, Change> call() throws Exception {
+			ObjectReader reader = repo.newObjectReader();
+			try {
+				return getChangedObjects(reader, parentTree, remoteTree,
+						actualCommit, remoteCommit, pathFilter, direction);
+			} finally {
+				reader.release();
+			}
+		}
+	}
+
+	private static class DiffThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "EGit-GitCommitsModelCache-" //$NON-NLS-1$
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static Map<String, Change> getChangedObjects(ObjectReader reader,
+			RevTree parentTree, RevTree remoteTree,
+			AbbreviatedObjectId actualCommit,
+			AbbreviatedObjectId remoteCommitAbb, TreeFilter pathFilter,
+			final int direction) throws IOException {
+		TreeDiff diff = Activator.getDefault().getCommitDiffCache()
+				.get(reader, parentTree, remoteTree, pathFilter);
+		if (diff.size() == 0)
+			return null;
+
+		final Map<String, Change> result = new HashMap<String, GitCommitsModelCache.Change>();
+		for (int i = 0; i < diff.size(); i++) {
+			String path = diff.getPath(i);
+			ObjectId parentId = diff.getOldId(i);
+			ObjectId remoteId = diff.getNewId(i);
 			Change change = new Change();
 			change.commitId = actualCommit;
 			change.remoteCommitId = remoteCommitAbb;
-			change.name = tw.getNameString();
-			tw.getObjectId(idBuf, localTreeId);
-			change.objectId = AbbreviatedObjectId.fromObjectId(idBuf);
-			tw.getObjectId(idBuf, remoteTreeId);
-			change.remoteObjectId = AbbreviatedObjectId.fromObjectId(idBuf);
+			change.name = path.substring(path.lastIndexOf('/') + 1);
+			change.objectId = AbbreviatedObjectId
+					.fromObjectId(direction == LEFT ? remoteId : parentId);
+			change.remoteObjectId = AbbreviatedObjectId
+					.fromObjectId(direction == LEFT ? parentId : remoteId);
 
 			calculateAndSetChangeKind(direction, change);
 
-			result.put(tw.getPathString(), change);
+			result.put(path, change);
 		}
-		tw.release();
-
-		return result.size() > 0 ? result : null;
-	}
 
-	private static void addTreeFilter(TreeWalk tw, RevCommit commit)
-			throws IOException {
-		if (commit != null)
-			tw.addTree(commit.getTree());
-		else
-			tw.addTree(new EmptyTreeIterator());
+		return result;
 	}
 
 	private static AbbreviatedObjectId getAbbreviatedObjectId(RevCommit commit) {
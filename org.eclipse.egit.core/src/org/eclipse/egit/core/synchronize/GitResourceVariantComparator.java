@@ -13,19 +13,32 @@
 package org.eclipse.egit.core.synchronize;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.FileObjectIdCache;
+import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.core.synchronize.dto.GitSynchronizeDataSet;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CoreConfig.AutoCRLF;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
 import org.eclipse.team.core.TeamException;
 import org.eclipse.team.core.variants.IResourceVariant;
 import org.eclipse.team.core.variants.IResourceVariantComparator;
@@ -34,11 +47,46 @@ class GitResourceVariantComparator implements IResourceVariantComparator {
 
 	private final GitSynchronizeDataSet gsd;
 
+	private final Map<Repository, IndexSnapshot> indexes = new HashMap<Repository, IndexSnapshot>();
+
+	/**
+	 * The index of a repository and the time it was written
+	 */
+	private static class IndexSnapshot {
+
+		final DirCache dirCache;
+
+		final long lastModified;
+
+		/**
+		 * Index entries are only used if the blob ids of the local files are
+		 * the ids of their unconverted content
+		 */
+		final boolean usable;
+
+		IndexSnapshot(Repository repository) throws IOException {
+			// read the time first, a newer index is treated as racy
+			lastModified = repository.getIndexFile().lastModified();
+			dirCache = DirCache.read(repository);
+			usable = repository.getConfig().get(WorkingTreeOptions.KEY)
+					.getAutoCRLF() == AutoCRLF.FALSE;
+		}
+	}
+
 	GitResourceVariantComparator(GitSynchronizeDataSet dataSet) {
 		gsd = dataSet;
 	}
 
-	@SuppressWarnings("resource")
+	/**
+	 * Forgets the cached indexes of the repositories, they are read again
+	 * when needed
+	 */
+	void clear() {
+		synchronized (indexes) {
+			indexes.clear();
+		}
+	}
+
 	public boolean compare(IResource local, IResourceVariant remote) {
 		if (!local.exists() || remote == null) {
 			return false;
@@ -49,42 +97,15 @@ public boolean compare(IResource local, IResourceVariant remote) {
 				return false;
 			}
 
-			InputStream stream = null;
-			InputStream remoteStream = null;
-			try {
-				remoteStream = remote.getStorage(new NullProgressMonitor())
-						.getContents();
-				stream = getLocal(local);
-				byte[] remoteBytes = new byte[8096];
-				byte[] bytes = new byte[8096];
-
-				int remoteRead = remoteStream.read(remoteBytes);
-				int read = stream.read(bytes);
-				if (remoteRead != read) {
-					return false;
-				}
-
-				while (Arrays.equals(bytes, remoteBytes)) {
-					remoteRead = remoteStream.read(remoteBytes);
-					read = stream.read(bytes);
-					if (remoteRead != read) {
-						// didn't read the same amount, it's uneven
-						return false;
-					} else if (read == -1) {
-						// both at EOF, check their contents
-						return Arrays.equals(bytes, remoteBytes);
-					}
+			if (remote instanceof GitRemoteFile) {
+				ObjectId remoteId = ((GitRemoteFile) remote).getObjectId();
+				if (!remoteId.equals(ObjectId.zeroId())) {
+					ObjectId localId = getLocalObjectId((IFile) local);
+					if (localId != null)
+						return localId.equals(remoteId);
 				}
-			} catch (IOException e) {
-				logException(e);
-				return false;
-			} catch (CoreException e) {
-				logException(e);
-				return false;
-			} finally {
-				closeStream(stream);
-				closeStream(remoteStream);
 			}
+			return compareContents(local, remote);
 		} else if (local instanceof IContainer) {
 			GitRemoteFolder gitVariant = (GitRemoteFolder) remote;
 			if (!remote.isContainer() || (local.exists() ^ gitVariant.exists()))
@@ -111,6 +132,120 @@ public boolean isThreeWay() {
 		return true;
 	}
 
+	@SuppressWarnings("resource")
+	private boolean compareContents(IResource local, IResourceVariant remote) {
+		InputStream stream = null;
+		InputStream remoteStream = null;
+		try {
+			remoteStream = remote.getStorage(new NullProgressMonitor())
+					.getContents();
+			stream = getLocal(local);
+			byte[] remoteBytes = new byte[8096];
+			byte[] bytes = new byte[8096];
+
+			int remoteRead = remoteStream.read(remoteBytes);
+			int read = stream.read(bytes);
+			if (remoteRead != read) {
+				return false;
+			}
+
+			while (Arrays.equals(bytes, remoteBytes)) {
+				remoteRead = remoteStream.read(remoteBytes);
+				read = stream.read(bytes);
+				if (remoteRead != read) {
+					// didn't read the same amount, it's uneven
+					return false;
+				} else if (read == -1) {
+					// both at EOF, check their contents
+					return Arrays.equals(bytes, remoteBytes);
+				}
+			}
+		} catch (IOException e) {
+			logException(e);
+			return false;
+		} catch (CoreException e) {
+			logException(e);
+			return false;
+		} finally {
+			closeStream(stream);
+			closeStream(remoteStream);
+		}
+		return false;
+	}
+
+	/**
+	 * Determines the blob id of the content of a local file. The id is taken
+	 * from the index if the length and modification time of the file match
+	 * the index entry and the entry is not racily clean. Otherwise the file is
+	 * hashed, using the stat cache of {@link FileObjectIdCache}.
+	 *
+	 * @param file
+	 * @return the blob id or null if the contents have to be compared
+	 */
+	private ObjectId getLocalObjectId(IFile file) {
+		try {
+			getSynchronizedFile(file);
+		} catch (CoreException e) {
+			logException(e);
+			return null;
+		}
+		IPath location = file.getLocation();
+		if (location == null)
+			return null;
+		File localFile = location.toFile();
+		RepositoryMapping mapping = RepositoryMapping.getMapping(file);
+		if (mapping != null) {
+			ObjectId id = getIndexObjectId(mapping.getRepository(),
+					mapping.getRepoRelativePath(location), localFile);
+			if (id != null)
+				return id;
+		}
+		try {
+			return Activator.getDefault().getFileObjectIdCache()
+					.getObjectId(localFile);
+		} catch (IOException e) {
+			// compare the contents instead
+			return null;
+		}
+	}
+
+	private ObjectId getIndexObjectId(Repository repository, String path,
+			File file) {
+		if (path == null || repository.isBare())
+			return null;
+		IndexSnapshot index;
+		synchronized (indexes) {
+			index = indexes.get(repository);
+			try {
+				if (index == null || index.dirCache.isOutdated()) {
+					index = new IndexSnapshot(repository);
+					indexes.put(repository, index);
+				}
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		if (!index.usable)
+			return null;
+
+		DirCacheEntry entry = index.dirCache.getEntry(path);
+		if (entry == null || entry.getStage() != DirCacheEntry.STAGE_0
+				|| entry.isAssumeValid() || entry.isSmudged())
+			return null;
+		FileMode mode = entry.getFileMode();
+		if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE)
+			return null;
+		long lastModified = entry.getLastModified();
+		// racily clean: the file may have changed within the time stamp
+		// resolution after the index was written
+		if (lastModified >= index.lastModified)
+			return null;
+		if (lastModified != file.lastModified()
+				|| entry.getLength() != (int) file.length())
+			return null;
+		return entry.getObjectId();
+	}
+
 	private InputStream getLocal(IResource resource) throws CoreException {
 		if (gsd.getData(resource.getProject().getName()).shouldIncludeLocal())
 			return getSynchronizedFile(resource).getContents();
@@ -108,6 +108,8 @@ private IResourceVariant fetchVariant(IResource resource) {
 		String path = getPath(resource, repo);
 
 		GitSyncObjectCache syncCache = gitCache.get(repo);
+		if (syncCache == null)
+			return null;
 		GitSyncObjectCache cachedData = syncCache.get(path);
 		if (cachedData == null)
 			return null;
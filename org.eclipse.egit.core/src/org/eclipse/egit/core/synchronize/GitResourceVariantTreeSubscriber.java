@@ -26,6 +26,7 @@
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.egit.core.CoreText;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.core.synchronize.dto.GitSynchronizeData;
@@ -61,6 +62,11 @@ public class GitResourceVariantTreeSubscriber extends
 
 	private GitSyncCache cache;
 
+	/**
+	 * Shared by all sync infos so that the indexes it reads are reused
+	 */
+	private GitResourceVariantComparator comparator;
+
 	/**
 	 * @param data
 	 */
@@ -74,6 +80,9 @@ public GitResourceVariantTreeSubscriber(GitSynchronizeDataSet data) {
 	 * created during synchronization
 	 *
 	 * @param monitor
+	 * @throws OperationCanceledException
+	 *             if the monitor is canceled, the subscriber has no data then
+	 *             until it is refreshed
 	 */
 	public void init(IProgressMonitor monitor) {
 		monitor.beginTask(
@@ -103,9 +112,10 @@ public IResource[] members(IResource res) throws TeamException {
 		if(res.getType() == IResource.FILE || !shouldBeIncluded(res))
 			return new IResource[0];
 
-		GitSynchronizeData gsd = gsds.getData(res.getProject());
-		Repository repo = gsd.getRepository();
-		GitSyncObjectCache repoCache = cache.get(repo);
+		GitSyncObjectCache repoCache = getRepositoryCache(res);
+		if (repoCache == null)
+			return new IResource[0];
+		Repository repo = gsds.getData(res.getProject()).getRepository();
 
 		Set<IResource> gitMembers = new HashSet<IResource>();
 		Map<String, IResource> allMembers = new HashMap<String, IResource>();
@@ -142,7 +152,8 @@ public void refresh(IResource[] resources, int depth,
 			if (resource.getType() == IResource.ROOT) {
 				// refresh entire cache
 				GitSyncCache newCache = GitSyncCache.getAllData(gsds, monitor);
-				cache.merge(newCache);
+				mergeCache(newCache);
+				clearComparator();
 				super.refresh(resources, depth, monitor);
 				return;
 			}
@@ -179,12 +190,36 @@ public void refresh(IResource[] resources, int depth,
 			// refresh cache
 			GitSyncCache newCache = GitSyncCache.getAllData(updateRequests,
 					monitor);
-			cache.merge(newCache);
+			mergeCache(newCache);
 		}
 
+		clearComparator();
 		super.refresh(resources, depth, monitor);
 	}
 
+	private synchronized void clearComparator() {
+		if (comparator != null)
+			comparator.clear();
+	}
+
+	private void mergeCache(GitSyncCache newCache) {
+		if (cache != null) {
+			cache.merge(newCache);
+			return;
+		}
+		// init was canceled, the trees hold no data
+		cache = newCache;
+		baseTree = null;
+		remoteTree = null;
+	}
+
+	private GitSyncObjectCache getRepositoryCache(IResource res) {
+		GitSynchronizeData gsd = gsds.getData(res.getProject());
+		if (cache == null || gsd == null)
+			return null;
+		return cache.get(gsd.getRepository());
+	}
+
 	@Override
 	public IResource[] roots() {
 		if (roots == null)
@@ -203,6 +238,9 @@ public void reset(GitSynchronizeDataSet data) {
 		roots = null;
 		baseTree = null;
 		remoteTree = null;
+		synchronized (this) {
+			comparator = null;
+		}
 	}
 
 	/**
@@ -213,6 +251,7 @@ public void dispose() {
 			baseTree.dispose();
 		if (remoteTree != null)
 			remoteTree.dispose();
+		clearComparator();
 		gsds.dispose();
 	}
 
@@ -222,8 +261,10 @@ public String getName() {
 	}
 
 	@Override
-	public IResourceVariantComparator getResourceComparator() {
-		return new GitResourceVariantComparator(gsds);
+	public synchronized IResourceVariantComparator getResourceComparator() {
+		if (comparator == null)
+			comparator = new GitResourceVariantComparator(gsds);
+		return comparator;
 	}
 
 	@Override
@@ -248,7 +289,7 @@ protected SyncInfo getSyncInfo(IResource local, IResourceVariant base,
 
 		Repository repo = gsds.getData(local.getProject()).getRepository();
 		SyncInfo info = new GitSyncInfo(local, base, remote,
-				getResourceComparator(), cache.get(repo), repo);
+				getResourceComparator(), getRepositoryCache(local), repo);
 
 		info.init();
 		return info;
@@ -16,8 +16,19 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.synchronize.dto.GitSynchronizeData;
@@ -42,6 +53,10 @@
  */
 class GitSyncCache {
 
+	private static final int MAX_PARALLEL_SCANS = 4;
+
+	private static final long POLL_INTERVAL = 100;
+
 	private final Map<File, GitSyncObjectCache> cache;
 
 	public static GitSyncCache getAllData(GitSynchronizeDataSet gsds,
@@ -52,22 +67,95 @@ public static GitSyncCache getAllData(GitSynchronizeDataSet gsds,
 		return getAllData(updateRequests, monitor);
 	}
 
+	/**
+	 * Scans the given repositories. The scans are independent of each other
+	 * and mostly I/O bound, therefore up to {@link #MAX_PARALLEL_SCANS}
+	 * repositories are scanned concurrently. The result of each scan is
+	 * merged as soon as it is available, so at most {@link #MAX_PARALLEL_SCANS}
+	 * unmerged results are held in memory.
+	 *
+	 * @param updateRequests
+	 * @param monitor
+	 * @return the merged cache of all repositories
+	 * @throws OperationCanceledException
+	 *             if the monitor is canceled
+	 * @throws RuntimeException
+	 *             thrown by the scan of a repository, the other scans are
+	 *             stopped then
+	 */
 	public static GitSyncCache getAllData(
 			Map<GitSynchronizeData, Collection<String>> updateRequests,
 			IProgressMonitor monitor) {
 		GitSyncCache cache = new GitSyncCache();
 		SubMonitor m = SubMonitor.convert(monitor, updateRequests.size());
 
-		for (Entry<GitSynchronizeData, Collection<String>> entry : updateRequests
-				.entrySet()) {
-			cache.merge(getAllData(entry.getKey(), entry.getValue()));
-			m.worked(1);
+		if (updateRequests.size() <= 1) {
+			for (Entry<GitSynchronizeData, Collection<String>> entry : updateRequests
+					.entrySet())
+				cache.merge(getAllData(entry.getKey(), entry.getValue()));
+			m.done();
+			return cache;
+		}
+
+		int threads = Math.min(updateRequests.size(), MAX_PARALLEL_SCANS);
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ScanThreadFactory());
+		CompletionService<GitSyncCache> scans = new ExecutorCompletionService<GitSyncCache>(
+				executor);
+		try {
+			for (final Entry<GitSynchronizeData, Collection<String>> entry : updateRequests
+					.entrySet())
+				scans.submit(new Callable<GitSyncCache>() {
+					public GitSyncCache call() throws Exception {
+						return getAllData(entry.getKey(), entry.getValue());
+					}
+				});
+
+			int pending = updateRequests.size();
+			while (pending > 0) {
+				if (m.isCanceled())
+					throw new OperationCanceledException();
+				Future<GitSyncCache> scan = scans.poll(POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (scan == null)
+					continue;
+				pending--;
+				try {
+					cache.merge(scan.get());
+				} catch (ExecutionException e) {
+					// same as for a scan on the calling thread
+					Throwable cause = e.getCause();
+					if (cause instanceof Error)
+						throw (Error) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new IllegalStateException(cause);
+				}
+				m.worked(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			executor.shutdownNow();
 		}
 
 		m.done();
 		return cache;
 	}
 
+	private static class ScanThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "EGit-GitSyncCache-" //$NON-NLS-1$
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	private static GitSyncCache getAllData(GitSynchronizeData gsd,
 			Collection<String> paths) {
 		GitSyncCache cache = new GitSyncCache();
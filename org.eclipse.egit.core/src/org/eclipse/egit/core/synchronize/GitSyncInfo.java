@@ -34,7 +34,7 @@ public GitSyncInfo(IResource local, IResourceVariant base,
 
 	@Override
 	protected int calculateKind() throws TeamException {
-		if (cache.membersCount() == 0)
+		if (cache == null || cache.membersCount() == 0)
 			return IN_SYNC;
 
 		String path;
@@ -52,7 +52,7 @@ else if (getBase() != null)
 			return IN_SYNC;
 
 		int direction;
-		Direction gitDirection = obj.getDiffEntry().getDirection();
+		Direction gitDirection = obj.getDirection();
 		if (gitDirection == Direction.INCOMING)
 			direction = INCOMING;
 		else if (gitDirection == Direction.OUTGOING)
@@ -60,7 +60,7 @@ else if (gitDirection == Direction.OUTGOING)
 		else
 			direction = CONFLICTING;
 
-		ChangeType changeType = obj.getDiffEntry().getChangeType();
+		ChangeType changeType = obj.getChangeType();
 
 		if (changeType == ChangeType.MODIFY)
 			return direction | CHANGE;
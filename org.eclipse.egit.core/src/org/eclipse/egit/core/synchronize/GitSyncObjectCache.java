@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (C) 2011, Dariusz Luksza <dariusz@luksza.org>
+ * Copyright (C) 2011, 2012 Dariusz Luksza <dariusz@luksza.org> and others.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -8,26 +8,60 @@
  *******************************************************************************/
 package org.eclipse.egit.core.synchronize;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.eclipse.egit.core.CoreText;
 import org.eclipse.egit.core.synchronize.ThreeWayDiffEntry.ChangeType;
+import org.eclipse.egit.core.synchronize.ThreeWayDiffEntry.Direction;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.osgi.util.NLS;
 
 /**
  * Thin cache object. It contains list of object members, object name and
  * {@link ThreeWayDiffEntry} data.
+ * <p>
+ * A synchronization can contain a huge number of entries, therefore the
+ * cache is kept compact: members are stored in an array sorted by name,
+ * member names are interned per tree, the path of an entry is derived from
+ * its parent and the object ids of all entries of a tree are stored in one
+ * shared byte array. The {@link ThreeWayDiffEntry} returned by
+ * {@link #getDiffEntry()} is created on demand from this data.
  */
 class GitSyncObjectCache {
 
+	private static final int NULL_ID = -1;
+
+	private static final int ZERO_ID = -2;
+
+	private static final int INITIAL_MEMBERS_SIZE = 4;
+
 	private final String name;
 
-	private final ThreeWayDiffEntry diffEntry;
+	private final Storage storage;
+
+	private GitSyncObjectCache parent;
+
+	private GitSyncObjectCache[] members;
+
+	private int membersCount;
+
+	private final int localId;
+
+	private final int baseId;
 
-	private Map<String, GitSyncObjectCache> members;
+	private final int remoteId;
+
+	private final Direction direction;
+
+	private final boolean isTree;
+
+	private ChangeType changeType;
 
 	/**
 	 * Creates node and leaf element
@@ -38,8 +72,20 @@ class GitSyncObjectCache {
 	 *            entry meta data
 	 */
 	GitSyncObjectCache(String name, ThreeWayDiffEntry diffEntry) {
-		this.name = name;
-		this.diffEntry = diffEntry;
+		this(name, diffEntry, new Storage(), null);
+	}
+
+	private GitSyncObjectCache(String name, ThreeWayDiffEntry diffEntry,
+			Storage storage, GitSyncObjectCache parent) {
+		this.storage = storage;
+		this.name = storage.intern(name);
+		this.parent = parent;
+		localId = storage.add(diffEntry.getLocalId());
+		baseId = storage.add(diffEntry.getBaseId());
+		remoteId = storage.add(diffEntry.getRemoteId());
+		direction = diffEntry.getDirection();
+		isTree = diffEntry.isTree();
+		changeType = diffEntry.getChangeType();
 	}
 
 	/**
@@ -50,11 +96,40 @@ public String getName() {
 	}
 
 	/**
+	 * @return repository relative path of this object
+	 */
+	public String getPath() {
+		if (parent == null || parent.parent == null)
+			return parent == null ? "" : name; //$NON-NLS-1$
+		return parent.getPath() + "/" + name; //$NON-NLS-1$
+	}
+
+	/**
+	 * The entry is not stored but created on each call, this includes
+	 * building the path from the parents and creating the object ids. Use
+	 * {@link #getChangeType()} and {@link #getDirection()} when only these
+	 * are needed.
 	 *
 	 * @return entry meta data
 	 */
 	public ThreeWayDiffEntry getDiffEntry() {
-		return diffEntry;
+		return new ThreeWayDiffEntry(getPath(), storage.get(localId),
+				storage.get(baseId), storage.get(remoteId), changeType,
+				direction, isTree);
+	}
+
+	/**
+	 * @return change type of the entry
+	 */
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	/**
+	 * @return direction of the entry
+	 */
+	public Direction getDirection() {
+		return direction;
 	}
 
 	/**
@@ -70,25 +145,19 @@ public ThreeWayDiffEntry getDiffEntry() {
 	public void addMember(ThreeWayDiffEntry entry) {
 		String memberPath = entry.getPath();
 
-		if (members == null)
-			members = new HashMap<String, GitSyncObjectCache>();
-
 		int start = -1;
-		Map<String, GitSyncObjectCache> parent = members;
+		GitSyncObjectCache parentObject = this;
 		int separatorIdx = memberPath.indexOf("/"); //$NON-NLS-1$
 		while (separatorIdx > 0) {
 			String key = memberPath.substring(start + 1, separatorIdx);
-			GitSyncObjectCache cacheObject = parent.get(key);
+			GitSyncObjectCache cacheObject = parentObject.getMember(key);
 			if (cacheObject == null)
 				throw new RuntimeException(NLS.bind(
 						CoreText.GitSyncObjectCache_noData, key));
 
 			start = separatorIdx;
 			separatorIdx = memberPath.indexOf("/", separatorIdx + 1); //$NON-NLS-1$
-			if (cacheObject.members == null)
-				cacheObject.members = new HashMap<String, GitSyncObjectCache>();
-
-			parent = cacheObject.members;
+			parentObject = cacheObject;
 		}
 
 		String newName;
@@ -97,8 +166,8 @@ public void addMember(ThreeWayDiffEntry entry) {
 		else
 			newName = memberPath;
 
-		GitSyncObjectCache obj = new GitSyncObjectCache(newName, entry);
-		parent.put(newName, obj);
+		parentObject.putMember(new GitSyncObjectCache(newName, entry,
+				storage, parentObject));
 	}
 
 	/**
@@ -117,23 +186,23 @@ public GitSyncObjectCache get(String childPath) {
 			return null;
 
 		int start = -1;
-		Map<String, GitSyncObjectCache> parent = members;
+		GitSyncObjectCache parentObject = this;
 		int separatorIdx = childPath.indexOf("/"); //$NON-NLS-1$
 		while (separatorIdx > 0) {
 			String key = childPath.substring(start + 1, separatorIdx);
 
-			GitSyncObjectCache childObject = parent.get(key);
+			GitSyncObjectCache childObject = parentObject.getMember(key);
 			if (childObject == null)
 				return null;
 
 			start = separatorIdx;
 			separatorIdx = childPath.indexOf("/", separatorIdx + 1); //$NON-NLS-1$
-			parent = childObject.members;
-			if (parent == null)
+			parentObject = childObject;
+			if (parentObject.members == null)
 				return null;
 		}
 
-		return parent.get(childPath.subSequence(
+		return parentObject.getMember(childPath.substring(
 				childPath.lastIndexOf("/") + 1, childPath.length())); //$NON-NLS-1$
 	}
 
@@ -141,7 +210,7 @@ public GitSyncObjectCache get(String childPath) {
 	 * @return number of cached members
 	 */
 	public int membersCount() {
-		return members != null ? members.size() : 0;
+		return membersCount;
 	}
 
 	/**
@@ -149,17 +218,20 @@ public int membersCount() {
 	 *         doesn't contain members
 	 */
 	public Collection<GitSyncObjectCache> members() {
-		return members != null ? members.values() : null;
+		if (members == null)
+			return null;
+		return Collections.unmodifiableList(Arrays.asList(members).subList(0,
+				membersCount));
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		builder.append("entry: ").append(diffEntry).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		builder.append("entry: ").append(getDiffEntry()).append("\n"); //$NON-NLS-1$ //$NON-NLS-2$
 		if (members != null) {
 			builder.append("members: "); //$NON-NLS-1$
-			for (GitSyncObjectCache obj : members.values())
-				builder.append(obj.toString()).append("\n"); //$NON-NLS-1$
+			for (int i = 0; i < membersCount; i++)
+				builder.append(members[i].toString()).append("\n"); //$NON-NLS-1$
 		}
 
 		return builder.toString();
@@ -168,26 +240,134 @@ public String toString() {
 	void merge(GitSyncObjectCache value) {
 		if (value.members != null) {
 			if (members == null)
-				members = new HashMap<String, GitSyncObjectCache>();
+				members = new GitSyncObjectCache[value.membersCount];
 			else
-				for (Entry<String, GitSyncObjectCache> entry : members
-						.entrySet())
-					if (!value.members.containsKey(entry.getKey()))
-						entry.getValue().diffEntry.changeType = ChangeType.IN_SYNC;
-
-			for (Entry<String, GitSyncObjectCache> entry : value.members
-					.entrySet()) {
-				String key = entry.getKey();
-				if (members.containsKey(key))
-					members.get(key).merge(entry.getValue());
-				else
-					members.put(key, entry.getValue());
+				for (int i = 0; i < membersCount; i++)
+					if (value.getMember(members[i].name) == null)
+						members[i].changeType = ChangeType.IN_SYNC;
+
+			for (int i = 0; i < value.membersCount; i++) {
+				GitSyncObjectCache newMember = value.members[i];
+				GitSyncObjectCache member = getMember(newMember.name);
+				if (member != null)
+					member.merge(newMember);
+				else {
+					newMember.parent = this;
+					putMember(newMember);
+				}
 			}
 		} else if (members != null)
-			for (GitSyncObjectCache obj : members.values())
-				obj.diffEntry.changeType = ChangeType.IN_SYNC;
+			for (int i = 0; i < membersCount; i++)
+				members[i].changeType = ChangeType.IN_SYNC;
 		else // we should be on leaf entry, just update the change type value
-			diffEntry.changeType = value.diffEntry.changeType;
+			changeType = value.changeType;
+	}
+
+	private GitSyncObjectCache getMember(String memberName) {
+		int idx = indexOf(memberName);
+		return idx >= 0 ? members[idx] : null;
+	}
+
+	private void putMember(GitSyncObjectCache member) {
+		if (members == null)
+			members = new GitSyncObjectCache[INITIAL_MEMBERS_SIZE];
+		int idx = indexOf(member.name);
+		if (idx >= 0) {
+			members[idx] = member;
+			return;
+		}
+		idx = -(idx + 1);
+		if (membersCount == members.length) {
+			GitSyncObjectCache[] newMembers = new GitSyncObjectCache[Math.max(
+					INITIAL_MEMBERS_SIZE, membersCount * 2)];
+			System.arraycopy(members, 0, newMembers, 0, membersCount);
+			members = newMembers;
+		}
+		System.arraycopy(members, idx, members, idx + 1, membersCount - idx);
+		members[idx] = member;
+		membersCount++;
+	}
+
+	/**
+	 * @return index of the member with the given name or
+	 *         {@code -(insertion point) - 1}
+	 */
+	private int indexOf(String memberName) {
+		if (members == null)
+			return -1;
+		// members are usually added in sorted order
+		if (membersCount > 0
+				&& members[membersCount - 1].name.compareTo(memberName) < 0)
+			return -(membersCount + 1);
+		int low = 0;
+		int high = membersCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = members[mid].name.compareTo(memberName);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Data shared by all objects of one tree: interned member names and the
+	 * raw object ids
+	 */
+	private static class Storage {
+
+		private static final AbbreviatedObjectId A_ZERO = AbbreviatedObjectId
+				.fromObjectId(ObjectId.zeroId());
+
+		/**
+		 * Names repeated in many folders (e.g. "src") are usually met early,
+		 * interning stops when this number of distinct names is reached so
+		 * that unique file names don't fill the map
+		 */
+		private static final int MAX_INTERNED_NAMES = 1024;
+
+		private final Map<String, String> names = new HashMap<String, String>();
+
+		private byte[] ids = new byte[64 * Constants.OBJECT_ID_LENGTH];
+
+		private int idsCount;
+
+		String intern(String value) {
+			String interned = names.get(value);
+			if (interned != null)
+				return interned;
+			if (names.size() < MAX_INTERNED_NAMES)
+				names.put(value, value);
+			return value;
+		}
+
+		int add(AbbreviatedObjectId id) {
+			if (id == null)
+				return NULL_ID;
+			if (A_ZERO.equals(id))
+				return ZERO_ID;
+			int offset = idsCount * Constants.OBJECT_ID_LENGTH;
+			if (offset == ids.length) {
+				byte[] newIds = new byte[ids.length * 2];
+				System.arraycopy(ids, 0, newIds, 0, ids.length);
+				ids = newIds;
+			}
+			id.toObjectId().copyRawTo(ids, offset);
+			return idsCount++;
+		}
+
+		AbbreviatedObjectId get(int index) {
+			if (index == NULL_ID)
+				return null;
+			if (index == ZERO_ID)
+				return A_ZERO;
+			return AbbreviatedObjectId.fromObjectId(ObjectId.fromRaw(ids,
+					index * Constants.OBJECT_ID_LENGTH));
+		}
 	}
 
 }
@@ -17,9 +17,14 @@
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
@@ -30,6 +35,8 @@
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
  * Builds list of changes in git staging area.
@@ -37,11 +44,46 @@
 public class StagedChangeCache {
 
 	/**
+	 * Builds the changes from the index diff maintained by the
+	 * {@link IndexDiffCache}. If the index diff of the repository is not
+	 * cached or not calculated yet, the whole index is compared with HEAD.
+	 *
 	 * @param repo
 	 *            repository which should be scanned
 	 * @return list of changes in git staging area
 	 */
 	public static Map<String, Change> build(Repository repo) {
+		IndexDiffCacheEntry entry = Activator.getDefault().getIndexDiffCache()
+				.findIndexDiffCacheEntry(repo);
+		IndexDiffData indexDiff = entry != null ? entry.getIndexDiff() : null;
+		if (indexDiff == null)
+			return build(repo, (TreeFilter) null);
+		return build(repo, indexDiff);
+	}
+
+	/**
+	 * Builds the changes of the paths which are staged according to the given
+	 * index diff. Only these paths of the index and HEAD are compared.
+	 *
+	 * @param repo
+	 *            repository which should be scanned
+	 * @param indexDiff
+	 *            current index diff of the repository
+	 * @return list of changes in git staging area
+	 */
+	public static Map<String, Change> build(Repository repo,
+			IndexDiffData indexDiff) {
+		Set<String> paths = new HashSet<String>();
+		paths.addAll(indexDiff.getAdded());
+		paths.addAll(indexDiff.getChanged());
+		paths.addAll(indexDiff.getRemoved());
+		paths.addAll(indexDiff.getConflicting());
+		if (paths.isEmpty())
+			return new HashMap<String, Change>(0);
+		return build(repo, PathFilterGroup.createFromStrings(paths));
+	}
+
+	private static Map<String, Change> build(Repository repo, TreeFilter filter) {
 		TreeWalk tw = new TreeWalk(repo);
 		try {
 			tw.addTree(new DirCacheIterator(repo.readDirCache()));
@@ -61,6 +103,8 @@ public static Map<String, Change> build(Repository repo) {
 				commitId =AbbreviatedObjectId.fromObjectId(zeroId());
 			}
 
+			if (filter != null)
+				tw.setFilter(filter);
 			tw.setRecursive(true);
 			headCommit = null;
 
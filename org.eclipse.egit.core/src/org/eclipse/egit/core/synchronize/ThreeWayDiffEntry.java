@@ -63,6 +63,18 @@ public static enum Direction {
 		// reduce the visibility of the default constructor
 	}
 
+	ThreeWayDiffEntry(String path, AbbreviatedObjectId localId,
+			AbbreviatedObjectId baseId, AbbreviatedObjectId remoteId,
+			ChangeType changeType, Direction direction, boolean isTree) {
+		this.path = path;
+		this.localId = localId;
+		this.baseId = baseId;
+		this.remoteId = remoteId;
+		this.changeType = changeType;
+		this.direction = direction;
+		this.isTree = isTree;
+	}
+
 	/**
 	 * Converts the TreeWalk into TreeWayDiffEntry headers.
 	 *
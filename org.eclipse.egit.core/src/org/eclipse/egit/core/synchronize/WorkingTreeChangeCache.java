@@ -11,19 +11,38 @@
 import static org.eclipse.egit.core.synchronize.GitCommitsModelCache.RIGHT;
 import static org.eclipse.egit.core.synchronize.GitCommitsModelCache.calculateAndSetChangeKind;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
 import org.eclipse.egit.core.synchronize.GitCommitsModelCache.Change;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig.AutoCRLF;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.MutableObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
 import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.util.io.EolCanonicalizingInputStream;
 
 /**
  * Builds list of working tree changes.
@@ -31,11 +50,132 @@
 public class WorkingTreeChangeCache {
 
 	/**
+	 * Builds the changes from the index diff maintained by the
+	 * {@link IndexDiffCache}. If the index diff of the repository is not
+	 * cached or not calculated yet, the whole working tree is compared with
+	 * the index.
+	 *
 	 * @param repo
 	 *            with should be scanned
 	 * @return list of changes in working tree
 	 */
 	public static Map<String, Change> build(Repository repo) {
+		IndexDiffCacheEntry entry = Activator.getDefault().getIndexDiffCache()
+				.findIndexDiffCacheEntry(repo);
+		IndexDiffData indexDiff = entry != null ? entry.getIndexDiff() : null;
+		if (indexDiff == null)
+			return walk(repo);
+		return build(repo, indexDiff);
+	}
+
+	/**
+	 * Builds the changes of the paths which are modified, missing, untracked
+	 * or conflicting according to the given index diff, without walking the
+	 * working tree. The index ids are taken from the DirCache, only the
+	 * changed files are hashed.
+	 *
+	 * @param repo
+	 *            with should be scanned
+	 * @param indexDiff
+	 *            current index diff of the repository
+	 * @return list of changes in working tree
+	 */
+	public static Map<String, Change> build(Repository repo,
+			IndexDiffData indexDiff) {
+		Set<String> paths = new HashSet<String>();
+		paths.addAll(indexDiff.getModified());
+		paths.addAll(indexDiff.getMissing());
+		paths.addAll(indexDiff.getUntracked());
+		paths.addAll(indexDiff.getConflicting());
+		Map<String, Change> result = new HashMap<String, Change>(
+				paths.size() * 4 / 3 + 1);
+		if (paths.isEmpty())
+			return result;
+
+		try {
+			DirCache dirCache = repo.readDirCache();
+			boolean canonicalize = repo.getConfig().get(WorkingTreeOptions.KEY)
+					.getAutoCRLF() != AutoCRLF.FALSE;
+			for (String path : paths) {
+				DirCacheEntry entry = dirCache.getEntry(path);
+				ObjectId id = getWorkingTreeId(repo, path, entry, canonicalize);
+				if (id == null)
+					continue;
+
+				Change change = new Change();
+				change.name = path.substring(path.lastIndexOf('/') + 1);
+				change.objectId = AbbreviatedObjectId.fromObjectId(id);
+				change.remoteObjectId = AbbreviatedObjectId
+						.fromObjectId(entry != null ? entry.getObjectId()
+								: ObjectId.zeroId());
+				if (change.objectId.equals(change.remoteObjectId))
+					// changed back since the index diff was calculated
+					continue;
+				calculateAndSetChangeKind(RIGHT, change);
+
+				result.put(path, change);
+			}
+			return result;
+		} catch (IOException e) {
+			Activator.error(e.getMessage(), e);
+			return new HashMap<String, GitCommitsModelCache.Change>(0);
+		}
+	}
+
+	/**
+	 * @return the id the file would get when added to the index, the zero id
+	 *         if it is missing or null if it is a folder not tracked as
+	 *         submodule
+	 */
+	private static ObjectId getWorkingTreeId(Repository repo, String path,
+			DirCacheEntry entry, boolean canonicalize) throws IOException {
+		if (entry != null && entry.getFileMode() == FileMode.GITLINK) {
+			Repository submodule = SubmoduleWalk.getSubmoduleRepository(repo,
+					path);
+			if (submodule == null)
+				return ObjectId.zeroId();
+			try {
+				ObjectId head = submodule.resolve(Constants.HEAD);
+				return head != null ? head : ObjectId.zeroId();
+			} finally {
+				submodule.close();
+			}
+		}
+
+		File file = new File(repo.getWorkTree(), path);
+		if (file.isDirectory())
+			return null;
+		if (!file.isFile())
+			return ObjectId.zeroId();
+		if (!canonicalize) {
+			ObjectId id = Activator.getDefault().getFileObjectIdCache()
+					.getObjectId(file);
+			if (id != null)
+				return id;
+		}
+		return hash(file, canonicalize);
+	}
+
+	private static ObjectId hash(File file, boolean canonicalize)
+			throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			if (canonicalize)
+				in = new EolCanonicalizingInputStream(in, true);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					(int) file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB,
+					out.toByteArray());
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Map<String, Change> walk(Repository repo) {
 		TreeWalk tw = new TreeWalk(repo);
 		try {
 			int fileNth = tw.addTree(new FileTreeIterator(repo));
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.blame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlameCacheTest extends LocalDiskRepositoryTestCase {
+
+	private static final String FILE = "file.txt";
+
+	// magic, version, path and the ids of the commit and the blob
+	private static final int COMMIT_COUNT_OFFSET = 4 + 4 + 2 + FILE.length()
+			+ 2 * 20;
+
+	private Repository repository;
+
+	private Git git;
+
+	private File spillDirectory;
+
+	private BlameCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = createWorkRepository();
+		git = new Git(repository);
+		spillDirectory = createTempDirectory("blame");
+		cache = new BlameCache(spillDirectory);
+	}
+
+	@Test
+	public void shouldReturnCachedResult() throws Exception {
+		RevCommit commit = commit(FILE, "a\nb\nc\n");
+
+		BlameCache.Entry entry = get(commit);
+
+		assertSame(entry, get(commit));
+		assertEquals(3, entry.getLineCount());
+		assertEquals(commit, entry.getSourceCommit(1));
+	}
+
+	@Test
+	public void shouldNotRetainParsedCommits() throws Exception {
+		RevCommit commit = commit(FILE, "a\nb\nc\n");
+
+		BlameCache.Entry entry = get(commit);
+
+		assertEquals(commit, entry.getSourceCommit(0));
+		assertFalse(entry.getSourceCommit(0) instanceof RevCommit);
+	}
+
+	@Test
+	public void shouldReadSpilledResult() throws Exception {
+		RevCommit commit = commit(FILE, "a\nb\nc\n");
+		get(commit);
+
+		cache.clear();
+
+		assertBlame(commit, get(commit));
+	}
+
+	@Test
+	public void shouldDeleteInvalidSpillFile() throws Exception {
+		RevCommit commit = commit(FILE, "a\nb\nc\n");
+		get(commit);
+		File[] files = spillDirectory.listFiles();
+		assertEquals(1, files.length);
+		// negative number of commits
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		try {
+			raf.seek(COMMIT_COUNT_OFFSET);
+			raf.writeInt(-1);
+		} finally {
+			raf.close();
+		}
+
+		cache.clear();
+
+		assertBlame(commit, get(commit));
+		// the invalid file was replaced
+		raf = new RandomAccessFile(files[0], "r");
+		try {
+			raf.seek(COMMIT_COUNT_OFFSET);
+			assertEquals(1, raf.readInt());
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void shouldUpdateResultIncrementally() throws Exception {
+		commit(FILE, "a\nb\nc\nd\ne\n");
+		commit(FILE, "a\nB\nc\nd\ne\n");
+		RevCommit base = commit(FILE, "a\nB\nc\nd\ne\nf\n");
+		get(base);
+
+		commit("other.txt", "x\n");
+		commit(FILE, "a\nB\nc\ne\nf\ng\n");
+		RevCommit commit = commit(FILE, "0\na\nB\nC\ne\nf\ng\n");
+
+		assertBlame(commit, get(commit));
+	}
+
+	@Test
+	public void shouldReuseResultIfFileDidNotChange() throws Exception {
+		RevCommit base = commit(FILE, "a\nb\nc\n");
+		BlameCache.Entry baseEntry = get(base);
+		RevCommit commit = commit("other.txt", "x\n");
+
+		BlameCache.Entry entry = get(commit);
+
+		assertSame(baseEntry.getSourceCommit(0), entry.getSourceCommit(0));
+		assertBlame(commit, entry);
+	}
+
+	@Test
+	public void shouldNotCommitChangedLinesOfWorkingTree() throws Exception {
+		RevCommit commit = commit(FILE, "a\nb\nc\n");
+		write(new File(repository.getWorkTree(), FILE), "a\nB\nc\nd\n");
+
+		BlameCache.Entry entry = cache.getWorkingTreeBlame(repository, FILE,
+				get(commit), false);
+
+		assertEquals(4, entry.getLineCount());
+		assertEquals(commit, entry.getSourceCommit(0));
+		assertNull(entry.getSourceCommit(1));
+		assertEquals(commit, entry.getSourceCommit(2));
+		assertNull(entry.getSourceCommit(3));
+	}
+
+	private BlameCache.Entry get(RevCommit commit) throws Exception {
+		return cache.get(repository, FILE, commit, false,
+				new NullProgressMonitor(), null);
+	}
+
+	private void assertBlame(RevCommit commit, BlameCache.Entry entry)
+			throws Exception {
+		BlameResult expected = git.blame().setFilePath(FILE)
+				.setStartCommit(commit).setFollowFileRenames(true).call();
+		assertEquals(expected.getResultContents().size(), entry.getLineCount());
+		for (int i = 0; i < entry.getLineCount(); i++)
+			assertEquals("line " + i, expected.getSourceCommit(i),
+					entry.getSourceCommit(i));
+	}
+
+	private RevCommit commit(String path, String content) throws Exception {
+		write(new File(repository.getWorkTree(), path), content);
+		git.add().addFilepattern(path).call();
+		return git.commit().setMessage(path).call();
+	}
+}
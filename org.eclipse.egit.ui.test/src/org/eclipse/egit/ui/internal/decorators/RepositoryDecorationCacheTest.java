@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.decorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.ui.internal.decorators.RepositoryDecorationCache.Data;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryDecorationCacheTest extends LocalDiskRepositoryTestCase {
+
+	private Repository repository;
+
+	private TestCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = createWorkRepository();
+		cache = new TestCache();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		cache.dispose();
+		super.tearDown();
+	}
+
+	@Test
+	public void shouldCalculateDataInBackground() throws Exception {
+		assertNull(cache.get(repository));
+		waitForUpdate();
+
+		Data data = cache.get(repository);
+		assertNotNull(data);
+		assertEquals("master", data.branch);
+		assertEquals(1, cache.calculations);
+		assertEquals(1, cache.changes);
+	}
+
+	@Test
+	public void shouldRecalculateDataWhenRefsChanged() throws Exception {
+		cache.get(repository);
+		waitForUpdate();
+
+		repository.fireEvent(new RefsChangedEvent());
+		waitForUpdate();
+
+		assertEquals(2, cache.calculations);
+		// the data is the same, the decorations need no refresh
+		assertEquals(1, cache.changes);
+	}
+
+	@Test
+	public void shouldNotRepeatFailedCalculation() throws Exception {
+		cache.fail = true;
+		assertNull(cache.get(repository));
+		waitForUpdate();
+
+		assertNull(cache.get(repository));
+		assertNull(cache.get(repository));
+		waitForUpdate();
+
+		assertEquals(1, cache.calculations);
+	}
+
+	@Test
+	public void shouldRecalculateFailedDataWhenRefsChanged() throws Exception {
+		cache.fail = true;
+		cache.get(repository);
+		waitForUpdate();
+
+		cache.fail = false;
+		repository.fireEvent(new RefsChangedEvent());
+		waitForUpdate();
+
+		assertNotNull(cache.get(repository));
+		assertEquals(2, cache.calculations);
+	}
+
+	private void waitForUpdate() throws InterruptedException {
+		Job.getJobManager().join(cache, null);
+	}
+
+	private static class TestCache extends RepositoryDecorationCache {
+
+		volatile boolean fail;
+
+		volatile int calculations;
+
+		volatile int changes;
+
+		TestCache() {
+			super(null);
+		}
+
+		@Override
+		Data createData(Repository repository) throws IOException {
+			calculations++;
+			if (fail)
+				throw new IOException("calculation failed");
+			return new Data("repository", repository.getBranch(), null);
+		}
+
+		@Override
+		void dataChanged() {
+			changes++;
+		}
+	}
+}
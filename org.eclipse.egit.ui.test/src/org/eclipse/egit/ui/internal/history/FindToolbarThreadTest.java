@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.egit.ui.internal.history.FindToolbarThread.RawMatcher;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.junit.Test;
+
+public class FindToolbarThreadTest {
+
+	private static final String TREE = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n";
+
+	@Test
+	public void shouldFoldCaseOfBuffer() {
+		byte[] buffer = Constants.encode("Fix THE Bug");
+		assertEquals(4, matcher("the", true).indexOf(buffer, 0, buffer.length));
+		assertEquals(-1,
+				matcher("the", false).indexOf(buffer, 0, buffer.length));
+		assertEquals(4,
+				matcher("THE", false).indexOf(buffer, 0, buffer.length));
+	}
+
+	@Test
+	public void shouldOnlySearchGivenRange() {
+		byte[] buffer = Constants.encode("abcabc");
+		assertEquals(3, matcher("abc", false).indexOf(buffer, 1, 6));
+		assertEquals(-1, matcher("abc", false).indexOf(buffer, 1, 5));
+		assertEquals(-1, matcher("abc", false).indexOf(buffer, 4, 4));
+	}
+
+	@Test
+	public void shouldMatchNameAndEmail() {
+		byte[] buffer = commit("Jane Doe <Jane@Example.org> 1 +0000",
+				"John Roe <john@example.org> 1 +0000", "Message");
+		int author = RawParseUtils.author(buffer, 0);
+		int committer = RawParseUtils.committer(buffer, 0);
+
+		assertTrue(matcher("jane", true).matchesIdent(buffer, author));
+		assertTrue(matcher("@example", true).matchesIdent(buffer, author));
+		assertFalse(matcher("jane", true).matchesIdent(buffer, committer));
+		assertFalse(matcher("jane", false).matchesIdent(buffer, author));
+		// neither the time nor the message are part of the identity
+		assertFalse(matcher("0000", true).matchesIdent(buffer, author));
+		assertFalse(matcher("message", true).matchesIdent(buffer, author));
+	}
+
+	@Test
+	public void shouldMatchIdentWithEmptyName() {
+		byte[] buffer = commit("<jane@example.org> 1 +0000",
+				"<jane@example.org> 1 +0000", "Message");
+		int author = RawParseUtils.author(buffer, 0);
+
+		assertTrue(matcher("jane", true).matchesIdent(buffer, author));
+		assertFalse(matcher("<", true).matchesIdent(buffer, author));
+	}
+
+	@Test
+	public void shouldMatchIdentWithEmptyEmail() {
+		byte[] buffer = commit("Jane Doe <> 1 +0000", "Jane Doe <> 1 +0000",
+				"Message");
+		int author = RawParseUtils.author(buffer, 0);
+
+		assertTrue(matcher("doe", true).matchesIdent(buffer, author));
+		assertFalse(matcher(">", true).matchesIdent(buffer, author));
+		assertFalse(matcher("1", true).matchesIdent(buffer, author));
+	}
+
+	@Test
+	public void shouldNotMatchMissingIdent() {
+		byte[] buffer = commit("Jane Doe <jane@example.org> 1 +0000",
+				"Jane Doe <jane@example.org> 1 +0000", "Message");
+		assertFalse(matcher("jane", true).matchesIdent(buffer, -1));
+	}
+
+	@Test
+	public void shouldMatchMessageOnly() {
+		byte[] buffer = commit("Jane Doe <jane@example.org> 1 +0000",
+				"Jane Doe <jane@example.org> 1 +0000", "Fix Parser\n\nDetails");
+
+		assertTrue(matcher("parser", true).matchesMessage(buffer));
+		assertTrue(matcher("details", true).matchesMessage(buffer));
+		assertFalse(matcher("parser", false).matchesMessage(buffer));
+		assertFalse(matcher("jane", true).matchesMessage(buffer));
+	}
+
+	@Test
+	public void shouldMatchId() {
+		ObjectId id = ObjectId
+				.fromString("0123456789abcdef0123456789abcdef01234567");
+		assertTrue(matcher("89abcdef", true).matchesId(id));
+		assertFalse(matcher("fedcba", true).matchesId(id));
+	}
+
+	private static RawMatcher matcher(String pattern, boolean ignoreCase) {
+		return new RawMatcher(Constants.encodeASCII(pattern), ignoreCase);
+	}
+
+	private static byte[] commit(String author, String committer,
+			String message) {
+		return Constants.encode(TREE + "author " + author + "\ncommitter "
+				+ committer + "\n\n" + message);
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.egit.ui.internal.search.CommitIndex.Entry;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitIndexTest extends LocalDiskRepositoryTestCase {
+
+	private Repository repository;
+
+	private Git git;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = createWorkRepository();
+		git = new Git(repository);
+		directory = createTempDirectory("commitIndex");
+	}
+
+	@Test
+	public void shouldIndexCommitsOfHead() throws Exception {
+		RevCommit first = commit("first");
+		RevCommit second = commit("second");
+
+		List<Entry> entries = search(false);
+
+		assertEquals(Arrays.asList(second, first), getIds(entries));
+		assertEquals("second", entries.get(0).message);
+		assertEquals(first, entries.get(0).parents[0]);
+	}
+
+	@Test
+	public void shouldAppendNewCommits() throws Exception {
+		RevCommit first = commit("first");
+		RevCommit second = commit("second");
+		search(false);
+
+		RevCommit third = commit("third");
+		RevCommit fourth = commit("fourth");
+
+		// a rebuilt index would start with the newest commit
+		assertEquals(Arrays.asList(second, first, fourth, third),
+				getIds(search(false)));
+	}
+
+	@Test
+	public void shouldRebuildWhenTipIsRewritten() throws Exception {
+		RevCommit first = commit("first");
+		commit("second");
+		search(false);
+
+		git.reset().setMode(ResetType.HARD).setRef(first.name()).call();
+		RevCommit amended = commit("amended");
+
+		assertEquals(Arrays.asList(amended, first), getIds(search(false)));
+	}
+
+	@Test
+	public void shouldIndexAllBranches() throws Exception {
+		RevCommit first = commit("first");
+		git.branchCreate().setName("side").call();
+		RevCommit second = commit("second");
+		git.checkout().setName("side").call();
+		RevCommit side = commit("side");
+		search(true);
+		git.checkout().setName("master").call();
+		RevCommit third = commit("third");
+
+		List<ObjectId> all = getIds(search(true));
+		List<ObjectId> head = getIds(search(false));
+
+		assertEquals(4, all.size());
+		assertTrue(all.containsAll(Arrays.asList(first, second, side)));
+		// appended
+		assertEquals(third, all.get(3));
+		assertEquals(Arrays.asList(third, second, first), head);
+	}
+
+	private RevCommit commit(String message) throws Exception {
+		return git.commit().setMessage(message).call();
+	}
+
+	private List<Entry> search(boolean allBranches) throws Exception {
+		final List<Entry> entries = new ArrayList<Entry>();
+		CommitIndex.search(repository, allBranches, directory,
+				new CommitIndex.Visitor() {
+					public void visit(Entry entry) {
+						entries.add(entry);
+					}
+				}, new NullProgressMonitor());
+		return entries;
+	}
+
+	private static List<ObjectId> getIds(List<Entry> entries) {
+		List<ObjectId> ids = new ArrayList<ObjectId>();
+		for (Entry entry : entries)
+			ids.add(entry.id);
+		return ids;
+	}
+}
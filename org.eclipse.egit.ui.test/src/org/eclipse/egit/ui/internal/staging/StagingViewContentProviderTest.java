@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.staging;
+
+import static org.eclipse.egit.ui.internal.staging.StagingEntry.State.MODIFIED;
+import static org.eclipse.egit.ui.internal.staging.StagingEntry.State.UNTRACKED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.egit.ui.internal.staging.StagingEntry.State;
+import org.eclipse.egit.ui.internal.staging.StagingViewContentProvider.Delta;
+import org.junit.Test;
+
+public class StagingViewContentProviderTest {
+
+	private final StagingEntry[] content = entries("b", "d", "f");
+
+	@Test
+	public void shouldInsertIntoEmptyContent() {
+		Delta delta = merge(new StagingEntry[0], change("b", MODIFIED),
+				change("a", UNTRACKED));
+
+		assertPaths(delta, "a", "b");
+		assertEquals(Arrays.asList(Integer.valueOf(0), Integer.valueOf(1)),
+				delta.added);
+		assertTrue(delta.replaced.isEmpty());
+		assertTrue(delta.removed.isEmpty());
+	}
+
+	@Test
+	public void shouldIgnoreRemovalFromEmptyContent() {
+		Delta delta = merge(new StagingEntry[0], change("a", null));
+
+		assertPaths(delta);
+		assertTrue(delta.added.isEmpty());
+		assertTrue(delta.removed.isEmpty());
+	}
+
+	@Test
+	public void shouldInsertAtStartMiddleAndEnd() {
+		Delta delta = merge(content, change("g", MODIFIED),
+				change("a", MODIFIED), change("c", MODIFIED));
+
+		assertPaths(delta, "a", "b", "c", "d", "f", "g");
+		assertEquals(Arrays.asList(Integer.valueOf(0), Integer.valueOf(2),
+				Integer.valueOf(5)), delta.added);
+		assertTrue(delta.replaced.isEmpty());
+		assertTrue(delta.removed.isEmpty());
+		assertSame(content[0], delta.content[1]);
+		assertSame(content[2], delta.content[4]);
+	}
+
+	@Test
+	public void shouldRemoveAtStartMiddleAndEnd() {
+		StagingEntry[] entries = entries("a", "b", "c", "d", "e");
+		Delta delta = merge(entries, change("e", null), change("a", null),
+				change("c", null));
+
+		assertPaths(delta, "b", "d");
+		assertEquals(Arrays.asList(entries[0], entries[2], entries[4]),
+				delta.removed);
+		assertTrue(delta.added.isEmpty());
+		assertTrue(delta.replaced.isEmpty());
+	}
+
+	@Test
+	public void shouldRemoveAllEntries() {
+		Delta delta = merge(content, change("b", null), change("d", null),
+				change("f", null));
+
+		assertPaths(delta);
+		assertEquals(Arrays.asList(content), delta.removed);
+	}
+
+	@Test
+	public void shouldReplaceEntriesWithChangedState() {
+		Delta delta = merge(content, change("f", UNTRACKED),
+				change("b", UNTRACKED), change("d", UNTRACKED));
+
+		assertPaths(delta, "b", "d", "f");
+		assertEquals(Arrays.asList(Integer.valueOf(0), Integer.valueOf(1),
+				Integer.valueOf(2)), delta.replaced);
+		for (StagingEntry entry : delta.content)
+			assertEquals(UNTRACKED, entry.getState());
+		assertTrue(delta.added.isEmpty());
+		assertTrue(delta.removed.isEmpty());
+	}
+
+	@Test
+	public void shouldKeepEntriesWithSameState() {
+		Delta delta = merge(content, change("d", MODIFIED));
+
+		assertPaths(delta, "b", "d", "f");
+		assertSame(content[1], delta.content[1]);
+		assertTrue(delta.added.isEmpty());
+		assertTrue(delta.replaced.isEmpty());
+		assertTrue(delta.removed.isEmpty());
+	}
+
+	@Test
+	public void shouldReportFinalPositionsOfMixedChanges() {
+		// remove b, insert c, replace d, ignore e, insert g
+		Delta delta = merge(content, change("b", null), change("c", MODIFIED),
+				change("d", UNTRACKED), change("e", null),
+				change("g", MODIFIED));
+
+		assertPaths(delta, "c", "d", "f", "g");
+		assertEquals(Arrays.asList(content[0]), delta.removed);
+		assertEquals(Arrays.asList(Integer.valueOf(0), Integer.valueOf(3)),
+				delta.added);
+		assertEquals(Arrays.asList(Integer.valueOf(1)), delta.replaced);
+		assertSame(content[2], delta.content[2]);
+	}
+
+	private static Delta merge(StagingEntry[] content, Object[]... changes) {
+		List<Object[]> sorted = new ArrayList<Object[]>(Arrays.asList(changes));
+		// the changed paths are sorted by the content provider
+		Collections.sort(sorted, new Comparator<Object[]>() {
+			public int compare(Object[] o1, Object[] o2) {
+				return ((String) o1[0]).compareTo((String) o2[0]);
+			}
+		});
+		String[] paths = new String[sorted.size()];
+		StagingEntry[] entries = new StagingEntry[sorted.size()];
+		for (int i = 0; i < paths.length; i++) {
+			paths[i] = (String) sorted.get(i)[0];
+			State state = (State) sorted.get(i)[1];
+			if (state != null)
+				entries[i] = new StagingEntry(null, state, paths[i]);
+		}
+		return new Delta(content, paths, entries);
+	}
+
+	private static Object[] change(String path, State state) {
+		return new Object[] { path, state };
+	}
+
+	private static StagingEntry[] entries(String... paths) {
+		StagingEntry[] entries = new StagingEntry[paths.length];
+		for (int i = 0; i < paths.length; i++)
+			entries[i] = new StagingEntry(null, MODIFIED, paths[i]);
+		return entries;
+	}
+
+	private static void assertPaths(Delta delta, String... expected) {
+		List<String> paths = new ArrayList<String>();
+		for (StagingEntry entry : delta.content)
+			paths.add(entry.getPath());
+		assertEquals(Arrays.asList(expected), paths);
+	}
+}
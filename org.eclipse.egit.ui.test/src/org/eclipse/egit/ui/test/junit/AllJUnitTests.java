@@ -8,12 +8,20 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.test.junit;
 
+import org.eclipse.egit.ui.internal.blame.BlameCacheTest;
+import org.eclipse.egit.ui.internal.decorators.RepositoryDecorationCacheTest;
+import org.eclipse.egit.ui.internal.history.FindToolbarThreadTest;
+import org.eclipse.egit.ui.internal.search.CommitIndexTest;
+import org.eclipse.egit.ui.internal.staging.StagingViewContentProviderTest;
 import org.eclipse.egit.ui.internal.synchronize.mapping.GitChangeSetSorterTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
-@RunWith(Suite.class) @SuiteClasses({ GitChangeSetSorterTest.class })
+@RunWith(Suite.class) @SuiteClasses({ GitChangeSetSorterTest.class,
+		CommitIndexTest.class, FindToolbarThreadTest.class,
+		StagingViewContentProviderTest.class, BlameCacheTest.class,
+		RepositoryDecorationCacheTest.class })
 public class AllJUnitTests {
 	// Empty class
 }
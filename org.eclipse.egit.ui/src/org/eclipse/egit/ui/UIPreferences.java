@@ -174,6 +174,8 @@ public class UIPreferences {
 	/** */
 	public static final String STAGING_VIEW_FILENAME_MODE = "StagingView_FileNameMode"; //$NON-NLS-1$
 	/** */
+	public static final String STAGING_VIEW_VIRTUAL_TABLE_THRESHOLD = "StagingView_VirtualTableThreshold"; //$NON-NLS-1$
+	/** */
 	public static final String PAGE_COMMIT_PREFERENCES = "org.eclipse.egit.ui.internal.preferences.CommitDialogPreferencePage"; //$NON-NLS-1$
 	/** */
 	public static final String BLAME_IGNORE_WHITESPACE = "Blame_IgnoreWhitespace"; //$NON-NLS-1$
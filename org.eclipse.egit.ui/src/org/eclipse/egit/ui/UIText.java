@@ -1047,6 +1047,9 @@ public class UIText extends NLS {
 	/** */
 	public static String RepositoryCommit_UserAndDate;
 
+	/** */
+	public static String RepositoryDecorationCache_updateJobName;
+
 	/** */
 	public static String RepositoryLocationPage_info;
 
@@ -63,24 +63,44 @@ public class GitLabelProvider extends LabelProvider implements
 	 * @return the branch tracking status as a string
 	 */
 	public static String formatBranchTrackingStatus(BranchTrackingStatus status) {
+		return formatBranchTrackingStatus(status.getAheadCount(),
+				status.getBehindCount(), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Format the branch tracking status suitable for displaying in decorations and labels.
+	 *
+	 * @param aheadCount
+	 * @param behindCount
+	 * @param maxCount
+	 *            counts above this value are displayed as "maxCount+"
+	 * @return the branch tracking status as a string
+	 */
+	public static String formatBranchTrackingStatus(int aheadCount,
+			int behindCount, int maxCount) {
 		StringBuilder sb = new StringBuilder();
-		int ahead = status.getAheadCount();
-		int behind = status.getBehindCount();
-		if (ahead != 0) {
+		if (aheadCount != 0) {
 			// UPWARDS ARROW
 			sb.append('\u2191');
-			sb.append(ahead);
+			appendCount(sb, aheadCount, maxCount);
 		}
-		if (behind != 0) {
+		if (behindCount != 0) {
 			if (sb.length() != 0)
 				sb.append(' ');
 			// DOWNWARDS ARROW
 			sb.append('\u2193');
-			sb.append(status.getBehindCount());
+			appendCount(sb, behindCount, maxCount);
 		}
 		return sb.toString();
 	}
 
+	private static void appendCount(StringBuilder sb, int count, int maxCount) {
+		if (count > maxCount)
+			sb.append(maxCount).append('+');
+		else
+			sb.append(count);
+	}
+
 	@Override
 	public String getText(Object element) {
 		if (element instanceof Repository)
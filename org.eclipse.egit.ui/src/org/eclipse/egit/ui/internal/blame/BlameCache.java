@@ -0,0 +1,636 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.blame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.egit.ui.Activator;
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Cache of blame results.
+ * <p>
+ * The blame of a file is cached for the repository, the path, the start
+ * commit and the whitespace mode. The cache is bounded by the total number of
+ * cached lines, the least recently used results are evicted first. The latest
+ * result of each file is also written to a spill directory, so it survives a
+ * restart.
+ * <p>
+ * If a file is blamed at a commit which is not cached, but a result of an
+ * ancestor commit is, the cached result is updated incrementally: only the
+ * lines which differ between the two versions of the file are blamed again,
+ * all other lines keep the source commit of the cached result.
+ * <p>
+ * The source commits are cached by their ids only, the commits parsed while
+ * blaming a file reference their bodies and parents and would otherwise stay
+ * in memory with the cached results.
+ * <p>
+ * While a file is blamed, intermediate results are passed to a
+ * {@link Listener} in regular intervals. The lines are blamed in the order of
+ * the commits which introduced them, the most recent commits first.
+ */
+class BlameCache {
+
+	private static final int MAGIC = 0x4547424C; // "EGBL"
+
+	private static final int VERSION = 1;
+
+	private static final int MAX_LINES = 500000;
+
+	private static final int MAX_SPILL_FILES = 1000;
+
+	private static final int ID_LENGTH = Constants.OBJECT_ID_LENGTH;
+
+	/**
+	 * Interval (in milliseconds) in which intermediate results are passed to
+	 * the listener
+	 */
+	private static final long PUBLISH_INTERVAL = 500L;
+
+	private static final String SPILL_FOLDER = "blame"; //$NON-NLS-1$
+
+	private static BlameCache instance;
+
+	private final File spillDirectory;
+
+	private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<Key, Entry>(
+			16, 0.75f, true);
+
+	private int cachedLines;
+
+	private boolean spillDirectoryTrimmed;
+
+	/**
+	 * The blame of a file at a commit: the commit which introduced each line
+	 */
+	static class Entry {
+
+		private final ObjectId commitId;
+
+		private final ObjectId blobId;
+
+		// ids of the distinct source commits
+		private final ObjectId[] commits;
+
+		// index of the source commit of each line, -1 if not committed
+		private final int[] lines;
+
+		private Entry(ObjectId commitId, ObjectId blobId, ObjectId[] commits,
+				int[] lines) {
+			this.commitId = commitId;
+			this.blobId = blobId;
+			this.commits = commits;
+			this.lines = lines;
+		}
+
+		/**
+		 * @return number of lines of the file
+		 */
+		int getLineCount() {
+			return lines.length;
+		}
+
+		/**
+		 * @param line
+		 * @return the id of the commit which introduced the line or null if
+		 *         the line is not committed
+		 */
+		ObjectId getSourceCommit(int line) {
+			int index = lines[line];
+			return index < 0 ? null : commits[index];
+		}
+	}
+
+	/**
+	 * Receives intermediate results while a file is blamed
+	 */
+	interface Listener {
+
+		/**
+		 * @param entry
+		 *            the blame so far, lines which are not blamed yet are not
+		 *            committed
+		 */
+		void blamed(Entry entry);
+	}
+
+	private static class EntryBuilder {
+
+		private final List<ObjectId> commits = new ArrayList<ObjectId>();
+
+		private final Map<AnyObjectId, Integer> indexes = new HashMap<AnyObjectId, Integer>();
+
+		private final int[] lines;
+
+		EntryBuilder(int lineCount) {
+			lines = new int[lineCount];
+			Arrays.fill(lines, -1);
+		}
+
+		void set(int line, AnyObjectId commit) {
+			if (commit == null)
+				return;
+			Integer index = indexes.get(commit);
+			if (index == null) {
+				ObjectId id = commit.copy();
+				index = Integer.valueOf(commits.size());
+				commits.add(id);
+				indexes.put(id, index);
+			}
+			lines[line] = index.intValue();
+		}
+
+		Entry build(ObjectId commitId, ObjectId blobId) {
+			return new Entry(commitId, blobId,
+					commits.toArray(new ObjectId[commits.size()]),
+					lines.clone());
+		}
+	}
+
+	private static class Key {
+
+		private final String directory;
+
+		private final String path;
+
+		private final ObjectId commitId;
+
+		private final boolean ignoreWhitespace;
+
+		Key(Repository repository, String path, AnyObjectId commitId,
+				boolean ignoreWhitespace) {
+			this.directory = repository.getDirectory().getAbsolutePath();
+			this.path = path;
+			this.commitId = commitId.copy();
+			this.ignoreWhitespace = ignoreWhitespace;
+		}
+
+		boolean isSameFile(Key other) {
+			return directory.equals(other.directory)
+					&& path.equals(other.path)
+					&& ignoreWhitespace == other.ignoreWhitespace;
+		}
+
+		/**
+		 * @return name of the spill file, which is the same for all commits
+		 */
+		String getFileName() {
+			MessageDigest md = Constants.newMessageDigest();
+			md.update(Constants.encode(directory));
+			md.update((byte) 0);
+			md.update(Constants.encode(path));
+			md.update((byte) (ignoreWhitespace ? 1 : 0));
+			return ObjectId.fromRaw(md.digest()).name();
+		}
+
+		@Override
+		public int hashCode() {
+			return commitId.hashCode() * 31 + path.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return commitId.equals(other.commitId) && isSameFile(other);
+		}
+	}
+
+	/**
+	 * @param spillDirectory
+	 *            directory the latest result of each file is written to or
+	 *            {@code null} if results should only be kept in memory
+	 */
+	BlameCache(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * @return the cache of the plug-in, which spills to its state location
+	 */
+	static synchronized BlameCache getDefault() {
+		if (instance == null)
+			instance = new BlameCache(Activator.getDefault()
+					.getStateLocation().append(SPILL_FOLDER).toFile());
+		return instance;
+	}
+
+	/**
+	 * Returns the blame of a file at a commit, calculating it if it is not
+	 * cached yet
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the file
+	 * @param commitId
+	 *            commit to start the blame at
+	 * @param ignoreWhitespace
+	 *            true to ignore whitespace changes
+	 * @param monitor
+	 * @param listener
+	 *            listener for intermediate results if the file needs to be
+	 *            blamed, or null
+	 * @return the blame or null if the file doesn't exist in the commit or
+	 *         the monitor was canceled
+	 * @throws IOException
+	 */
+	Entry get(Repository repository, String path, AnyObjectId commitId,
+			boolean ignoreWhitespace, IProgressMonitor monitor,
+			Listener listener) throws IOException {
+		Key key = new Key(repository, path, commitId, ignoreWhitespace);
+		List<Entry> bases = new ArrayList<Entry>();
+		synchronized (this) {
+			Entry entry = cache.get(key);
+			if (entry != null)
+				return entry;
+			// most recently used results of other commits first
+			for (Map.Entry<Key, Entry> cached : cache.entrySet())
+				if (cached.getKey().isSameFile(key))
+					bases.add(0, cached.getValue());
+		}
+
+		Entry spilled = readSpilled(repository, key);
+		Entry entry;
+		if (spilled != null && spilled.commitId.equals(key.commitId))
+			entry = spilled;
+		else {
+			if (spilled != null)
+				bases.add(spilled);
+			entry = calculate(repository, key, bases, monitor, listener);
+			if (entry == null)
+				return null;
+			spill(key, entry);
+		}
+
+		synchronized (this) {
+			put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the blame of the file in the working tree, based on the blame
+	 * of its version in the commit. Lines which differ from the commit are
+	 * not committed.
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the file
+	 * @param entry
+	 *            blame of the file at the commit the working tree is based on
+	 * @param ignoreWhitespace
+	 *            true to ignore whitespace changes
+	 * @return the blame of the working tree file
+	 * @throws IOException
+	 */
+	Entry getWorkingTreeBlame(Repository repository, String path,
+			Entry entry, boolean ignoreWhitespace) throws IOException {
+		File file = new File(repository.getWorkTree(), path);
+		if (!file.isFile())
+			return entry;
+		RawText committed = new RawText(repository.open(entry.blobId,
+				Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
+		RawText text = new RawText(file);
+		EditList edits = new HistogramDiff().diff(
+				getComparator(ignoreWhitespace), committed, text);
+		if (edits.isEmpty())
+			return entry;
+
+		int[] mapping = mapLines(edits, text.size());
+		EntryBuilder builder = new EntryBuilder(text.size());
+		for (int line = 0; line < mapping.length; line++)
+			if (mapping[line] >= 0)
+				builder.set(line, entry.getSourceCommit(mapping[line]));
+		return builder.build(entry.commitId, null);
+	}
+
+	/**
+	 * Removes all results from memory
+	 */
+	synchronized void clear() {
+		cache.clear();
+		cachedLines = 0;
+	}
+
+	private void put(Key key, Entry entry) {
+		if (cache.put(key, entry) == null)
+			cachedLines += entry.getLineCount();
+		Iterator<Entry> it = cache.values().iterator();
+		while (cachedLines > MAX_LINES && it.hasNext()) {
+			Entry eldest = it.next();
+			if (eldest == entry)
+				break;
+			cachedLines -= eldest.getLineCount();
+			it.remove();
+		}
+	}
+
+	private static RawTextComparator getComparator(boolean ignoreWhitespace) {
+		return ignoreWhitespace ? RawTextComparator.WS_IGNORE_ALL
+				: RawTextComparator.DEFAULT;
+	}
+
+	private static Entry calculate(Repository repository, Key key,
+			List<Entry> bases, IProgressMonitor monitor, Listener listener)
+			throws IOException {
+		RevWalk walk = new RevWalk(repository);
+		RevCommit commit;
+		ObjectId blobId;
+		Entry base = null;
+		try {
+			commit = walk.parseCommit(key.commitId);
+			TreeWalk treeWalk = TreeWalk.forPath(repository, key.path,
+					commit.getTree());
+			if (treeWalk == null)
+				return null;
+			blobId = treeWalk.getObjectId(0);
+			treeWalk.release();
+			for (Entry candidate : bases) {
+				RevCommit baseCommit = walk.parseCommit(candidate.commitId);
+				if (walk.isMergedInto(baseCommit, commit)) {
+					base = candidate;
+					break;
+				}
+			}
+		} finally {
+			walk.release();
+		}
+
+		if (base == null)
+			return blame(repository, key, commit, blobId, null, null, null,
+					monitor, listener);
+
+		Set<RevCommit> newCommits = getCommits(repository, key.path, commit,
+				base.commitId);
+		if (newCommits.isEmpty() && blobId.equals(base.blobId))
+			// the file didn't change since the base commit
+			return new Entry(key.commitId, blobId, base.commits, base.lines);
+
+		RawText baseText = new RawText(repository.open(base.blobId,
+				Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
+		RawText text = new RawText(repository.open(blobId, Constants.OBJ_BLOB)
+				.getCachedBytes(Integer.MAX_VALUE));
+		EditList edits = new HistogramDiff().diff(
+				getComparator(key.ignoreWhitespace), baseText, text);
+		return blame(repository, key, commit, blobId, base,
+				mapLines(edits, text.size()), newCommits, monitor, listener);
+	}
+
+	/**
+	 * @return the commits reachable from the commit, but not from the base
+	 *         commit, which changed the file
+	 */
+	private static Set<RevCommit> getCommits(Repository repository,
+			String path, AnyObjectId commitId, AnyObjectId baseId)
+			throws IOException {
+		Set<RevCommit> commits = new HashSet<RevCommit>();
+		RevWalk walk = new RevWalk(repository);
+		try {
+			walk.setTreeFilter(AndTreeFilter.create(PathFilter.create(path),
+					TreeFilter.ANY_DIFF));
+			walk.setRetainBody(false);
+			walk.markStart(walk.parseCommit(commitId));
+			walk.markUninteresting(walk.parseCommit(baseId));
+			for (RevCommit commit : walk)
+				commits.add(commit);
+		} finally {
+			walk.release();
+		}
+		return commits;
+	}
+
+	/**
+	 * @return the line in the old text of each line of the new text, -1 for
+	 *         changed lines
+	 */
+	private static int[] mapLines(EditList edits, int lineCount) {
+		int[] mapping = new int[lineCount];
+		int a = 0;
+		int b = 0;
+		for (Edit edit : edits) {
+			while (b < edit.getBeginB())
+				mapping[b++] = a++;
+			while (b < edit.getEndB())
+				mapping[b++] = -1;
+			a = edit.getEndA();
+		}
+		while (b < lineCount)
+			mapping[b++] = a++;
+		return mapping;
+	}
+
+	/**
+	 * Blames the file. If a base is given, only the changed lines (-1 in the
+	 * mapping) need to be blamed. The other lines start with the source commit
+	 * of the base, the blame stops as soon as the changed lines are blamed
+	 * and the blame reached a commit which isn't new.
+	 */
+	private static Entry blame(Repository repository, Key key,
+			RevCommit commit, ObjectId blobId, Entry base, int[] mapping,
+			Set<RevCommit> newCommits, IProgressMonitor monitor,
+			Listener listener) throws IOException {
+		BlameGenerator generator = new BlameGenerator(repository, key.path);
+		try {
+			generator.setFollowFileRenames(true);
+			generator.setTextComparator(getComparator(key.ignoreWhitespace));
+			generator.push(null, commit);
+			int lineCount = generator.getResultContents().size();
+			EntryBuilder builder = new EntryBuilder(lineCount);
+			boolean[] blamed = new boolean[lineCount];
+			int unblamed = lineCount;
+			if (mapping != null) {
+				unblamed = 0;
+				for (int line = 0; line < lineCount; line++)
+					if (mapping[line] < 0)
+						unblamed++;
+					else
+						builder.set(line, base.getSourceCommit(mapping[line]));
+			}
+
+			long published = System.currentTimeMillis();
+			while (generator.next()) {
+				if (monitor.isCanceled())
+					return null;
+				RevCommit source = generator.getSourceCommit();
+				for (int line = generator.getResultStart(); line < generator
+						.getResultEnd(); line++) {
+					builder.set(line, source);
+					if (!blamed[line]) {
+						blamed[line] = true;
+						if (mapping == null || mapping[line] < 0)
+							unblamed--;
+					}
+				}
+				if (mapping != null && unblamed == 0
+						&& !newCommits.contains(source))
+					break;
+				if (listener != null
+						&& System.currentTimeMillis() - published >= PUBLISH_INTERVAL) {
+					listener.blamed(builder.build(key.commitId, blobId));
+					published = System.currentTimeMillis();
+				}
+			}
+			return builder.build(key.commitId, blobId);
+		} finally {
+			generator.release();
+		}
+	}
+
+	private Entry readSpilled(Repository repository, Key key) {
+		if (spillDirectory == null)
+			return null;
+		File file = new File(spillDirectory, key.getFileName());
+		if (!file.isFile())
+			return null;
+		Entry entry = null;
+		try {
+			entry = readSpilled(file, repository, key);
+		} catch (IOException e) {
+			// the file is blamed again, e.g. if the commits were pruned
+		} catch (RuntimeException e) {
+			// invalid, the file is blamed again
+		}
+		if (entry == null)
+			file.delete();
+		return entry;
+	}
+
+	private static Entry readSpilled(File file, Repository repository,
+			Key key) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			if (!key.path.equals(in.readUTF()))
+				return null;
+			ObjectId commitId = readId(in);
+			ObjectId blobId = readId(in);
+			int commitCount = in.readInt();
+			if (commitCount < 0 || commitCount > file.length() / ID_LENGTH)
+				return null;
+			ObjectId[] commits = new ObjectId[commitCount];
+			RevWalk walk = new RevWalk(repository);
+			try {
+				// fails if a commit was pruned
+				for (int i = 0; i < commits.length; i++)
+					commits[i] = walk.parseCommit(readId(in)).copy();
+			} finally {
+				walk.release();
+			}
+			int lineCount = in.readInt();
+			if (lineCount < 0 || lineCount > file.length() / 4)
+				return null;
+			int[] lines = new int[lineCount];
+			for (int i = 0; i < lines.length; i++)
+				lines[i] = in.readInt();
+			if (in.read() != -1)
+				return null;
+			return new Entry(commitId, blobId, commits, lines);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static ObjectId readId(DataInputStream in) throws IOException {
+		byte[] raw = new byte[ID_LENGTH];
+		in.readFully(raw);
+		return ObjectId.fromRaw(raw);
+	}
+
+	private void spill(Key key, Entry entry) {
+		if (spillDirectory == null)
+			return;
+		try {
+			trimSpillDirectory();
+			File file = new File(spillDirectory, key.getFileName());
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key.path);
+				entry.commitId.copyRawTo(out);
+				entry.blobId.copyRawTo(out);
+				out.writeInt(entry.commits.length);
+				for (ObjectId commit : entry.commits)
+					commit.copyRawTo(out);
+				out.writeInt(entry.lines.length);
+				for (int line : entry.lines)
+					out.writeInt(line);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Activator.logError(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Creates the spill directory and deletes the oldest files if it
+	 * contains more than {@link #MAX_SPILL_FILES} files. This is done once
+	 * per session before the first result is spilled.
+	 */
+	private synchronized void trimSpillDirectory() throws IOException {
+		if (spillDirectoryTrimmed)
+			return;
+		spillDirectoryTrimmed = true;
+		if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs())
+			throw new IOException(spillDirectory.getPath());
+		File[] files = spillDirectory.listFiles();
+		if (files == null || files.length <= MAX_SPILL_FILES)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < files.length - MAX_SPILL_FILES / 2; i++)
+			files[i].delete();
+	}
+}
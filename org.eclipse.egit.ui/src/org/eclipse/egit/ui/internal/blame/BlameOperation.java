@@ -11,6 +11,7 @@
 package org.eclipse.egit.ui.internal.blame;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,12 +35,12 @@
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
-import org.eclipse.jgit.api.BlameCommand;
-import org.eclipse.jgit.blame.BlameResult;
-import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.team.ui.history.IHistoryView;
 import org.eclipse.team.ui.history.RevisionAnnotationController;
@@ -128,6 +129,8 @@ else if (nonResourceFile != null)
 
 	}
 
+	private static final String QUICK_DIFF_PROVIDER = "org.eclipse.egit.ui.internal.decorators.GitQuickDiffProvider"; //$NON-NLS-1$
+
 	private Repository repository;
 
 	private IStorage storage;
@@ -140,6 +143,9 @@ else if (nonResourceFile != null)
 
 	private IWorkbenchPage page;
 
+	// editor showing the blame, only accessed in the UI thread
+	private AbstractDecoratedTextEditor editor;
+
 	/**
 	 * Create annotate operation
 	 *
@@ -161,36 +167,87 @@ public BlameOperation(Repository repository, IStorage storage, String path,
 	}
 
 	public void execute(IProgressMonitor monitor) throws CoreException {
-		final RevisionInformation info = new RevisionInformation();
-		info.setHoverControlCreator(new BlameInformationControlCreator(false));
-		info.setInformationPresenterControlCreator(new BlameInformationControlCreator(
-				true));
+		final boolean ignoreWhitespace = Activator.getDefault()
+				.getPreferenceStore()
+				.getBoolean(UIPreferences.BLAME_IGNORE_WHITESPACE);
 
-		final BlameCommand command = new BlameCommand(repository)
-				.setFollowFileRenames(true).setFilePath(path);
-		if (startCommit != null)
-			command.setStartCommit(startCommit);
-		if (Activator.getDefault().getPreferenceStore()
-				.getBoolean(UIPreferences.BLAME_IGNORE_WHITESPACE))
-			command.setTextComparator(RawTextComparator.WS_IGNORE_ALL);
+		monitor.beginTask("", IProgressMonitor.UNKNOWN); //$NON-NLS-1$
+		// resolves the source commits of the cached blame for the editor
+		final RevWalk walk = new RevWalk(repository);
+		try {
+			blame(walk, ignoreWhitespace, monitor);
+		} finally {
+			walk.release();
+		}
+	}
 
-		BlameResult result;
+	private void blame(final RevWalk walk, final boolean ignoreWhitespace,
+			IProgressMonitor monitor) {
+		BlameCache.Entry result;
 		try {
-			result = command.call();
-		} catch (Exception e1) {
+			ObjectId commitId = startCommit != null ? startCommit
+					.toObjectId() : repository.resolve(Constants.HEAD);
+			if (commitId == null)
+				return;
+			// show the lines blamed so far while the file is blamed
+			BlameCache.Listener listener = new BlameCache.Listener() {
+				public void blamed(BlameCache.Entry entry) {
+					try {
+						show(getBlame(entry, ignoreWhitespace), walk);
+					} catch (IOException e) {
+						Activator.logError(e.getMessage(), e);
+					}
+				}
+			};
+			result = BlameCache.getDefault().get(repository, path, commitId,
+					ignoreWhitespace, monitor, listener);
+			if (result != null)
+				result = getBlame(result, ignoreWhitespace);
+		} catch (IOException e1) {
 			Activator.error(e1.getMessage(), e1);
 			return;
+		} finally {
+			monitor.done();
 		}
 		if (result == null)
 			return;
 
-		Map<RevCommit, BlameRevision> revisions = new HashMap<RevCommit, BlameRevision>();
-		int lineCount = result.getResultContents().size();
-		monitor.beginTask("", lineCount); //$NON-NLS-1$
+		try {
+			show(result, walk);
+		} catch (IOException e) {
+			Activator.error(e.getMessage(), e);
+		}
+	}
+
+	private BlameCache.Entry getBlame(BlameCache.Entry entry,
+			boolean ignoreWhitespace) throws IOException {
+		// without start commit the working tree version is blamed
+		if (startCommit == null && !repository.isBare())
+			return BlameCache.getDefault().getWorkingTreeBlame(repository,
+					path, entry, ignoreWhitespace);
+		return entry;
+	}
+
+	/**
+	 * Shows the blame in the editor, opening the editor for the first blame
+	 * which is shown
+	 *
+	 * @throws IOException
+	 *             if a source commit cannot be parsed
+	 */
+	private void show(BlameCache.Entry result, RevWalk walk)
+			throws IOException {
+		final RevisionInformation info = new RevisionInformation();
+		info.setHoverControlCreator(new BlameInformationControlCreator(false));
+		info.setInformationPresenterControlCreator(new BlameInformationControlCreator(
+				true));
+
+		Map<ObjectId, BlameRevision> revisions = new HashMap<ObjectId, BlameRevision>();
+		int lineCount = result.getLineCount();
 		BlameRevision previous = null;
 		for (int i = 0; i < lineCount; i++) {
-			RevCommit commit = result.getSourceCommit(i);
-			if (commit == null) {
+			ObjectId commitId = result.getSourceCommit(i);
+			if (commitId == null) {
 				// Unregister the current revision
 				if (previous != null) {
 					previous.register();
@@ -198,12 +255,12 @@ public void execute(IProgressMonitor monitor) throws CoreException {
 				}
 				continue;
 			}
-			BlameRevision revision = revisions.get(commit);
+			BlameRevision revision = revisions.get(commitId);
 			if (revision == null) {
 				revision = new BlameRevision();
 				revision.setRepository(repository);
-				revision.setCommit(commit);
-				revisions.put(commit, revision);
+				revision.setCommit(walk.parseCommit(commitId));
+				revisions.put(commitId, revision);
 				info.addRevision(revision);
 			}
 			if (previous != null)
@@ -215,20 +272,22 @@ public void execute(IProgressMonitor monitor) throws CoreException {
 				}
 			else
 				previous = revision.reset(i);
-			monitor.worked(1);
 		}
 		if (previous != null)
 			previous.register();
 
 		shell.getDisplay().asyncExec(new Runnable() {
 			public void run() {
-				openEditor(info);
+				if (editor == null)
+					openEditor(info);
+				else if (page.findEditor(editor.getEditorInput()) == editor)
+					// the editor is still open
+					editor.showRevisionInformation(info, QUICK_DIFF_PROVIDER);
 			}
 		});
 	}
 
 	private void openEditor(final RevisionInformation info) {
-		AbstractDecoratedTextEditor editor;
 		try {
 			if (storage instanceof IFile)
 				editor = RevisionAnnotationController.openEditor(page,
@@ -263,8 +322,7 @@ else if (!repository.isBare())
 					false);
 		}
 
-		editor.showRevisionInformation(info,
-				"org.eclipse.egit.ui.internal.decorators.GitQuickDiffProvider"); //$NON-NLS-1$
+		editor.showRevisionInformation(info, QUICK_DIFF_PROVIDER);
 
 		IRevisionRulerColumn revisionRuler = AdapterUtils.adapt(editor,
 				IRevisionRulerColumn.class);
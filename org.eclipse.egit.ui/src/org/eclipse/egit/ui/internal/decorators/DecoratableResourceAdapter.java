@@ -19,11 +19,10 @@
 import static org.eclipse.jgit.lib.Repository.stripWorkDir;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
 import org.eclipse.jgit.lib.Repository;
@@ -40,6 +39,21 @@ class DecoratableResourceAdapter extends DecoratableResource {
 
 	public DecoratableResourceAdapter(IndexDiffData indexDiffData, IResource resourceToWrap)
 			throws IOException {
+		this(indexDiffData, resourceToWrap, null);
+	}
+
+	/**
+	 * @param indexDiffData
+	 * @param resourceToWrap
+	 * @param repositoryDecorations
+	 *            the cache of the project decoration data, if null the data is
+	 *            calculated for projects
+	 * @throws IOException
+	 */
+	DecoratableResourceAdapter(IndexDiffData indexDiffData,
+			IResource resourceToWrap,
+			RepositoryDecorationCache repositoryDecorations)
+			throws IOException {
 		super(resourceToWrap);
 		this.indexDiffData = indexDiffData;
 		trace = GitTraceLocation.DECORATION.isActive();
@@ -66,10 +80,16 @@ public DecoratableResourceAdapter(IndexDiffData indexDiffData, IResource resourc
 				break;
 			case IResource.PROJECT:
 				// We only need this very expensive info for project decoration
-				repositoryName = DecoratableResourceHelper
-						.getRepositoryName(repository);
-				branch = DecoratableResourceHelper.getShortBranch(repository);
-				branchStatus = DecoratableResourceHelper.getBranchStatus(repository);
+				RepositoryDecorationCache.Data data;
+				if (repositoryDecorations != null)
+					data = repositoryDecorations.get(repository);
+				else
+					data = RepositoryDecorationCache.Data.create(repository);
+				if (data != null) {
+					repositoryName = data.repositoryName;
+					branch = data.branch;
+					branchStatus = data.branchStatus;
+				}
 				tracked = true;
 				//$FALL-THROUGH$
 			case IResource.FOLDER:
@@ -93,68 +113,53 @@ public String toString() {
 
 	private void extractResourceProperties() {
 		String repoRelativePath = makeRepoRelative(resource);
+		int flags = indexDiffData.getSummary().getFlags(repoRelativePath);
 
 		// ignored
-		Set<String> ignoredFiles = indexDiffData.getIgnoredNotInIndex();
-		ignored = ignoredFiles.contains(repoRelativePath)
-				|| containsPrefixPath(ignoredFiles, repoRelativePath);
-		Set<String> untracked = indexDiffData.getUntracked();
-		tracked = !untracked.contains(repoRelativePath) && !ignored;
-
-		Set<String> added = indexDiffData.getAdded();
-		Set<String> removed = indexDiffData.getRemoved();
-		Set<String> changed = indexDiffData.getChanged();
-		if (added.contains(repoRelativePath)) // added
+		ignored = (flags & IndexDiffSummary.IGNORED) != 0;
+		tracked = (flags & IndexDiffSummary.UNTRACKED) == 0 && !ignored;
+
+		if ((flags & IndexDiffSummary.ADDED) != 0) // added
 			staged = Staged.ADDED;
-		else if (removed.contains(repoRelativePath)) // removed
+		else if ((flags & IndexDiffSummary.REMOVED) != 0) // removed
 			staged = Staged.REMOVED;
-		else if (changed.contains(repoRelativePath)) // changed and added into index
+		else if ((flags & IndexDiffSummary.CHANGED) != 0) // changed and added into index
 			staged = Staged.MODIFIED;
 		else
 			staged = Staged.NOT_STAGED;
 
 		// conflicting
-		Set<String> conflicting = indexDiffData.getConflicting();
-		conflicts = conflicting.contains(repoRelativePath);
+		conflicts = (flags & IndexDiffSummary.CONFLICTING) != 0;
 
 		// locally modified
-		Set<String> modified = indexDiffData.getModified();
-		dirty = modified.contains(repoRelativePath);
+		dirty = (flags & IndexDiffSummary.MODIFIED) != 0;
 	}
 
 	private void extractContainerProperties() {
-		String repoRelativePath = makeRepoRelative(resource) + "/"; //$NON-NLS-1$
+		String repoRelativePath = makeRepoRelative(resource);
+		IndexDiffSummary summary = indexDiffData.getSummary();
+		int flags = summary.getFlags(repoRelativePath);
+		int containedFlags = summary.getContainedFlags(repoRelativePath);
 
-		Set<String> ignoredFiles = indexDiffData.getIgnoredNotInIndex();
-		Set<String> untrackedFolders = indexDiffData.getUntrackedFolders();
-		ignored = containsPrefixPath(ignoredFiles, repoRelativePath);
+		ignored = (flags & IndexDiffSummary.IGNORED) != 0;
 
 		if (ignored)
 			tracked = false;
 		else
-			tracked = !containsPrefixPath(untrackedFolders, repoRelativePath);
+			tracked = (flags & IndexDiffSummary.UNTRACKED_FOLDER) == 0;
 
 		// containers are marked as staged whenever file was added, removed or
 		// changed
-		Set<String> changed = new HashSet<String>(indexDiffData.getChanged());
-		changed.addAll(indexDiffData.getAdded());
-		changed.addAll(indexDiffData.getRemoved());
-		if (containsPrefix(changed, repoRelativePath))
+		if ((containedFlags & IndexDiffSummary.STAGED) != 0)
 			staged = Staged.MODIFIED;
 		else
 			staged = Staged.NOT_STAGED;
 
 		// conflicting
-		Set<String> conflicting = indexDiffData.getConflicting();
-		conflicts = containsPrefix(conflicting, repoRelativePath);
+		conflicts = (containedFlags & IndexDiffSummary.CONFLICTING) != 0;
 
 		// locally modified / untracked
-		Set<String> modified = indexDiffData.getModified();
-		Set<String> untracked = indexDiffData.getUntracked();
-		Set<String> missing = indexDiffData.getMissing();
-		dirty = containsPrefix(modified, repoRelativePath)
-				|| containsPrefix(untracked, repoRelativePath)
-				|| containsPrefix(missing, repoRelativePath);
+		dirty = (containedFlags & IndexDiffSummary.DIRTY) != 0;
 	}
 
 	private String makeRepoRelative(IResource res) {
@@ -162,29 +167,4 @@ private String makeRepoRelative(IResource res) {
 				.toFile());
 	}
 
-	private boolean containsPrefix(Set<String> collection, String prefix) {
-		// when prefix is empty we are handling repository root, therefore we
-		// should return true whenever collection isn't empty
-		if (prefix.length() == 1 && !collection.isEmpty())
-			return true;
-
-		for (String path : collection)
-			if (path.startsWith(prefix))
-				return true;
-		return false;
-	}
-
-	private boolean containsPrefixPath(Set<String> collection, String path) {
-		for (String entry : collection) {
-			String entryPath;
-			if (entry.endsWith("/")) //$NON-NLS-1$
-				entryPath = entry;
-			else
-				entryPath = entry + "/"; //$NON-NLS-1$
-			if (path.startsWith(entryPath))
-				return true;
-		}
-		return false;
-	}
-
 }
@@ -14,9 +14,13 @@
 
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.internal.GitLabelProvider;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryState;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 
 /**
  * Helper class to create decoratable resources
@@ -40,19 +44,57 @@ static String getShortBranch(Repository repository) throws IOException {
 				.getShortBranch(repository);
 	}
 
+	/**
+	 * Maximum number of commits counted for the branch status. Counting the
+	 * commits requires a walk over all of them, which can take long for
+	 * branches far apart.
+	 */
+	static final int MAX_BRANCH_STATUS_COUNT = 1000;
+
 	static String getBranchStatus(Repository repo) throws IOException {
 		String branchName = repo.getBranch();
 		if (branchName == null)
 			return null;
 
-		BranchTrackingStatus status = BranchTrackingStatus.of(repo, branchName);
-		if (status == null)
+		String trackingBranch = new BranchConfig(repo.getConfig(), branchName)
+				.getRemoteTrackingBranch();
+		if (trackingBranch == null)
 			return null;
 
-		if (status.getAheadCount() == 0 && status.getBehindCount() == 0)
+		Ref local = repo.getRef(Constants.R_HEADS + branchName);
+		Ref tracking = repo.getRef(trackingBranch);
+		if (local == null || local.getObjectId() == null || tracking == null
+				|| tracking.getObjectId() == null)
 			return null;
 
-		String formattedStatus = GitLabelProvider.formatBranchTrackingStatus(status);
-		return formattedStatus;
+		RevWalk walk = new RevWalk(repo);
+		try {
+			RevCommit localCommit = walk.parseCommit(local.getObjectId());
+			RevCommit trackingCommit = walk.parseCommit(tracking
+					.getObjectId());
+			int ahead = count(walk, localCommit, trackingCommit);
+			walk.reset();
+			int behind = count(walk, trackingCommit, localCommit);
+			if (ahead == 0 && behind == 0)
+				return null;
+			return GitLabelProvider.formatBranchTrackingStatus(ahead, behind,
+					MAX_BRANCH_STATUS_COUNT);
+		} finally {
+			walk.release();
+		}
+	}
+
+	/**
+	 * @return the number of commits reachable from start, but not from
+	 *         uninteresting, at most {@link #MAX_BRANCH_STATUS_COUNT} + 1
+	 */
+	private static int count(RevWalk walk, RevCommit start,
+			RevCommit uninteresting) throws IOException {
+		walk.markStart(start);
+		walk.markUninteresting(uninteresting);
+		int count = 0;
+		while (count <= MAX_BRANCH_STATUS_COUNT && walk.next() != null)
+			count++;
+		return count;
 	}
 }
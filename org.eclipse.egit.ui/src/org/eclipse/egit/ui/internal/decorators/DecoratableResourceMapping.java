@@ -19,6 +19,7 @@
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.mapping.ResourceMapping;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffSummary;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.ui.IWorkingSet;
@@ -52,6 +53,20 @@ public class DecoratableResourceMapping extends DecoratableResource {
 	 * @throws IOException
 	 */
 	public DecoratableResourceMapping(ResourceMapping mapping) throws IOException {
+		this(mapping, null);
+	}
+
+	/**
+	 * Creates a decoratable resource mapping (used for e.g. working sets)
+	 *
+	 * @param mapping the resource mapping to decorate
+	 * @param repositoryDecorations
+	 *            the cache of the repository decoration data, if null the
+	 *            data is calculated
+	 * @throws IOException
+	 */
+	DecoratableResourceMapping(ResourceMapping mapping,
+			RepositoryDecorationCache repositoryDecorations) throws IOException {
 		super(null); // no resource ...
 
 		this.mapping = mapping;
@@ -78,16 +93,15 @@ public DecoratableResourceMapping(ResourceMapping mapping) throws IOException {
 			tracked = true;
 
 			Repository repository = repoMapping.getRepository();
-			String repoRelative = makeRepoRelative(repository, prj) + "/"; //$NON-NLS-1$
-
-			Set<String> modified = diffData.getModified();
-			Set<String> conflicting = diffData.getConflicting();
+			String repoRelative = makeRepoRelative(repository, prj);
+			int containedFlags = diffData.getSummary().getContainedFlags(
+					repoRelative);
 
 			// attention - never reset these to false (so don't use the return value of the methods!)
-			if(containsPrefix(modified, repoRelative))
+			if((containedFlags & IndexDiffSummary.MODIFIED) != 0)
 				dirty = true;
 
-			if(containsPrefix(conflicting, repoRelative))
+			if((containedFlags & IndexDiffSummary.CONFLICTING) != 0)
 				conflicts = true;
 
 			// collect repository
@@ -98,23 +112,32 @@ public DecoratableResourceMapping(ResourceMapping mapping) throws IOException {
 		if(repositories.size() == 1) {
 			// single repo, single branch --> [repo branch]
 			Repository repository = repositories.iterator().next();
-			repositoryName = DecoratableResourceHelper
-					.getRepositoryName(repository);
-			branch = DecoratableResourceHelper.getShortBranch(repository);
-			branchStatus = DecoratableResourceHelper
-					.getBranchStatus(repository);
+			RepositoryDecorationCache.Data data = getData(repository,
+					repositoryDecorations);
+			if (data != null) {
+				repositoryName = data.repositoryName;
+				branch = data.branch;
+				branchStatus = data.branchStatus;
+			}
 		} else if(repositories.size() > 1) {
 			// collect branch names but skip branch status (doesn't make sense)
 			Set<String> branches = new HashSet<String>(2);
+			boolean complete = true;
 			for (Repository repository : repositories) {
-				branches.add(DecoratableResourceHelper
-						.getShortBranch(repository));
+				RepositoryDecorationCache.Data data = getData(repository,
+						repositoryDecorations);
+				if (data == null) {
+					// not calculated yet
+					complete = false;
+					break;
+				}
+				branches.add(data.branch);
 			    if (branches.size() > 1)
 			        break;
 			}
 
 			// multiple repos, one branch --> [* branch]
-			if (branches.size() == 1) {
+			if (complete && branches.size() == 1) {
 				repositoryName = MULTIPLE;
 				branch = branches.iterator().next();
 			}
@@ -124,6 +147,15 @@ public DecoratableResourceMapping(ResourceMapping mapping) throws IOException {
 		}
 	}
 
+	private static RepositoryDecorationCache.Data getData(
+			Repository repository,
+			RepositoryDecorationCache repositoryDecorations)
+			throws IOException {
+		if (repositoryDecorations != null)
+			return repositoryDecorations.get(repository);
+		return RepositoryDecorationCache.Data.create(repository);
+	}
+
 	public int getType() {
 		if (mapping.getModelObject() instanceof IWorkingSet)
 			return WORKING_SET;
@@ -145,16 +177,4 @@ private String makeRepoRelative(Repository repository, IResource res) {
 		return stripWorkDir(repository.getWorkTree(), res.getLocation()
 				.toFile());
 	}
-
-	private boolean containsPrefix(Set<String> collection, String prefix) {
-		// when prefix is empty we are handling repository root, therefore we
-		// should return true whenever collection isn't empty
-		if (prefix.length() == 1 && !collection.isEmpty())
-			return true;
-
-		for (String path : collection)
-			if (path.startsWith(prefix))
-				return true;
-		return false;
-	}
 }
@@ -17,10 +17,17 @@
 package org.eclipse.egit.ui.internal.decorators;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.mapping.ResourceMapping;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
@@ -37,6 +44,7 @@
 import org.eclipse.egit.ui.UIPreferences;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.decorators.IDecoratableResource.Staged;
+import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.util.IPropertyChangeListener;
@@ -46,6 +54,7 @@
 import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.osgi.util.TextProcessor;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
@@ -90,6 +99,20 @@ public class GitLightweightDecorator extends LabelProvider implements
 		UIPreferences.THEME_UncommittedChangeBackgroundColor,
 		UIPreferences.THEME_UncommittedChangeForegroundColor};
 
+	/**
+	 * Maximum number of changed paths for which the decorations are updated
+	 * individually. If more paths changed, all decorations are updated.
+	 */
+	private static final int MAX_CHANGED_PATHS = 1000;
+
+	// number of decorations since the last label event, only when tracing
+	private final AtomicInteger decorations = new AtomicInteger();
+
+	private final RepositoryDecorationCache repositoryDecorations;
+
+	// elements decorated as resource mappings (i.e. working sets)
+	private final Map<Object, Boolean> decoratedMappings = new WeakHashMap<Object, Boolean>();
+
 	/**
 	 * Constructs a new Git resource decorator
 	 */
@@ -100,6 +123,7 @@ public GitLightweightDecorator() {
 				.addPropertyChangeListener(this);
 
 		org.eclipse.egit.core.Activator.getDefault().getIndexDiffCache().addIndexDiffChangedListener(this);
+		repositoryDecorations = new RepositoryDecorationCache(this);
 		// This is an optimization to ensure that while decorating our fonts and colors are
 		// pre-created and decoration can occur without having to syncExec.
 		ensureFontAndColorsCreated(fonts, colors);
@@ -141,6 +165,7 @@ public void dispose() {
 		TeamUI.removePropertyChangeListener(this);
 		Activator.removePropertyChangeListener(this);
 		org.eclipse.egit.core.Activator.getDefault().getIndexDiffCache().removeIndexDiffChangedListener(this);
+		repositoryDecorations.dispose();
 	}
 
 	/**
@@ -158,6 +183,9 @@ public void decorate(Object element, IDecoration decoration) {
 		if (!PlatformUI.isWorkbenchRunning())
 			return;
 
+		if (GitTraceLocation.DECORATION.isActive())
+			decorations.incrementAndGet();
+
 		final IResource resource = getResource(element);
 		try {
 			if (resource == null)
@@ -186,7 +214,8 @@ private void decorateResource(IResource resource, IDecoration decoration) throws
 		final DecorationHelper helper = new DecorationHelper(
 				Activator.getDefault().getPreferenceStore());
 		try {
-			decoratableResource = new DecoratableResourceAdapter(indexDiffData, resource);
+			decoratableResource = new DecoratableResourceAdapter(indexDiffData,
+					resource, repositoryDecorations);
 		} catch (IOException e) {
 			throw new CoreException(Activator.createErrorStatus(UIText.Decorator_exceptionMessage, e));
 		}
@@ -231,7 +260,8 @@ private void decorateResourceMapping(Object element, IDecoration decoration) thr
 
 		IDecoratableResource decoRes;
 		try {
-			decoRes = new DecoratableResourceMapping(mapping);
+			decoRes = new DecoratableResourceMapping(mapping,
+					repositoryDecorations);
 		} catch (IOException e) {
 			throw new CoreException(Activator.createErrorStatus(UIText.Decorator_exceptionMessage, e));
 		}
@@ -242,6 +272,9 @@ private void decorateResourceMapping(Object element, IDecoration decoration) thr
 		 *   2) no indexDiff for the contained projects ready yet.
 		 *  in both cases, don't do anything to not pollute the display of the sets.
 		 */
+		synchronized (decoratedMappings) {
+			decoratedMappings.put(element, Boolean.TRUE);
+		}
 		if(!decoRes.isTracked())
 			return;
 
@@ -615,7 +648,102 @@ public void propertyChange(PropertyChangeEvent event) {
 
 	public void indexDiffChanged(Repository repository,
 			IndexDiffData indexDiffData) {
-		postLabelEvent();
+		Collection<String> changedPaths = indexDiffData.getChangedPaths();
+		if (changedPaths == null || changedPaths.size() > MAX_CHANGED_PATHS)
+			postLabelEvent();
+		else if (!changedPaths.isEmpty()) {
+			Set<IResource> resources = getChangedResources(repository,
+					changedPaths);
+			if (resources == null)
+				postLabelEvent();
+			else
+				LabelEventJob.getInstance(repository).postLabelEvent(this,
+						addResourceMappings(resources));
+		}
+	}
+
+	/**
+	 * @param resources
+	 *            the changed resources including their projects
+	 * @return the resources together with the decorated resource mapping
+	 *         elements containing any of their projects
+	 */
+	private Set<Object> addResourceMappings(Set<IResource> resources) {
+		Set<Object> elements = new HashSet<Object>(resources);
+		Object[] mappingElements;
+		synchronized (decoratedMappings) {
+			mappingElements = decoratedMappings.keySet().toArray();
+		}
+		for (Object element : mappingElements) {
+			@SuppressWarnings("restriction")
+			ResourceMapping mapping = Utils.getResourceMapping(element);
+			if (mapping == null)
+				continue;
+			for (IProject project : mapping.getProjects())
+				if (resources.contains(project)) {
+					elements.add(element);
+					break;
+				}
+		}
+		return elements;
+	}
+
+	/**
+	 * @param repository
+	 * @param changedPaths
+	 * @return the files with changed state together with their parent
+	 *         containers, or null if all decorations have to be updated
+	 *         because the state of a folder changed
+	 */
+	private static Set<IResource> getChangedResources(Repository repository,
+			Collection<String> changedPaths) {
+		Map<IProject, String> projects = getProjects(repository);
+		Set<IResource> resources = new HashSet<IResource>();
+		for (String changedPath : changedPaths) {
+			// the state of all resources below a folder may have changed
+			if (changedPath.endsWith("/")) //$NON-NLS-1$
+				return null;
+			for (Map.Entry<IProject, String> entry : projects.entrySet()) {
+				String prefix = entry.getValue();
+				if (!changedPath.startsWith(prefix))
+					continue;
+				IProject project = entry.getKey();
+				String relativePath = changedPath.substring(prefix.length());
+				IResource resource = project.findMember(relativePath);
+				if (resource == null)
+					// deleted files are not members any more
+					resource = project.getFile(relativePath);
+				else if (resource.getType() != IResource.FILE)
+					return null;
+				for (IResource r = resource; r != null
+						&& r.getType() != IResource.ROOT; r = r.getParent())
+					if (!resources.add(r))
+						break;
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * @param repository
+	 * @return the accessible projects of the repository mapped to their
+	 *         repository relative paths, which end with a slash unless empty
+	 */
+	private static Map<IProject, String> getProjects(Repository repository) {
+		Map<IProject, String> projects = new HashMap<IProject, String>();
+		for (IProject project : ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects()) {
+			if (!project.isAccessible())
+				continue;
+			RepositoryMapping mapping = RepositoryMapping.getMapping(project);
+			if (mapping == null || mapping.getRepository() != repository)
+				continue;
+			String path = mapping.getRepoRelativePath(project);
+			if (path == null)
+				continue;
+			projects.put(project, path.length() == 0 ? path : path + "/"); //$NON-NLS-1$
+		}
+		return projects;
 	}
 
 	// -------- Helper methods --------
@@ -650,12 +778,13 @@ private static IResource getResource(Object actElement) {
 	 * decorations shall be invalidated. Same as
 	 * <code>postLabelEvent(null, true)</code>.
 	 */
-	private void postLabelEvent() {
+	void postLabelEvent() {
 		// Post label event to LabelEventJob
 		LabelEventJob.getInstance().postLabelEvent(this);
 	}
 
 	void fireLabelEvent() {
+		traceLabelEvent(-1);
 		final LabelProviderChangedEvent event = new LabelProviderChangedEvent(
 				this);
 		// Re-trigger decoration process (in UI thread)
@@ -666,6 +795,35 @@ public void run() {
 		});
 	}
 
+	void fireLabelEvent(Collection<Object> elements) {
+		traceLabelEvent(elements.size());
+		final LabelProviderChangedEvent event = new LabelProviderChangedEvent(
+				this, elements.toArray());
+		// Re-trigger decoration process (in UI thread)
+		Display.getDefault().asyncExec(new Runnable() {
+			public void run() {
+				fireLabelProviderChanged(event);
+			}
+		});
+	}
+
+	/**
+	 * Traces the number of decorations caused by the previous label event
+	 *
+	 * @param elements
+	 *            number of elements of the new event, -1 for all elements
+	 */
+	private void traceLabelEvent(int elements) {
+		if (!GitTraceLocation.DECORATION.isActive())
+			return;
+		GitTraceLocation.getTrace().trace(
+				GitTraceLocation.DECORATION.getLocation(),
+				NLS.bind(
+						"Label event for {0} elements, {1} decorations since the previous label event", //$NON-NLS-1$
+						elements < 0 ? "all" : Integer.valueOf(elements), //$NON-NLS-1$
+						Integer.valueOf(decorations.getAndSet(0))));
+	}
+
 	/**
 	 * Handle exceptions that occur in the decorator. Exceptions are only logged
 	 * for resources that are accessible (i.e. exist in an open project).
@@ -684,6 +842,10 @@ private static void handleException(IResource resource, CoreException e) {
 /**
  * Job reducing label events to prevent unnecessary (i.e. redundant) event
  * processing
+ * <p>
+ * Events for all elements are posted to a global job, events for the
+ * resources and resource mappings of one repository to a job of that
+ * repository.
  */
 class LabelEventJob extends Job {
 
@@ -695,6 +857,8 @@ class LabelEventJob extends Job {
 
 	private static LabelEventJob instance = new LabelEventJob("LabelEventJob"); //$NON-NLS-1$
 
+	private static final Map<Repository, LabelEventJob> repositoryInstances = new WeakHashMap<Repository, LabelEventJob>();
+
 	/**
 	 * Get the LabelEventJob singleton
 	 *
@@ -704,12 +868,31 @@ static LabelEventJob getInstance() {
 		return instance;
 	}
 
+	/**
+	 * Get the LabelEventJob of a repository
+	 *
+	 * @param repository
+	 * @return the LabelEventJob for resources of the repository
+	 */
+	static LabelEventJob getInstance(Repository repository) {
+		synchronized (repositoryInstances) {
+			LabelEventJob job = repositoryInstances.get(repository);
+			if (job == null) {
+				job = new LabelEventJob("LabelEventJob"); //$NON-NLS-1$
+				repositoryInstances.put(repository, job);
+			}
+			return job;
+		}
+	}
+
 	private LabelEventJob(final String name) {
 		super(name);
 	}
 
 	private GitLightweightDecorator glwDecorator = null;
 
+	private Set<Object> pendingElements = new HashSet<Object>();
+
 	/**
 	 * Post a label event
 	 *
@@ -725,10 +908,35 @@ void postLabelEvent(final GitLightweightDecorator decorator) {
 		schedule(DELAY);
 	}
 
+	/**
+	 * Post a label event for the given elements
+	 *
+	 * @param decorator
+	 *            The GitLightweightDecorator that is used to fire a
+	 *            LabelProviderChangedEvent
+	 * @param elements
+	 */
+	void postLabelEvent(final GitLightweightDecorator decorator,
+			Collection<Object> elements) {
+		synchronized (this) {
+			pendingElements.addAll(elements);
+		}
+		postLabelEvent(decorator);
+	}
+
 	@Override
 	protected IStatus run(IProgressMonitor monitor) {
-		if (glwDecorator != null)
+		if (glwDecorator == null)
+			return Status.OK_STATUS;
+		Set<Object> elements;
+		synchronized (this) {
+			elements = pendingElements;
+			pendingElements = new HashSet<Object>();
+		}
+		if (this == instance)
 			glwDecorator.fireLabelEvent();
+		else if (!elements.isEmpty())
+			glwDecorator.fireLabelEvent(elements);
 		return Status.OK_STATUS;
 	}
 }
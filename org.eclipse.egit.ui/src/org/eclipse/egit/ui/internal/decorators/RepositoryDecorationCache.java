@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.decorators;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.ui.Activator;
+import org.eclipse.egit.ui.UIText;
+import org.eclipse.jgit.events.IndexChangedEvent;
+import org.eclipse.jgit.events.IndexChangedListener;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Cache of the repository related decoration data of projects: repository
+ * name, branch and branch status.
+ * <p>
+ * The data is calculated once per repository in a background job and shared
+ * by all projects of the repository. It is recalculated when the refs or the
+ * index of the repository change. Until the new data is available the
+ * previous data is used for decorating; when the data changed, the
+ * decorations are refreshed. If the calculation fails, the failure is logged
+ * and cached like a result, so that it is not repeated until the refs or the
+ * index change.
+ */
+class RepositoryDecorationCache {
+
+	/**
+	 * Delay (in milliseconds) before the data is calculated, to combine
+	 * multiple change events
+	 */
+	private static final long DELAY = 100L;
+
+	/**
+	 * Cached instead of the data of a repository whose calculation failed
+	 */
+	private static final Data FAILED = new Data(null, null, null);
+
+	private final GitLightweightDecorator decorator;
+
+	private final Map<Repository, Data> cache = new WeakHashMap<Repository, Data>();
+
+	private final UpdateJob updateJob = new UpdateJob();
+
+	private final ListenerHandle refsChangedHandle;
+
+	private final ListenerHandle indexChangedHandle;
+
+	/**
+	 * Decoration data of one repository
+	 */
+	static class Data {
+
+		final String repositoryName;
+
+		final String branch;
+
+		final String branchStatus;
+
+		Data(String repositoryName, String branch, String branchStatus) {
+			this.repositoryName = repositoryName;
+			this.branch = branch;
+			this.branchStatus = branchStatus;
+		}
+
+		/**
+		 * Calculates the data of a repository
+		 *
+		 * @param repository
+		 * @return the data
+		 * @throws IOException
+		 */
+		static Data create(Repository repository) throws IOException {
+			return new Data(
+					DecoratableResourceHelper.getRepositoryName(repository),
+					DecoratableResourceHelper.getShortBranch(repository),
+					DecoratableResourceHelper.getBranchStatus(repository));
+		}
+
+		boolean isSame(Data other) {
+			return other != null
+					&& same(repositoryName, other.repositoryName)
+					&& same(branch, other.branch)
+					&& same(branchStatus, other.branchStatus);
+		}
+
+		private static boolean same(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	/**
+	 * @param decorator
+	 *            the decorator to notify when the data of a repository
+	 *            changed
+	 */
+	RepositoryDecorationCache(GitLightweightDecorator decorator) {
+		this.decorator = decorator;
+		refsChangedHandle = Repository.getGlobalListenerList()
+				.addRefsChangedListener(new RefsChangedListener() {
+					public void onRefsChanged(RefsChangedEvent event) {
+						invalidate(event.getRepository());
+					}
+				});
+		indexChangedHandle = Repository.getGlobalListenerList()
+				.addIndexChangedListener(new IndexChangedListener() {
+					public void onIndexChanged(IndexChangedEvent event) {
+						invalidate(event.getRepository());
+					}
+				});
+	}
+
+	/**
+	 * Returns the current data of the repository without blocking. If there
+	 * is no data yet, its calculation is scheduled.
+	 *
+	 * @param repository
+	 * @return the data of the repository or null if it is not calculated yet
+	 *         or its calculation failed
+	 */
+	Data get(Repository repository) {
+		Data data;
+		synchronized (cache) {
+			data = cache.get(repository);
+		}
+		if (data == null)
+			updateJob.add(repository);
+		return data == FAILED ? null : data;
+	}
+
+	/**
+	 * Stops listening to repository changes
+	 */
+	void dispose() {
+		refsChangedHandle.remove();
+		indexChangedHandle.remove();
+		updateJob.cancel();
+	}
+
+	/**
+	 * Calculates the data of a repository, called by the update job
+	 *
+	 * @param repository
+	 * @return the data
+	 * @throws IOException
+	 */
+	Data createData(Repository repository) throws IOException {
+		return Data.create(repository);
+	}
+
+	/**
+	 * Refreshes the decorations after the data of a repository changed
+	 */
+	void dataChanged() {
+		decorator.postLabelEvent();
+	}
+
+	private void invalidate(Repository repository) {
+		synchronized (cache) {
+			// only update data which is used for decorating
+			if (!cache.containsKey(repository))
+				return;
+		}
+		updateJob.add(repository);
+	}
+
+	private class UpdateJob extends Job {
+
+		private final Set<Repository> pending = new LinkedHashSet<Repository>();
+
+		UpdateJob() {
+			super(UIText.RepositoryDecorationCache_updateJobName);
+			setSystem(true);
+		}
+
+		void add(Repository repository) {
+			synchronized (pending) {
+				if (!pending.add(repository))
+					return;
+			}
+			schedule(DELAY);
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == RepositoryDecorationCache.this;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			boolean changed = false;
+			while (!monitor.isCanceled()) {
+				Repository repository;
+				synchronized (pending) {
+					if (pending.isEmpty())
+						break;
+					repository = pending.iterator().next();
+					pending.remove(repository);
+				}
+				Data data;
+				IOException failure = null;
+				try {
+					data = createData(repository);
+				} catch (IOException e) {
+					data = FAILED;
+					failure = e;
+				}
+				Data previous;
+				synchronized (cache) {
+					previous = cache.put(repository, data);
+				}
+				if (!data.isSame(previous))
+					changed = true;
+				// log only the first of consecutive failures
+				if (failure != null && previous != FAILED)
+					Activator.logError(failure.getMessage(), failure);
+			}
+			if (changed)
+				dataChanged();
+			return Status.OK_STATUS;
+		}
+	}
+}
@@ -20,6 +20,8 @@
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.CommitDiffCache.TreeDiff;
 import org.eclipse.egit.ui.UIIcons;
 import org.eclipse.egit.ui.UIUtils;
 import org.eclipse.egit.ui.internal.DecorationOverlayDescriptor;
@@ -42,8 +44,10 @@
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.ui.model.WorkbenchAdapter;
 
 /**
@@ -80,6 +84,19 @@ public static FileDiff[] compute(final TreeWalk walk, final RevCommit commit)
 			CorruptObjectException, IOException {
 		final ArrayList<FileDiff> r = new ArrayList<FileDiff>();
 
+		if (commit.getParentCount() <= 1 && walk.isRecursive()
+				&& walk.getFilter() == TreeFilter.ANY_DIFF) {
+			// the changes between two trees never change, reuse them
+			RevTree parentTree = commit.getParentCount() > 0 ? commit
+					.getParent(0).getTree() : null;
+			TreeDiff treeDiff = Activator.getDefault().getCommitDiffCache()
+					.get(walk.getObjectReader(), parentTree, commit.getTree(),
+							null);
+			for (DiffEntry entry : treeDiff.toDiffEntries())
+				r.add(new FileDiff(commit, entry));
+			return r.toArray(new FileDiff[r.size()]);
+		}
+
 		if (commit.getParentCount() > 0)
 			walk.reset(trees(commit));
 		else {
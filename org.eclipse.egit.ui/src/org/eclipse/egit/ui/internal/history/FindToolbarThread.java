@@ -9,8 +9,21 @@
 package org.eclipse.egit.ui.internal.history;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.egit.ui.Activator;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.util.RawParseUtils;
 
 /**
  * This class executes the search function for the find toolbar. Only one thread
@@ -24,6 +37,17 @@
  * necessary any more, so the current thread returns.
  * </p>
  * <p>
+ * The revisions are split into chunks which are searched in parallel by up to
+ * {@link #MAX_WORKERS} worker threads. The commit bodies are parsed on this
+ * thread before, the workers only read the raw buffers since the walk of the
+ * history view must not be used concurrently. The matches of each chunk are
+ * added to
+ * the {@link FindResults} in the order of the revisions as soon as the chunk
+ * and all chunks before it are searched. ASCII patterns are matched directly
+ * against the raw commit buffers, without decoding or lower casing the
+ * commit messages and identities.
+ * </p>
+ * <p>
  * To avoid consuming all the memory in the system, this class limits the
  * maximum results it stores.
  * </p>
@@ -37,6 +61,12 @@ public class FindToolbarThread extends Thread {
 
 	private static final int MAX_RESULTS = 20000;
 
+	private static final int MAX_WORKERS = 4;
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private static final long POLL_INTERVAL = 50;
+
 	String pattern;
 
 	SWTCommit[] fileRevisions;
@@ -57,6 +87,12 @@ public class FindToolbarThread extends Thread {
 
 	private int currentThreadIx;
 
+	// the pattern used by the workers
+	private String findPattern;
+
+	// UTF-8 encoded pattern, null if the raw buffers can't be searched
+	private byte[] rawPattern;
+
 	/**
 	 * Creates a new object and increments the internal
 	 * <code>globalThreadIx</code> variable causing any earlier running thread
@@ -73,6 +109,11 @@ public void run() {
 		}
 	}
 
+	private boolean isCanceled() {
+		return currentThreadIx < globalThreadIx
+				|| toolbar.getDisplay().isDisposed();
+	}
+
 	private void execFind() {
 		// If it isn't the last event, just ignore it.
 		if (currentThreadIx < globalThreadIx) {
@@ -84,137 +125,84 @@ private void execFind() {
 
 		boolean maxResultsOverflow = false;
 		if (pattern.length() > 0 && fileRevisions != null) {
-			String findPattern = pattern;
+			findPattern = pattern;
 			if (ignoreCase) {
 				findPattern = pattern.toLowerCase();
 			}
-
-			long lastUIUpdate = System.currentTimeMillis();
+			rawPattern = isAscii(findPattern) ? Constants.encode(findPattern)
+					: null;
 
 			int totalRevisions = fileRevisions.length;
-			int totalMatches = 0;
-			boolean notFound = true;
-			for (int i = 0; i < totalRevisions; i++) {
-				// If a new find event was generated, ends the current thread.
-				if (toolbar.getDisplay().isDisposed()
-						|| currentThreadIx < globalThreadIx) {
+			for (SWTCommit revision : fileRevisions) {
+				if (isCanceled())
 					return;
-				}
-
-				// Updates the toolbar with in process info.
-				if (System.currentTimeMillis() - lastUIUpdate > 500) {
-					final int percentage = (int) (((i + 1F) / totalRevisions) * 100);
-					toolbar.getDisplay().asyncExec(new Runnable() {
-						public void run() {
-							if (toolbar.isDisposed()) {
-								return;
-							}
-							toolbar.progressUpdate(percentage);
-						}
-					});
-					lastUIUpdate = System.currentTimeMillis();
-				}
-
-				// Finds for the pattern in the revision history.
-				notFound = true;
-				SWTCommit revision = fileRevisions[i];
 				try {
 					revision.parseBody();
 				} catch (IOException e) {
 					Activator.error("Error parsing body", e); //$NON-NLS-1$
-					continue;
-				}
-
-				if (findInCommitId) {
-					String contentId = revision.getId().name();
-					if (contentId != null) {
-						if (ignoreCase) {
-							contentId = contentId.toLowerCase();
-						}
-						if (contentId.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
 				}
+			}
 
-				if (findInComments && notFound) {
-					String comment = revision.getFullMessage();
-					if (comment != null) {
-						if (ignoreCase) {
-							comment = comment.toLowerCase();
-						}
-						if (comment.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
-				}
+			int chunks = (totalRevisions + CHUNK_SIZE - 1) / CHUNK_SIZE;
+			ExecutorService executor = null;
+			LinkedList<Future<int[]>> pending = new LinkedList<Future<int[]>>();
+			if (chunks > 1) {
+				executor = Executors.newFixedThreadPool(
+						Math.min(chunks, MAX_WORKERS), new WorkerFactory());
+				for (int i = 0; i < chunks; i++)
+					pending.add(executor.submit(new ChunkSearch(i * CHUNK_SIZE,
+							Math.min((i + 1) * CHUNK_SIZE, totalRevisions))));
+			}
 
-				if (findInAuthor && notFound) {
-					String author = revision.getAuthorIdent().getName();
-					if (author != null) {
-						if (ignoreCase) {
-							author = author.toLowerCase();
-						}
-						if (author.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
+			long lastUIUpdate = System.currentTimeMillis();
+			int totalMatches = 0;
+			try {
+				for (int i = 0; i < chunks; i++) {
+					int[] matches;
+					try {
+						if (executor == null)
+							matches = new ChunkSearch(0, totalRevisions).call();
+						else
+							matches = waitFor(pending.removeFirst());
+					} catch (ExecutionException e) {
+						// show the matches found so far
+						Activator.error(e.getCause().getMessage(), e.getCause());
+						break;
 					}
-					if (notFound) {
-						String email = revision.getAuthorIdent()
-								.getEmailAddress();
-						if (email != null) {
-							if (ignoreCase) {
-								email = email.toLowerCase();
-							}
-							if (email.indexOf(findPattern) != -1) {
-								totalMatches++;
-								findResults.add(i, revision);
-								notFound = false;
-							}
-						}
+					// If a new find event was generated, ends the current
+					// thread.
+					if (matches == null || isCanceled()) {
+						return;
 					}
-				}
 
-				if (findInCommitter && notFound) {
-					String committer = revision.getCommitterIdent().getName();
-					if (committer != null) {
-						if (ignoreCase) {
-							committer = committer.toLowerCase();
-						}
-						if (committer.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
+					for (int j = 1; j <= matches[0]; j++) {
+						findResults.add(matches[j], fileRevisions[matches[j]]);
+						if (++totalMatches == MAX_RESULTS) {
+							maxResultsOverflow = true;
+							break;
 						}
 					}
-					if (notFound) {
-						String email = revision.getCommitterIdent()
-								.getEmailAddress();
-						if (email != null) {
-							if (ignoreCase) {
-								email = email.toLowerCase();
-							}
-							if (email.indexOf(findPattern) != -1) {
-								totalMatches++;
-								findResults.add(i, revision);
-								notFound = false;
+					if (maxResultsOverflow)
+						break;
+
+					// Updates the toolbar with in process info.
+					if (System.currentTimeMillis() - lastUIUpdate > 500) {
+						final int percentage = (int) (((i + 1F) / chunks) * 100);
+						toolbar.getDisplay().asyncExec(new Runnable() {
+							public void run() {
+								if (toolbar.isDisposed()) {
+									return;
+								}
+								toolbar.progressUpdate(percentage);
 							}
-						}
+						});
+						lastUIUpdate = System.currentTimeMillis();
 					}
 				}
-
-				if (totalMatches == MAX_RESULTS) {
-					maxResultsOverflow = true;
-					break;
-				}
+			} finally {
+				if (executor != null)
+					executor.shutdownNow();
 			}
-
 		}
 
 		// Updates the toolbar with the result find info.
@@ -229,6 +217,225 @@ public void run() {
 		});
 	}
 
+	/**
+	 * @return the matches of the chunk or null if the search was canceled
+	 * @throws ExecutionException
+	 *             if the search of the chunk failed
+	 */
+	private int[] waitFor(Future<int[]> chunk) throws ExecutionException {
+		try {
+			while (true) {
+				if (isCanceled())
+					return null;
+				try {
+					return chunk.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// check for cancellation again
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Searches the revisions of one chunk. The result contains the number of
+	 * matches followed by the indexes of the matching revisions.
+	 */
+	private class ChunkSearch implements Callable<int[]> {
+
+		private final int from;
+
+		private final int to;
+
+		private final RawMatcher rawMatcher;
+
+		ChunkSearch(int from, int to) {
+			this.from = from;
+			this.to = to;
+			rawMatcher = rawPattern != null ? new RawMatcher(rawPattern,
+					ignoreCase) : null;
+		}
+
+		public int[] call() {
+			int[] matches = new int[17];
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				if (isCanceled())
+					return null;
+
+				SWTCommit revision = fileRevisions[i];
+				byte[] buffer = revision.getRawBuffer();
+				// the body could not be parsed
+				if (buffer == null)
+					continue;
+
+				boolean found;
+				if (rawMatcher != null
+						&& RawParseUtils.encoding(buffer, 0) < 0)
+					found = matchesRaw(revision, buffer);
+				else
+					found = matches(revision);
+				if (found) {
+					if (++count == matches.length) {
+						int[] newMatches = new int[matches.length * 2];
+						System.arraycopy(matches, 0, newMatches, 0,
+								matches.length);
+						matches = newMatches;
+					}
+					matches[count] = i;
+				}
+			}
+			matches[0] = count;
+			return matches;
+		}
+
+		private boolean matchesRaw(SWTCommit revision, byte[] buffer) {
+			if (findInCommitId && rawMatcher.matchesId(revision))
+				return true;
+
+			if (findInComments && rawMatcher.matchesMessage(buffer))
+				return true;
+
+			if (findInAuthor
+					&& rawMatcher.matchesIdent(buffer,
+							RawParseUtils.author(buffer, 0)))
+				return true;
+
+			if (findInCommitter
+					&& rawMatcher.matchesIdent(buffer,
+							RawParseUtils.committer(buffer, 0)))
+				return true;
+
+			return false;
+		}
+
+		private boolean matches(SWTCommit revision) {
+			if (findInCommitId
+					&& contains(revision.getId().name()))
+				return true;
+
+			if (findInComments && contains(revision.getFullMessage()))
+				return true;
+
+			if (findInAuthor
+					&& (contains(revision.getAuthorIdent().getName()) || contains(revision
+							.getAuthorIdent().getEmailAddress())))
+				return true;
+
+			if (findInCommitter
+					&& (contains(revision.getCommitterIdent().getName()) || contains(revision
+							.getCommitterIdent().getEmailAddress())))
+				return true;
+
+			return false;
+		}
+
+		private boolean contains(String value) {
+			if (value == null)
+				return false;
+			if (ignoreCase)
+				value = value.toLowerCase();
+			return value.indexOf(findPattern) != -1;
+		}
+	}
+
+	/**
+	 * Matches an ASCII pattern against the raw buffer of a commit. Instances
+	 * are not thread safe.
+	 */
+	static class RawMatcher {
+
+		private final byte[] pattern;
+
+		private final boolean ignoreCase;
+
+		// buffer for the hex representation of commit ids
+		private final byte[] idBuffer = new byte[Constants.OBJECT_ID_STRING_LENGTH];
+
+		/**
+		 * @param pattern
+		 *            the ASCII pattern, in lower case if the case is ignored
+		 * @param ignoreCase
+		 */
+		RawMatcher(byte[] pattern, boolean ignoreCase) {
+			this.pattern = pattern;
+			this.ignoreCase = ignoreCase;
+		}
+
+		boolean matchesId(AnyObjectId id) {
+			id.copyTo(idBuffer, 0);
+			return indexOf(idBuffer, 0, idBuffer.length) >= 0;
+		}
+
+		boolean matchesMessage(byte[] buffer) {
+			int start = RawParseUtils.commitMessage(buffer, 0);
+			return start >= 0 && indexOf(buffer, start, buffer.length) >= 0;
+		}
+
+		/**
+		 * Matches name and email of the identity starting at
+		 * <code>nameStart</code> ("name &lt;email&gt; time zone")
+		 */
+		boolean matchesIdent(byte[] buffer, int nameStart) {
+			if (nameStart < 0)
+				return false;
+			int lineEnd = RawParseUtils.nextLF(buffer, nameStart);
+			int emailStart = RawParseUtils.nextLF(buffer, nameStart, '<');
+			if (emailStart >= lineEnd || buffer[emailStart - 1] != '<')
+				return false;
+			int nameEnd = emailStart - 1;
+			while (nameEnd > nameStart && buffer[nameEnd - 1] == ' ')
+				nameEnd--;
+			if (indexOf(buffer, nameStart, nameEnd) >= 0)
+				return true;
+			int emailEnd = RawParseUtils.nextLF(buffer, emailStart, '>') - 1;
+			return emailEnd > emailStart
+					&& buffer[emailEnd] == '>'
+					&& indexOf(buffer, emailStart, emailEnd) >= 0;
+		}
+
+		/**
+		 * Finds the pattern in <code>buffer[start, end)</code>, ignoring the
+		 * case of ASCII letters if requested
+		 */
+		int indexOf(byte[] buffer, int start, int end) {
+			byte[] p = pattern;
+			int last = end - p.length;
+			outer: for (int i = start; i <= last; i++) {
+				for (int j = 0; j < p.length; j++) {
+					byte b = buffer[i + j];
+					if (ignoreCase && b >= 'A' && b <= 'Z')
+						b += 'a' - 'A';
+					if (b != p[j])
+						continue outer;
+				}
+				return i;
+			}
+			return -1;
+		}
+	}
+
+	private class WorkerFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, getName() + "-" //$NON-NLS-1$
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static boolean isAscii(String value) {
+		for (int i = 0; i < value.length(); i++)
+			if (value.charAt(i) >= 0x80)
+				return false;
+		return true;
+	}
+
 	static void updateGlobalThreadIx() {
 		++globalThreadIx;
 	}
@@ -15,11 +15,11 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.internal.history;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -176,19 +176,18 @@ public boolean performFinish() {
 				public void run(IProgressMonitor monitor)
 						throws InvocationTargetException {
 					try {
-						operation.execute(monitor);
-
-						String content = operation.getPatchContent();
 						if (file != null) {
-							writeToFile(file, content);
+							writeToFile(file, operation, monitor);
 							IFile[] files = ResourcesPlugin.getWorkspace()
 									.getRoot()
 									.findFilesForLocationURI(file.toURI());
 							for (int i = 0; i < files.length; i++)
 								files[i].refreshLocal(IResource.DEPTH_ZERO,
 										monitor);
-						} else
-							copyToClipboard(content);
+						} else {
+							operation.execute(monitor);
+							copyToClipboard(operation.getPatchContent());
+						}
 					} catch (IOException e) {
 						throw new InvocationTargetException(e);
 					} catch (CoreException e) {
@@ -246,13 +245,14 @@ private TreeFilter createPathFilter(final Collection<? extends IResource> rs) {
 		return PathFilterGroup.create(filters);
 	}
 
-	private void writeToFile(final File file, String content)
-			throws IOException {
-		Writer output = new BufferedWriter(new FileWriter(file));
+	private void writeToFile(final File file,
+			CreatePatchOperation operation, IProgressMonitor monitor)
+			throws IOException, CoreException {
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(
+				file));
 		try {
-			// FileWriter always assumes default encoding is
-			// OK!
-			output.write(content);
+			operation.setOutputStream(output);
+			operation.execute(monitor);
 		} finally {
 			output.close();
 		}
@@ -9,7 +9,6 @@
 package org.eclipse.egit.ui.internal.operations;
 
 import java.util.Collection;
-import java.util.Map;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -17,14 +16,10 @@
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
-import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
-import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
-import org.eclipse.egit.core.internal.util.ResourceUtil;
 import org.eclipse.egit.core.op.IgnoreOperation;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.decorators.GitLightweightDecorator;
-import org.eclipse.jgit.lib.Repository;
 
 /**
  * UI for ignoring paths (both resources that are part of projects and
@@ -59,8 +54,10 @@ protected IStatus run(IProgressMonitor monitor) {
 					return Activator.createErrorStatus(e.getStatus()
 							.getMessage(), e);
 				}
+				// the operation refreshes the index diff, but decorators
+				// are not updated without a resource change event
 				if (operation.isGitignoreOutsideWSChanged())
-					refresh();
+					GitLightweightDecorator.refresh();
 				return Status.OK_STATUS;
 			}
 		};
@@ -68,16 +65,4 @@ protected IStatus run(IProgressMonitor monitor) {
 		job.setRule(operation.getSchedulingRule());
 		job.schedule();
 	}
-
-	private void refresh() {
-		Map<Repository, Collection<String>> pathsByRepository =
-				ResourceUtil.splitPathsByRepository(paths);
-		for (Repository repository : pathsByRepository.keySet()) {
-			IndexDiffCache cache = org.eclipse.egit.core.Activator.getDefault().getIndexDiffCache();
-			IndexDiffCacheEntry entry = cache.getIndexDiffCacheEntry(repository);
-			if (entry != null)
-				entry.refresh();
-		}
-		GitLightweightDecorator.refresh();
-	}
 }
@@ -0,0 +1,434 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Tasktop Technologies and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Persistent index of the commit meta data searched by
+ * {@link CommitSearchQuery}.
+ * <p>
+ * The index of a repository contains one record per commit reachable from
+ * the indexed tips, i.e. either HEAD or all local and remote tracking
+ * branches. A record contains the commit id, the tree and parent ids, author
+ * and committer names and emails and the full message. Searching the index
+ * only reads this file sequentially, commits don't have to be parsed and are
+ * not kept in memory.
+ * <p>
+ * The index is updated from the tips: commits reachable from the new tips
+ * but not from the indexed tips are appended. If an indexed tip is no longer
+ * reachable (e.g. a branch was deleted or rewritten), the index is rebuilt.
+ * <p>
+ * The index objects only serialize the access to the index files, they are
+ * kept as long as the repository is referenced and don't reference the
+ * repository themselves.
+ */
+class CommitIndex {
+
+	private static final int MAGIC = 0x45474349; // "EGCI"
+
+	private static final int VERSION = 1;
+
+	private static final String TIPS_SUFFIX = ".tips"; //$NON-NLS-1$
+
+	private static final Map<Repository, CommitIndex[]> indexes = new WeakHashMap<Repository, CommitIndex[]>();
+
+	/**
+	 * Meta data of one commit
+	 */
+	static class Entry {
+
+		final ObjectId id;
+
+		final ObjectId tree;
+
+		final ObjectId[] parents;
+
+		final String authorName;
+
+		final String authorEmail;
+
+		final String committerName;
+
+		final String committerEmail;
+
+		final String message;
+
+		Entry(ObjectId id, ObjectId tree, ObjectId[] parents,
+				String authorName, String authorEmail, String committerName,
+				String committerEmail, String message) {
+			this.id = id;
+			this.tree = tree;
+			this.parents = parents;
+			this.authorName = authorName;
+			this.authorEmail = authorEmail;
+			this.committerName = committerName;
+			this.committerEmail = committerEmail;
+			this.message = message;
+		}
+
+		/**
+		 * @param id
+		 *            the id of the commit
+		 * @param commit
+		 *            the parsed commit
+		 * @return the entry
+		 */
+		static Entry create(ObjectId id, RevCommit commit) {
+			ObjectId[] parents = new ObjectId[commit.getParentCount()];
+			for (int i = 0; i < parents.length; i++)
+				parents[i] = commit.getParent(i).copy();
+			PersonIdent author = commit.getAuthorIdent();
+			PersonIdent committer = commit.getCommitterIdent();
+			return new Entry(id.copy(), commit.getTree().copy(), parents,
+					author != null ? author.getName() : null,
+					author != null ? author.getEmailAddress() : null,
+					committer != null ? committer.getName() : null,
+					committer != null ? committer.getEmailAddress() : null,
+					commit.getFullMessage());
+		}
+	}
+
+	/**
+	 * Receives the entries of the index
+	 */
+	interface Visitor {
+
+		/**
+		 * @param entry
+		 */
+		void visit(Entry entry);
+	}
+
+	private final boolean allBranches;
+
+	private final File file;
+
+	private final File tipsFile;
+
+	/**
+	 * Brings the index of the repository up to date with the current tips
+	 * and passes every indexed commit to the visitor
+	 *
+	 * @param repository
+	 * @param allBranches
+	 *            true if all branches are indexed, false if only HEAD is
+	 *            indexed
+	 * @param directory
+	 *            directory containing the index files
+	 * @param visitor
+	 * @param monitor
+	 * @throws IOException
+	 * @throws OperationCanceledException
+	 *             if the monitor is canceled
+	 */
+	static void search(Repository repository, boolean allBranches,
+			File directory, Visitor visitor, IProgressMonitor monitor)
+			throws IOException {
+		get(repository, allBranches, directory).searchIndex(repository,
+				visitor, monitor);
+	}
+
+	private static CommitIndex get(Repository repository,
+			boolean allBranches, File directory) {
+		int type = allBranches ? 1 : 0;
+		synchronized (indexes) {
+			CommitIndex[] repositoryIndexes = indexes.get(repository);
+			if (repositoryIndexes == null) {
+				repositoryIndexes = new CommitIndex[2];
+				indexes.put(repository, repositoryIndexes);
+			}
+			CommitIndex index = repositoryIndexes[type];
+			if (index == null || !index.file.getParentFile().equals(directory)) {
+				String key = ObjectId.fromRaw(
+						Constants.newMessageDigest().digest(
+								Constants.encode(repository.getDirectory()
+										.getAbsolutePath()))).name()
+						+ (allBranches ? "-all" : "-head"); //$NON-NLS-1$ //$NON-NLS-2$
+				index = new CommitIndex(allBranches, new File(directory, key));
+				repositoryIndexes[type] = index;
+			}
+			return index;
+		}
+	}
+
+	private CommitIndex(boolean allBranches, File file) {
+		this.allBranches = allBranches;
+		this.file = file;
+		this.tipsFile = new File(file.getPath() + TIPS_SUFFIX);
+	}
+
+	private synchronized void searchIndex(Repository repository,
+			Visitor visitor, IProgressMonitor monitor) throws IOException {
+		update(repository, monitor);
+		try {
+			read(visitor, monitor);
+		} catch (IOException e) {
+			// a broken index is rebuilt on the next search
+			delete();
+			throw e;
+		}
+	}
+
+	private void update(Repository repository, IProgressMonitor monitor)
+			throws IOException {
+		Set<ObjectId> tips = getTips(repository);
+		Set<ObjectId> indexedTips = readTips();
+		if (indexedTips != null && indexedTips.equals(tips))
+			return;
+
+		if (indexedTips == null
+				|| !append(repository, tips, indexedTips, monitor))
+			rebuild(repository, tips, monitor);
+		writeTips(tips);
+	}
+
+	private Set<ObjectId> getTips(Repository repository) throws IOException {
+		Set<ObjectId> tips = new HashSet<ObjectId>();
+		if (allBranches) {
+			for (Ref ref : repository.getRefDatabase()
+					.getRefs(Constants.R_HEADS).values())
+				if (!ref.isSymbolic())
+					tips.add(ref.getObjectId());
+			for (Ref ref : repository.getRefDatabase()
+					.getRefs(Constants.R_REMOTES).values())
+				if (!ref.isSymbolic())
+					tips.add(ref.getObjectId());
+		} else {
+			ObjectId head = repository.resolve(Constants.HEAD);
+			if (head != null)
+				tips.add(head);
+		}
+		return tips;
+	}
+
+	/**
+	 * Appends the commits reachable from the new tips only. The entries are
+	 * written while walking, if the index has to be rebuilt afterwards the
+	 * file is replaced anyway.
+	 *
+	 * @return false if an indexed tip isn't reachable from the new tips
+	 *         anymore and the index has to be rebuilt
+	 */
+	private boolean append(Repository repository, Set<ObjectId> tips,
+			Set<ObjectId> indexedTips, IProgressMonitor monitor)
+			throws IOException {
+		Set<ObjectId> unreachedTips = new HashSet<ObjectId>(indexedTips);
+		unreachedTips.removeAll(tips);
+		RevWalk walk = new RevWalk(repository);
+		DataOutputStream out = null;
+		try {
+			for (ObjectId tip : tips)
+				walk.markStart(walk.parseCommit(tip));
+			for (ObjectId tip : indexedTips)
+				walk.markUninteresting(walk.parseCommit(tip));
+			// the tips are written after the new entries, without tips the
+			// index is rebuilt
+			delete(tipsFile);
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file, true)));
+			writeEntries(walk, out, unreachedTips, monitor);
+		} catch (MissingObjectException e) {
+			return false;
+		} finally {
+			if (out != null)
+				out.close();
+			walk.release();
+		}
+		return unreachedTips.isEmpty();
+	}
+
+	private void rebuild(Repository repository, Set<ObjectId> tips,
+			IProgressMonitor monitor) throws IOException {
+		delete();
+		File parent = file.getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs())
+			throw new IOException(parent.getPath());
+
+		RevWalk walk = new RevWalk(repository);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		boolean written = false;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (ObjectId tip : tips)
+				walk.markStart(walk.parseCommit(tip));
+			writeEntries(walk, out, new HashSet<ObjectId>(), monitor);
+			written = true;
+		} finally {
+			out.close();
+			walk.release();
+			if (!written)
+				delete();
+		}
+	}
+
+	/**
+	 * Writes the entries of all commits of the walk
+	 *
+	 * @param unreachedTips
+	 *            the parents of the written commits are removed from this set
+	 */
+	private static void writeEntries(RevWalk walk, DataOutputStream out,
+			Set<ObjectId> unreachedTips, IProgressMonitor monitor)
+			throws IOException {
+		// the bodies of all commits would not fit into memory, each body is
+		// parsed separately
+		walk.setRetainBody(false);
+		ObjectReader reader = walk.getObjectReader();
+		for (RevCommit commit : walk) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			byte[] raw = reader.open(commit, Constants.OBJ_COMMIT)
+					.getCachedBytes();
+			write(out, Entry.create(commit, RevCommit.parse(walk, raw)));
+			for (RevCommit parent : commit.getParents())
+				unreachedTips.remove(parent);
+		}
+	}
+
+	private void read(Visitor visitor, IProgressMonitor monitor)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file.getPath());
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			while (true) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				try {
+					in.readFully(raw);
+				} catch (EOFException e) {
+					break;
+				}
+				ObjectId id = ObjectId.fromRaw(raw);
+				ObjectId tree = readObjectId(in, raw);
+				ObjectId[] parents = new ObjectId[in.readUnsignedByte()];
+				for (int i = 0; i < parents.length; i++)
+					parents[i] = readObjectId(in, raw);
+				visitor.visit(new Entry(id, tree, parents, readString(in),
+						readString(in), readString(in), readString(in),
+						readString(in)));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void write(DataOutputStream out, Entry entry)
+			throws IOException {
+		entry.id.copyRawTo(out);
+		entry.tree.copyRawTo(out);
+		// more parents are not supported by the index
+		int parents = Math.min(entry.parents.length, 255);
+		out.writeByte(parents);
+		for (int i = 0; i < parents; i++)
+			entry.parents[i].copyRawTo(out);
+		writeString(out, entry.authorName);
+		writeString(out, entry.authorEmail);
+		writeString(out, entry.committerName);
+		writeString(out, entry.committerEmail);
+		writeString(out, entry.message);
+	}
+
+	private static ObjectId readObjectId(DataInputStream in, byte[] raw)
+			throws IOException {
+		in.readFully(raw);
+		return ObjectId.fromRaw(raw);
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = Constants.encode(value);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return RawParseUtils.decode(bytes);
+	}
+
+	private Set<ObjectId> readTips() throws IOException {
+		if (!tipsFile.isFile() || !file.isFile())
+			return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(tipsFile)));
+		try {
+			Set<ObjectId> tips = new HashSet<ObjectId>();
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+				tips.add(readObjectId(in, raw));
+			return tips;
+		} catch (EOFException e) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeTips(Set<ObjectId> tips) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tipsFile)));
+		try {
+			out.writeInt(tips.size());
+			for (ObjectId tip : tips)
+				tip.copyRawTo(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void delete() throws IOException {
+		delete(tipsFile);
+		delete(file);
+	}
+
+	private static void delete(File toDelete) throws IOException {
+		if (toDelete.exists() && !toDelete.delete())
+			throw new IOException(toDelete.getPath());
+	}
+}
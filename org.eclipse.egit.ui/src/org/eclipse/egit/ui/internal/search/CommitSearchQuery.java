@@ -13,8 +13,17 @@
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -24,27 +33,25 @@
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.commit.RepositoryCommit;
-import org.eclipse.jgit.lib.Constants;
+import org.eclipse.egit.ui.internal.search.CommitIndex.Entry;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.PersonIdent;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.search.ui.ISearchQuery;
 import org.eclipse.search.ui.ISearchResult;
 
 /**
- * Commit search query class that runs a {@link RevWalk} for all
- * {@link Repository} objects included in the {@link CommitSearchSettings} and
- * matches all {@link RevCommit} objects against the search settings.
+ * Commit search query class that matches the {@link CommitIndex} of all
+ * {@link Repository} objects included in the {@link CommitSearchSettings}
+ * against the search settings. Only matching commits are parsed as
+ * {@link RevCommit} objects.
  */
 public class CommitSearchQuery implements ISearchQuery {
 
 	private abstract class SearchMatcher {
 
-		abstract boolean matches(Pattern pattern, RevCommit commit);
+		abstract boolean matches(Pattern pattern, Entry commit);
 
 		protected boolean matches(Pattern pattern, String input) {
 			return input != null && input.length() > 0
@@ -55,55 +62,46 @@ protected boolean matches(Pattern pattern, String input) {
 
 	private class AuthorMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			PersonIdent author = commit.getAuthorIdent();
-			if (author != null)
-				return matches(pattern, author.getName())
-						|| matches(pattern, author.getEmailAddress());
-			else
-				return false;
+		public boolean matches(Pattern pattern, Entry commit) {
+			return matches(pattern, commit.authorName)
+					|| matches(pattern, commit.authorEmail);
 		}
 	}
 
 	private class CommitterMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			PersonIdent committer = commit.getCommitterIdent();
-			if (committer != null)
-				return matches(pattern, committer.getName())
-						|| matches(pattern, committer.getEmailAddress());
-			else
-				return false;
+		public boolean matches(Pattern pattern, Entry commit) {
+			return matches(pattern, commit.committerName)
+					|| matches(pattern, commit.committerEmail);
 		}
 	}
 
 	private class MessageMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			return matches(pattern, commit.getFullMessage());
+		public boolean matches(Pattern pattern, Entry commit) {
+			return matches(pattern, commit.message);
 		}
 	}
 
 	private class CommitNameMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			return matches(pattern, commit.name());
+		public boolean matches(Pattern pattern, Entry commit) {
+			return matches(pattern, commit.id.name());
 		}
 
 	}
 
 	private class TreeMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			RevTree tree = commit.getTree();
-			return tree != null ? matches(pattern, tree.name()) : false;
+		public boolean matches(Pattern pattern, Entry commit) {
+			return matches(pattern, commit.tree.name());
 		}
 	}
 
 	private class ParentMatcher extends SearchMatcher {
 
-		public boolean matches(Pattern pattern, RevCommit commit) {
-			for (RevCommit parent : commit.getParents())
+		public boolean matches(Pattern pattern, Entry commit) {
+			for (ObjectId parent : commit.parents)
 				if (matches(pattern, parent.name()))
 					return true;
 			return false;
@@ -111,6 +109,12 @@ public boolean matches(Pattern pattern, RevCommit commit) {
 
 	}
 
+	private static final int MAX_PARALLEL_SEARCHES = 4;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private static final String INDEX_FOLDER = "commitIndex"; //$NON-NLS-1$
+
 	private CommitSearchResult result = new CommitSearchResult(this);
 
 	private CommitSearchSettings settings;
@@ -158,73 +162,121 @@ private Repository getRepository(String name) throws IOException {
 	}
 
 	/**
+	 * Searches the repositories, up to {@link #MAX_PARALLEL_SEARCHES}
+	 * repositories are searched concurrently.
+	 *
 	 * @see org.eclipse.search.ui.ISearchQuery#run(org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public IStatus run(IProgressMonitor monitor)
+	public IStatus run(final IProgressMonitor monitor)
 			throws OperationCanceledException {
 		this.result.removeAll();
 
-		Pattern pattern = PatternUtils.createPattern(
+		final Pattern pattern = PatternUtils.createPattern(
 				this.settings.getTextPattern(),
 				this.settings.isCaseSensitive(), this.settings.isRegExSearch());
-		List<String> paths = settings.getRepositories();
+		List<Repository> repositories = new ArrayList<Repository>();
 		try {
-			for (String path : paths) {
-				if (monitor.isCanceled())
-					throw new OperationCanceledException();
-
+			for (String path : settings.getRepositories()) {
 				Repository repo = getRepository(path);
-				if (repo == null)
-					continue;
+				if (repo != null)
+					repositories.add(repo);
+			}
+		} catch (IOException e) {
+			org.eclipse.egit.ui.Activator.handleError(
+					"Error searching commits", e, true); //$NON-NLS-1$
+			return Status.OK_STATUS;
+		}
 
+		if (repositories.size() <= 1) {
+			for (Repository repo : repositories) {
 				monitor.setTaskName(MessageFormat.format(
 						UIText.CommitSearchQuery_TaskSearchCommits, repo
 								.getDirectory().getParentFile().getName()));
-				walkRepository(repo, pattern, monitor);
+				try {
+					searchRepository(repo, pattern, monitor);
+				} catch (IOException e) {
+					org.eclipse.egit.ui.Activator.handleError(
+							"Error searching commits", e, true); //$NON-NLS-1$
+				}
 			}
-		} catch (IOException e) {
-			org.eclipse.egit.ui.Activator.handleError(
-					"Error searching commits", e, true); //$NON-NLS-1$
+			return Status.OK_STATUS;
+		}
+
+		monitor.beginTask(getLabel(), repositories.size());
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.min(repositories.size(), MAX_PARALLEL_SEARCHES));
+		CompletionService<Object> searches = new ExecutorCompletionService<Object>(
+				executor);
+		try {
+			for (final Repository repo : repositories)
+				searches.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						searchRepository(repo, pattern, monitor);
+						return null;
+					}
+				});
+
+			int pending = repositories.size();
+			while (pending > 0) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				Future<Object> search = searches.poll(POLL_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (search == null)
+					continue;
+				pending--;
+				try {
+					search.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof OperationCanceledException)
+						throw (OperationCanceledException) e.getCause();
+					org.eclipse.egit.ui.Activator.handleError(
+							"Error searching commits", e.getCause(), true); //$NON-NLS-1$
+				}
+				monitor.worked(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} finally {
+			executor.shutdownNow();
+			monitor.done();
 		}
 		return Status.OK_STATUS;
 	}
 
-	private void walkRepository(Repository repository, Pattern pattern,
-			IProgressMonitor monitor) throws IOException {
+	/**
+	 * Searches the commit index of the repository. The monitor is only
+	 * checked for cancellation as this may run in parallel to the searches
+	 * of other repositories.
+	 */
+	private void searchRepository(final Repository repository,
+			final Pattern pattern, IProgressMonitor monitor)
+			throws IOException {
+		final List<ObjectId> matches = new ArrayList<ObjectId>();
+		File directory = org.eclipse.egit.ui.Activator.getDefault()
+				.getStateLocation().append(INDEX_FOLDER).toFile();
+		CommitIndex.search(repository, settings.isAllBranches(), directory,
+				new CommitIndex.Visitor() {
+					public void visit(Entry commit) {
+						for (SearchMatcher matcher : matchers)
+							if (matcher.matches(pattern, commit)) {
+								matches.add(commit.id);
+								break;
+							}
+					}
+				}, monitor);
+
 		RevWalk walk = new RevWalk(repository);
 		try {
-			walk.setRetainBody(true);
-			List<RevCommit> commits = new LinkedList<RevCommit>();
-			if (this.settings.isAllBranches()) {
-				for (Ref ref : repository.getRefDatabase()
-						.getRefs(Constants.R_HEADS).values())
-					if (!ref.isSymbolic())
-						commits.add(walk.parseCommit(ref.getObjectId()));
-				for (Ref ref : repository.getRefDatabase()
-						.getRefs(Constants.R_REMOTES).values())
-					if (!ref.isSymbolic())
-						commits.add(walk.parseCommit(ref.getObjectId()));
-			} else {
-				ObjectId headCommit = repository.resolve(Constants.HEAD);
-				if (headCommit != null)
-					commits.add(walk.parseCommit(headCommit));
-			}
-
-			if (!commits.isEmpty()) {
-				walk.markStart(commits);
-				for (RevCommit commit : walk) {
-					if (monitor.isCanceled())
-						throw new OperationCanceledException();
-					for (SearchMatcher matcher : this.matchers)
-						if (matcher.matches(pattern, commit)) {
-							result.addResult(new RepositoryCommit(repository,
-									commit));
-							break;
-						}
-				}
+			for (ObjectId id : matches) {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				result.addResult(new RepositoryCommit(repository, walk
+						.parseCommit(id)));
 			}
 		} finally {
-			walk.dispose();
+			walk.release();
 		}
 	}
 
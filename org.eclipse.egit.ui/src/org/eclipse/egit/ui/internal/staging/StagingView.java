@@ -183,6 +183,10 @@ public class StagingView extends ViewPart implements IShowInSource {
 
 	private TableViewer stagedTableViewer;
 
+	private StagingViewContentProvider unstagedContentProvider;
+
+	private StagingViewContentProvider stagedContentProvider;
+
 	private TableViewer unstagedTableViewer;
 
 	private ToggleableWarningLabel warningLabel;
@@ -205,6 +209,8 @@ static class StagingViewUpdate {
 		Repository repository;
 		IndexDiffData indexDiff;
 		Collection<String> changedResources;
+		private String[] unstagedPaths;
+		private String[] stagedPaths;
 
 		StagingViewUpdate(Repository theRepository,
 				IndexDiffData theIndexDiff, Collection<String> theChanges) {
@@ -212,6 +218,36 @@ static class StagingViewUpdate {
 			this.indexDiff = theIndexDiff;
 			this.changedResources = theChanges;
 		}
+
+		/**
+		 * @param workspace
+		 *            true for the unstaged, false for the staged paths
+		 * @return the sorted paths of the entries of the index diff
+		 */
+		synchronized String[] getSortedPaths(boolean workspace) {
+			if (workspace) {
+				if (unstagedPaths == null)
+					unstagedPaths = StagingViewContentProvider.getSortedPaths(
+							indexDiff, true);
+				return unstagedPaths;
+			}
+			if (stagedPaths == null)
+				stagedPaths = StagingViewContentProvider.getSortedPaths(
+						indexDiff, false);
+			return stagedPaths;
+		}
+
+		/**
+		 * Sorts the paths of both tables in advance, outside of the
+		 * UI-thread, if the update will replace all entries
+		 */
+		void prepare() {
+			if (indexDiff != null
+					&& (changedResources == null || changedResources.size() > StagingViewContentProvider.MAX_DELTA_SIZE)) {
+				getSortedPaths(true);
+				getSortedPaths(false);
+			}
+		}
 	}
 
 	static class StagingDragListener extends DragSourceAdapter {
@@ -300,7 +336,7 @@ public void preferenceChange(PreferenceChangeEvent event) {
 	private IndexDiffChangedListener myIndexDiffListener = new IndexDiffChangedListener() {
 		public void indexDiffChanged(Repository repository,
 				IndexDiffData indexDiffData) {
-			reload(repository);
+			reload(repository, indexDiffData);
 		}
 	};
 
@@ -356,15 +392,17 @@ public void widgetDisposed(DisposeEvent e) {
 				.applyTo(unstagedTableComposite);
 
 		unstagedTableViewer = new TableViewer(toolkit.createTable(
-				unstagedTableComposite, SWT.FULL_SELECTION | SWT.MULTI));
+				unstagedTableComposite, SWT.FULL_SELECTION | SWT.MULTI
+						| SWT.VIRTUAL));
 		GridDataFactory.fillDefaults().grab(true, true)
 				.applyTo(unstagedTableViewer.getControl());
 		unstagedTableViewer.getTable().setData(FormToolkit.KEY_DRAW_BORDER,
 				FormToolkit.TREE_BORDER);
 		unstagedTableViewer.getTable().setLinesVisible(true);
 		unstagedTableViewer.setLabelProvider(createLabelProvider(unstagedTableViewer));
-		unstagedTableViewer.setContentProvider(new StagingViewContentProvider(
-				true));
+		unstagedContentProvider = new StagingViewContentProvider(
+				unstagedTableViewer, true);
+		unstagedTableViewer.setContentProvider(unstagedContentProvider);
 		unstagedTableViewer.addDragSupport(DND.DROP_MOVE | DND.DROP_COPY
 				| DND.DROP_LINK,
 				new Transfer[] { LocalSelectionTransfer.getTransfer(),
@@ -512,15 +550,17 @@ public void widgetSelected(SelectionEvent e) {
 				.applyTo(stagedTableComposite);
 
 		stagedTableViewer = new TableViewer(toolkit.createTable(
-				stagedTableComposite, SWT.FULL_SELECTION | SWT.MULTI));
+				stagedTableComposite, SWT.FULL_SELECTION | SWT.MULTI
+						| SWT.VIRTUAL));
 		GridDataFactory.fillDefaults().grab(true, true)
 				.applyTo(stagedTableViewer.getControl());
 		stagedTableViewer.getTable().setData(FormToolkit.KEY_DRAW_BORDER,
 				FormToolkit.TREE_BORDER);
 		stagedTableViewer.getTable().setLinesVisible(true);
 		stagedTableViewer.setLabelProvider(createLabelProvider(stagedTableViewer));
-		stagedTableViewer.setContentProvider(new StagingViewContentProvider(
-				false));
+		stagedContentProvider = new StagingViewContentProvider(
+				stagedTableViewer, false);
+		stagedTableViewer.setContentProvider(stagedContentProvider);
 		stagedTableViewer.addDragSupport(
 				DND.DROP_MOVE | DND.DROP_COPY | DND.DROP_LINK,
 				new Transfer[] { LocalSelectionTransfer.getTransfer(),
@@ -835,7 +875,10 @@ private StagingViewLabelProvider getLabelProvider(ContentViewer viewer) {
 	}
 
 	private StagingViewContentProvider getContentProvider(ContentViewer viewer) {
-		return (StagingViewContentProvider) viewer.getContentProvider();
+		if (viewer == stagedTableViewer)
+			return stagedContentProvider;
+		else
+			return unstagedContentProvider;
 	}
 
 	private void updateSectionText() {
@@ -1361,14 +1404,26 @@ private void clearRepository() {
 		saveCommitMessageComponentState();
 		currentRepository = null;
 		StagingViewUpdate update = new StagingViewUpdate(null, null, null);
-		unstagedTableViewer.setInput(update);
-		stagedTableViewer.setInput(update);
+		unstagedContentProvider.setInput(update);
+		stagedContentProvider.setInput(update);
 		enableCommitWidgets(false);
 		updateSectionText();
 		form.setText(UIText.StagingView_NoSelectionTitle);
 	}
 
 	private void reload(final Repository repository) {
+		reload(repository, null);
+	}
+
+	/**
+	 * @param repository
+	 * @param changedIndexDiff
+	 *            the index diff of a change notification, if only the entries
+	 *            of its changed paths need to be updated; or null to reload
+	 *            all entries
+	 */
+	private void reload(final Repository repository,
+			final IndexDiffData changedIndexDiff) {
 		if (form.isDisposed())
 			return;
 		if (repository == null) {
@@ -1384,6 +1439,13 @@ public void run() {
 			return;
 
 		final boolean repositoryChanged = currentRepository != repository;
+		final StagingViewUpdate changeUpdate;
+		if (changedIndexDiff != null) {
+			changeUpdate = new StagingViewUpdate(repository, changedIndexDiff,
+					changedIndexDiff.getChangedPaths());
+			changeUpdate.prepare();
+		} else
+			changeUpdate = null;
 
 		asyncExec(new Runnable() {
 			public void run() {
@@ -1394,9 +1456,14 @@ public void run() {
 
 				boolean indexDiffAvailable = indexDiff !=  null;
 
-				final StagingViewUpdate update = new StagingViewUpdate(currentRepository, indexDiff, null);
-				unstagedTableViewer.setInput(update);
-				stagedTableViewer.setInput(update);
+				if (!repositoryChanged && changeUpdate != null) {
+					unstagedContentProvider.update(changeUpdate);
+					stagedContentProvider.update(changeUpdate);
+				} else {
+					final StagingViewUpdate update = new StagingViewUpdate(currentRepository, indexDiff, null);
+					unstagedContentProvider.setInput(update);
+					stagedContentProvider.setInput(update);
+				}
 				enableCommitWidgets(indexDiffAvailable);
 				boolean commitEnabled =
 						indexDiffAvailable && repository.getRepositoryState().canCommit();
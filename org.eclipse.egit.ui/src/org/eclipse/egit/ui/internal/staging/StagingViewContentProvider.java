@@ -17,30 +17,81 @@
 import static org.eclipse.egit.ui.internal.staging.StagingEntry.State.REMOVED;
 import static org.eclipse.egit.ui.internal.staging.StagingEntry.State.UNTRACKED;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
 import org.eclipse.egit.ui.Activator;
+import org.eclipse.egit.ui.UIPreferences;
 import org.eclipse.egit.ui.UIText;
+import org.eclipse.egit.ui.internal.staging.StagingEntry.State;
 import org.eclipse.egit.ui.internal.staging.StagingView.StagingViewUpdate;
+import org.eclipse.jface.viewers.ILazyContentProvider;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileSnapshot;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 
 /**
  * ContentProvider for staged and unstaged table nodes
+ * <p>
+ * The entries are kept sorted by path. A {@link StagingViewUpdate} with
+ * changed paths only replaces the entries of these paths and passes the
+ * differences to the table viewer, instead of rebuilding and refreshing the
+ * whole table.
+ * <p>
+ * If there are more entries than configured by
+ * {@link UIPreferences#STAGING_VIEW_VIRTUAL_TABLE_THRESHOLD}, the (virtual)
+ * table viewer is switched to a lazy content provider, which only passes the
+ * entries of the visible rows to the viewer.
  */
 public class StagingViewContentProvider implements
 		IStructuredContentProvider {
+
+	/**
+	 * Maximum number of changed paths which are updated one by one, larger
+	 * updates refresh the whole table
+	 */
+	static final int MAX_DELTA_SIZE = 1000;
+
 	private StagingEntry[] content = new StagingEntry[0];
 	private boolean isWorkspace;
 
-	StagingViewContentProvider(boolean workspace) {
+	private final TableViewer viewer;
+
+	private final LazyContentProvider lazyProvider = new LazyContentProvider();
+
+	private boolean lazy;
+
+	private boolean switching;
+
+	private Repository repository;
+
+	private Set<String> submodules = Collections.emptySet();
+
+	private FileSnapshot indexSnapshot;
+
+	private FileSnapshot modulesSnapshot;
+
+	/**
+	 * @param viewer
+	 *            the viewer showing the entries, its table must have the
+	 *            {@link org.eclipse.swt.SWT#VIRTUAL} style
+	 * @param workspace
+	 *            true for the unstaged, false for the staged entries
+	 */
+	StagingViewContentProvider(TableViewer viewer, boolean workspace) {
+		this.viewer = viewer;
 		this.isWorkspace = workspace;
 	}
 
@@ -52,71 +103,330 @@ StagingEntry[] getStagingEntries() {
 		return content;
 	}
 
-	public void inputChanged(Viewer viewer, Object oldInput,
+	public void inputChanged(Viewer theViewer, Object oldInput,
 			Object newInput) {
-		if (!(newInput instanceof StagingViewUpdate))
+		if (switching || !(newInput instanceof StagingViewUpdate))
 			return;
 
 		StagingViewUpdate update = (StagingViewUpdate) newInput;
 
 		if (update.repository == null || update.indexDiff == null) {
 			content = new StagingEntry[0];
+			setRepository(null);
+		} else {
+			setRepository(update.repository);
+			updateSubmodules();
+
+			final IndexDiffData indexDiff = update.indexDiff;
+			String[] paths = update.getSortedPaths(isWorkspace);
+			StagingEntry[] nodes = new StagingEntry[paths.length];
+			for (int i = 0; i < paths.length; i++)
+				nodes[i] = createEntry(paths[i], getState(indexDiff, paths[i]));
+			content = nodes;
+		}
+
+		if (lazy)
+			viewer.setItemCount(content.length);
+	}
+
+	/**
+	 * Sets the update as new input of the viewer, replacing all entries.
+	 * <p>
+	 * This method must be called from the UI-thread
+	 *
+	 * @param update
+	 */
+	void setInput(StagingViewUpdate update) {
+		setLazy(update.repository != null && update.indexDiff != null
+				&& update.getSortedPaths(isWorkspace).length > getVirtualThreshold());
+		viewer.setInput(update);
+	}
+
+	/**
+	 * @param indexDiff
+	 * @param workspace
+	 *            true for the unstaged, false for the staged paths
+	 * @return the sorted paths of the entries of the index diff
+	 */
+	static String[] getSortedPaths(IndexDiffData indexDiff, boolean workspace) {
+		Set<String> paths = new HashSet<String>();
+		if (workspace) {
+			paths.addAll(indexDiff.getMissing());
+			paths.addAll(indexDiff.getModified());
+			paths.addAll(indexDiff.getUntracked());
+			paths.addAll(indexDiff.getConflicting());
+		} else {
+			paths.addAll(indexDiff.getAdded());
+			paths.addAll(indexDiff.getChanged());
+			paths.addAll(indexDiff.getRemoved());
+		}
+		String[] sorted = paths.toArray(new String[paths.size()]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Updates the entries of the changed paths of the update and the table
+	 * viewer showing them. Falls back to setting the update as new input of
+	 * the viewer if the update is for another repository or its changed
+	 * paths are unknown.
+	 * <p>
+	 * This method must be called from the UI-thread
+	 *
+	 * @param update
+	 */
+	void update(StagingViewUpdate update) {
+		Collection<String> changedPaths = update.changedResources;
+		if (update.repository == null || update.repository != repository
+				|| update.indexDiff == null || changedPaths == null
+				|| changedPaths.size() > MAX_DELTA_SIZE
+				|| updateSubmodules()) {
+			setInput(update);
 			return;
 		}
+		if (changedPaths.isEmpty())
+			return;
 
-		Set<StagingEntry> nodes = new TreeSet<StagingEntry>(
-				new Comparator<StagingEntry>() {
-					public int compare(StagingEntry o1, StagingEntry o2) {
-						return o1.getPath().compareTo(o2.getPath());
-					}
-				});
-
-		if (update.changedResources != null
-				&& !update.changedResources.isEmpty()) {
-			nodes.addAll(Arrays.asList(content));
-			for (String res : update.changedResources)
-				for (StagingEntry entry : content)
-					if (entry.getPath().equals(res))
-						nodes.remove(entry);
+		String[] paths = changedPaths.toArray(new String[changedPaths.size()]);
+		Arrays.sort(paths);
+		StagingEntry[] entries = new StagingEntry[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			State state = getState(update.indexDiff, paths[i]);
+			if (state != null)
+				entries[i] = createEntry(paths[i], state);
 		}
 
-		final IndexDiffData indexDiff = update.indexDiff;
-		final Repository repository = update.repository;
-		if (isWorkspace) {
-			for (String file : indexDiff.getMissing())
-				nodes.add(new StagingEntry(repository, MISSING, file));
-			for (String file : indexDiff.getModified())
-				if (indexDiff.getChanged().contains(file))
-					nodes.add(new StagingEntry(repository, PARTIALLY_MODIFIED,
-							file));
+		Delta delta = new Delta(content, paths, entries);
+		content = delta.content;
+
+		boolean newLazy = content.length > getVirtualThreshold();
+		if (lazy || newLazy) {
+			// switching back to this provider refreshes the viewer
+			setLazy(newLazy);
+			if (lazy) {
+				// the visible rows are requested again from the lazy provider
+				viewer.setItemCount(content.length);
+				viewer.getTable().clearAll();
+			}
+			return;
+		}
+
+		if (!delta.removed.isEmpty())
+			viewer.remove(delta.removed.toArray());
+		// inserting in ascending order of the final positions places each
+		// entry behind all entries preceding it
+		for (Integer index : delta.added)
+			viewer.insert(content[index.intValue()], index.intValue());
+		for (Integer index : delta.replaced)
+			viewer.replace(content[index.intValue()], index.intValue());
+	}
+
+	private int getVirtualThreshold() {
+		return Activator.getDefault().getPreferenceStore()
+				.getInt(UIPreferences.STAGING_VIEW_VIRTUAL_TABLE_THRESHOLD);
+	}
+
+	/**
+	 * Switches the viewer between this content provider and the lazy content
+	 * provider, without changing the entries
+	 */
+	private void setLazy(boolean newLazy) {
+		if (newLazy == lazy)
+			return;
+		lazy = newLazy;
+		switching = true;
+		try {
+			if (lazy)
+				viewer.setContentProvider(lazyProvider);
+			else
+				viewer.setContentProvider(this);
+		} finally {
+			switching = false;
+		}
+	}
+
+	/**
+	 * The entries resulting from merging the entries of changed paths into
+	 * the sorted entries, and the differences to pass to the viewer
+	 */
+	static class Delta {
+
+		final StagingEntry[] content;
+
+		final List<StagingEntry> removed = new ArrayList<StagingEntry>();
+
+		// final positions of the added and replaced entries
+		final List<Integer> added = new ArrayList<Integer>();
+
+		final List<Integer> replaced = new ArrayList<Integer>();
+
+		/**
+		 * @param oldContent
+		 *            the entries sorted by path
+		 * @param paths
+		 *            the sorted changed paths
+		 * @param entries
+		 *            the new entries of the changed paths, null if a path is
+		 *            no longer shown
+		 */
+		Delta(StagingEntry[] oldContent, String[] paths, StagingEntry[] entries) {
+			List<StagingEntry> nodes = new ArrayList<StagingEntry>(
+					oldContent.length + paths.length);
+			int next = 0;
+			for (int i = 0; i < paths.length; i++) {
+				int pos = indexOf(oldContent, paths[i], next);
+				int insertion = pos >= 0 ? pos : -(pos + 1);
+				nodes.addAll(Arrays.asList(oldContent).subList(next, insertion));
+				next = insertion;
+				StagingEntry old = null;
+				if (pos >= 0)
+					old = oldContent[next++];
+
+				StagingEntry entry = entries[i];
+				if (entry == null) {
+					if (old != null)
+						removed.add(old);
+				} else if (old != null && old.getState() == entry.getState())
+					nodes.add(old);
+				else {
+					if (old != null)
+						replaced.add(Integer.valueOf(nodes.size()));
+					else
+						added.add(Integer.valueOf(nodes.size()));
+					nodes.add(entry);
+				}
+			}
+			nodes.addAll(Arrays.asList(oldContent).subList(next,
+					oldContent.length));
+			content = nodes.toArray(new StagingEntry[nodes.size()]);
+		}
+
+		/**
+		 * Binary search of a path in sorted entries
+		 *
+		 * @param entries
+		 * @param path
+		 * @param from
+		 *            first index to search
+		 * @return the index of the entry of the path or
+		 *         <code>-(insertion point) - 1</code>
+		 */
+		private static int indexOf(StagingEntry[] entries, String path,
+				int from) {
+			int low = from;
+			int high = entries.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = entries[mid].getPath().compareTo(path);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
 				else
-					nodes.add(new StagingEntry(repository, MODIFIED, file));
-			for (String file : indexDiff.getUntracked())
-				nodes.add(new StagingEntry(repository, UNTRACKED, file));
-			for (String file : indexDiff.getConflicting())
-				nodes.add(new StagingEntry(repository, CONFLICTING, file));
+					return mid;
+			}
+			return -(low + 1);
+		}
+	}
+
+	/**
+	 * @return the state of the path shown by this content provider or null
+	 *         if the path is not shown
+	 */
+	private State getState(IndexDiffData indexDiff, String path) {
+		if (isWorkspace) {
+			if (indexDiff.getMissing().contains(path))
+				return MISSING;
+			if (indexDiff.getModified().contains(path))
+				return indexDiff.getChanged().contains(path) ? PARTIALLY_MODIFIED
+						: MODIFIED;
+			if (indexDiff.getUntracked().contains(path))
+				return UNTRACKED;
+			if (indexDiff.getConflicting().contains(path))
+				return CONFLICTING;
 		} else {
-			for (String file : indexDiff.getAdded())
-				nodes.add(new StagingEntry(repository, ADDED, file));
-			for (String file : indexDiff.getChanged())
-				nodes.add(new StagingEntry(repository, CHANGED, file));
-			for (String file : indexDiff.getRemoved())
-				nodes.add(new StagingEntry(repository, REMOVED, file));
+			if (indexDiff.getAdded().contains(path))
+				return ADDED;
+			if (indexDiff.getChanged().contains(path))
+				return CHANGED;
+			if (indexDiff.getRemoved().contains(path))
+				return REMOVED;
 		}
+		return null;
+	}
+
+	private StagingEntry createEntry(String path, State state) {
+		StagingEntry entry = new StagingEntry(repository, state, path);
+		entry.setSubmodule(submodules.contains(path));
+		return entry;
+	}
+
+	private void setRepository(Repository newRepository) {
+		if (newRepository == repository)
+			return;
+		repository = newRepository;
+		submodules = Collections.emptySet();
+		indexSnapshot = null;
+		modulesSnapshot = null;
+	}
 
+	/**
+	 * Reads the submodule paths of the index again if the index or the
+	 * .gitmodules file changed since they were read the last time
+	 *
+	 * @return true if the submodule paths changed
+	 */
+	private boolean updateSubmodules() {
+		File indexFile = repository.getIndexFile();
+		File modulesFile = new File(repository.getWorkTree(),
+				Constants.DOT_GIT_MODULES);
+		if (indexSnapshot != null && !indexSnapshot.isModified(indexFile)
+				&& !modulesSnapshot.isModified(modulesFile))
+			return false;
+		indexSnapshot = FileSnapshot.save(indexFile);
+		modulesSnapshot = FileSnapshot.save(modulesFile);
+
+		Set<String> paths = new HashSet<String>();
 		try {
-		SubmoduleWalk walk = SubmoduleWalk.forIndex(repository);
-		while(walk.next())
-			for (StagingEntry entry : nodes)
-				entry.setSubmodule(entry.getPath().equals(walk.getPath()));
-		} catch(IOException e) {
+			SubmoduleWalk walk = SubmoduleWalk.forIndex(repository);
+			try {
+				while (walk.next())
+					paths.add(walk.getPath());
+			} finally {
+				walk.release();
+			}
+		} catch (IOException e) {
 			Activator.error(UIText.StagingViewContentProvider_SubmoduleError, e);
 		}
-
-		content = nodes.toArray(new StagingEntry[nodes.size()]);
+		if (paths.equals(submodules))
+			return false;
+		submodules = paths;
+		return true;
 	}
 
 	public void dispose() {
 		// nothing to dispose
 	}
+
+	/**
+	 * Content provider used for many entries, it passes the entry of a row to
+	 * the viewer when the row becomes visible
+	 */
+	private class LazyContentProvider implements ILazyContentProvider {
+
+		public void updateElement(int index) {
+			if (index < content.length)
+				viewer.replace(content[index], index);
+		}
+
+		public void inputChanged(Viewer theViewer, Object oldInput,
+				Object newInput) {
+			StagingViewContentProvider.this.inputChanged(theViewer, oldInput,
+					newInput);
+		}
+
+		public void dispose() {
+			// nothing to dispose
+		}
+	}
 }
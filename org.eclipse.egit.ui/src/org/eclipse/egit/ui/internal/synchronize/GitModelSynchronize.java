@@ -18,6 +18,7 @@
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
@@ -139,7 +140,11 @@ private static void fireSynchronizeAction(final IWorkbenchWindow window,
 		Job syncJob = new Job(UIText.GitModelSynchonize_fetchGitDataJobName) {
 			@Override
 			protected IStatus run(IProgressMonitor monitor) {
-				subscriber.init(monitor);
+				try {
+					subscriber.init(monitor);
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				}
 
 				return Status.OK_STATUS;
 			}
@@ -155,6 +160,9 @@ public boolean belongsTo(Object family) {
 		syncJob.addJobChangeListener(new JobChangeAdapter() {
 			@Override
 			public void done(IJobChangeEvent event) {
+				// the subscriber has no data if the job was canceled or failed
+				if (!event.getResult().isOK())
+					return;
 				RemoteResourceMappingContext remoteContext = new GitSubscriberResourceMappingContext(subscriber,
 						gsdSet);
 				SubscriberScopeManager manager = new SubscriberScopeManager(